@@ -0,0 +1,122 @@
+package net.marmier.mediafilename;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Processes files on an executor for the {@link MediaProcessor} processAsync methods, a file being submitted as
+ * another completes, so that no more files than the processor's workers are on the executor at once, none of
+ * them waiting there for a free metadata service. The results are either passed to a consumer, ending at the
+ * first failure, or used to complete a future per file, each file failing on its own.
+ */
+final class AsyncProcessing {
+
+    private final MediaProcessor processor;
+
+    private final List<Path> files;
+
+    private final Executor executor;
+
+    // The consumer of the results, or null when there is a future per file
+    private final Consumer<MediaProcessor.Result> consumer;
+
+    private final List<CompletableFuture<MediaProcessor.Result>> futures;
+
+    private final CompletableFuture<Void> done = new CompletableFuture<>();
+
+    private final AtomicInteger next = new AtomicInteger();
+
+    private final AtomicInteger remaining;
+
+    // Submissions requested and not made yet, made by a single loop so that files completing at once do not nest
+    private final AtomicInteger pending = new AtomicInteger();
+
+    private AsyncProcessing(MediaProcessor processor, List<Path> files, Executor executor, Consumer<MediaProcessor.Result> consumer,
+                            List<CompletableFuture<MediaProcessor.Result>> futures) {
+        this.processor = processor;
+        this.files = files;
+        this.executor = executor;
+        this.consumer = consumer;
+        this.futures = futures;
+        this.remaining = new AtomicInteger(files.size());
+    }
+
+    static CompletableFuture<Void> process(MediaProcessor processor, List<Path> files, Executor executor, Consumer<MediaProcessor.Result> consumer) {
+        AsyncProcessing processing = new AsyncProcessing(processor, files, executor, consumer, null);
+        processing.start();
+        return processing.done;
+    }
+
+    static List<CompletableFuture<MediaProcessor.Result>> processEach(MediaProcessor processor, List<Path> files, Executor executor) {
+        List<CompletableFuture<MediaProcessor.Result>> futures = new ArrayList<>(files.size());
+        for (int i = 0; i < files.size(); i++) {
+            futures.add(new CompletableFuture<>());
+        }
+        new AsyncProcessing(processor, files, executor, null, futures).start();
+        return futures;
+    }
+
+    private void start() {
+        if (files.isEmpty()) {
+            done.complete(null);
+        }
+        for (int i = Math.min(Math.max(1, processor.getWorkers()), files.size()); i > 0; i--) {
+            submit();
+        }
+    }
+
+    private void submit() {
+        if (pending.getAndIncrement() > 0) {
+            return;
+        }
+        do {
+            int index = next.getAndIncrement();
+            if (index < files.size() && !done.isDone()) {
+                processor.processFileAsync(files.get(index), executor).whenComplete((result, failure) -> completed(index, result, failure));
+            }
+        } while (pending.decrementAndGet() > 0);
+    }
+
+    private void completed(int index, MediaProcessor.Result result, Throwable failure) {
+        if (futures != null) {
+            if (failure != null) {
+                futures.get(index).completeExceptionally(failure);
+            } else {
+                futures.get(index).complete(result);
+            }
+        } else if (!consumed(result, failure)) {
+            return;
+        }
+        if (remaining.decrementAndGet() == 0) {
+            done.complete(null);
+        } else {
+            submit();
+        }
+    }
+
+    /**
+     * @return false if the processing ends, on the failure of the file or of the consumer
+     */
+    private boolean consumed(MediaProcessor.Result result, Throwable failure) {
+        if (failure != null) {
+            done.completeExceptionally(failure);
+            return false;
+        }
+        try {
+            if (result != null) {
+                synchronized (this) {
+                    consumer.accept(result);
+                }
+            }
+        } catch (RuntimeException e) {
+            done.completeExceptionally(e);
+            return false;
+        }
+        return true;
+    }
+}
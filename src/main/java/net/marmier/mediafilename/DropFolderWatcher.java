@@ -0,0 +1,386 @@
+package net.marmier.mediafilename;
+
+import net.marmier.mediafilename.filename.GeneratedFilename;
+import net.marmier.mediafilename.index.IndexedResultsHolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Watches a drop folder and its subdirectories, and processes the files arriving in it, leaving alone the files
+ * present when the watch starts. A file is processed once its size has not changed for a while, so files still
+ * being copied are not read half written. Companion files get the new name of their master file, whichever of
+ * the two arrives first, as long as the master file arrives within a timeout. Files already bearing a generated
+ * name are ignored, so renaming files in the folder does not process them again.
+ */
+public class DropFolderWatcher {
+
+    /**
+     * System property to override the time in milliseconds the size of a new file must stay the same before it is processed.
+     */
+    public static final String SETTLE_MILLIS_PROPERTY = "mediafilename.watch.settleMillis";
+
+    private static final long DEFAULT_SETTLE_MILLIS = 2000;
+
+    /**
+     * System property to override the time in milliseconds a companion file waits for its master file.
+     */
+    public static final String COMPANION_TIMEOUT_MILLIS_PROPERTY = "mediafilename.watch.companionTimeoutMillis";
+
+    private static final long DEFAULT_COMPANION_TIMEOUT_MILLIS = 600_000;
+
+    private Logger log = LoggerFactory.getLogger(DropFolderWatcher.class);
+
+    private final MediaProcessor processor;
+
+    private final Path root;
+
+    private final Consumer<MediaProcessor.Result> output;
+
+    private final long settleMillis;
+
+    private final long companionTimeoutMillis;
+
+    private final WatchService watchService;
+
+    private final Map<WatchKey, Path> directories = new HashMap<>();
+
+    // Files arrived and waiting for their size to settle, in the order of arrival
+    private final Map<Path, Pending> pending = new LinkedHashMap<>();
+
+    // Files pending or handled, so a file is processed once, until it is renamed, moved or deleted
+    private final Set<Path> known = new HashSet<>();
+
+    // The results of the master files still in the folder, and the companion files without result whose master
+    // file may be yet to arrive
+    private final IndexedResultsHolder results = new IndexedResultsHolder(Collections.emptyList());
+
+    // Time each companion file started waiting for its master file, in that order
+    private final Map<Path, Long> waitingSince = new LinkedHashMap<>();
+
+    private final long startTime = System.currentTimeMillis();
+
+    private volatile boolean stopped;
+
+    /**
+     * Build a watcher with the settle time of the {@link #SETTLE_MILLIS_PROPERTY} system property and the companion
+     * timeout of the {@link #COMPANION_TIMEOUT_MILLIS_PROPERTY} one.
+     * @param processor the processor of the files arriving
+     * @param root the directory to watch, with its subdirectories
+     * @param output the consumer of the results, in the order they are processed
+     * @throws IOException if the file system cannot be watched
+     */
+    public DropFolderWatcher(MediaProcessor processor, Path root, Consumer<MediaProcessor.Result> output) throws IOException {
+        this(processor, root, output, Long.getLong(SETTLE_MILLIS_PROPERTY, DEFAULT_SETTLE_MILLIS),
+            Long.getLong(COMPANION_TIMEOUT_MILLIS_PROPERTY, DEFAULT_COMPANION_TIMEOUT_MILLIS));
+    }
+
+    /**
+     * @param processor the processor of the files arriving
+     * @param root the directory to watch, with its subdirectories
+     * @param output the consumer of the results, in the order they are processed
+     * @param settleMillis the time the size of a new file must stay the same before it is processed
+     * @param companionTimeoutMillis the time a companion file without result waits for its master file
+     * @throws IOException if the file system cannot be watched
+     */
+    public DropFolderWatcher(MediaProcessor processor, Path root, Consumer<MediaProcessor.Result> output, long settleMillis,
+                             long companionTimeoutMillis) throws IOException {
+        if (!Files.isDirectory(root)) {
+            throw new IllegalArgumentException(String.format("Expecting a directory to watch: %s", root));
+        }
+        this.processor = processor;
+        this.root = root.toAbsolutePath();
+        this.output = output;
+        this.settleMillis = settleMillis;
+        this.companionTimeoutMillis = companionTimeoutMillis;
+        this.watchService = FileSystems.getDefault().newWatchService();
+    }
+
+    /**
+     * Watch the folder and process the files arriving, until stopped. The files whose processing fails are left
+     * as they are, and processed again if they change.
+     * @throws IOException if the folder cannot be watched
+     */
+    public void run() throws IOException {
+        register(root, false);
+        log.info("Watching {}", root);
+
+        long tick = Math.max(10, settleMillis / 4);
+        try {
+            while (!stopped) {
+                WatchKey key = watchService.poll(tick, TimeUnit.MILLISECONDS);
+                while (key != null) {
+                    handle(key);
+                    key = watchService.poll();
+                }
+                processSettledFiles();
+                expireWaitingCompanions();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException e) {
+            // Stopped
+        } finally {
+            watchService.close();
+        }
+        List<Path> waitingCompanions = results.getWaitingCompanions();
+        if (!waitingCompanions.isEmpty()) {
+            log.info("Files left without master file: {}", waitingCompanions);
+        }
+    }
+
+    /**
+     * Stop watching. The files waiting for their size to settle are not processed.
+     */
+    public void stop() {
+        stopped = true;
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            log.debug("Error while closing the watch service: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Watch a directory and its subdirectories.
+     * @param arrived if <code>true</code>, the files already in the directories arrived with them
+     */
+    private void register(Path directory, boolean arrived) throws IOException {
+        Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) throws IOException {
+                WatchKey key = dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY,
+                    StandardWatchEventKinds.ENTRY_DELETE);
+                directories.put(key, dir);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                if (arrived) {
+                    arrive(file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                log.warn("Cannot watch {}: {}", file, e.getMessage());
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private void handle(WatchKey key) throws IOException {
+        Path directory = directories.get(key);
+        if (directory == null) {
+            key.cancel();
+            return;
+        }
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                log.warn("Missed file system events, looking for new files in {}", root);
+                rescan();
+                continue;
+            }
+            Path path = directory.resolve((Path) event.context());
+            if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+                leave(path);
+            } else if (Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+                    register(path, true);
+                }
+            } else {
+                arrive(path);
+            }
+        }
+        if (!key.reset()) {
+            directories.remove(key);
+        }
+    }
+
+    private void rescan() throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                if (!known.contains(file) && attributes.lastModifiedTime().toMillis() >= startTime) {
+                    arrive(file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * Note the arrival or a change of a file, which then waits for its size to settle.
+     */
+    private void arrive(Path file) {
+        Pending waiting = pending.get(file);
+        if (waiting != null) {
+            waiting.since = System.currentTimeMillis();
+        } else if (GeneratedFilename.parse(file.getFileName().toString()) != null) {
+            log.debug("File already renamed: ignored ({})", file);
+        } else if (known.add(file)) {
+            pending.put(file, new Pending(-1, System.currentTimeMillis()));
+        }
+    }
+
+    /**
+     * Forget a file renamed, moved or deleted, or the files of such a directory, so a file arriving later at the
+     * same path is processed, and its companion files do not get the new filename of the file gone.
+     */
+    private void leave(Path path) {
+        if (known.contains(path)) {
+            forget(path);
+        } else if (directories.containsValue(path)) {
+            List<Path> files = new ArrayList<>();
+            for (Path file : known) {
+                if (file.startsWith(path)) {
+                    files.add(file);
+                }
+            }
+            files.forEach(this::forget);
+        }
+    }
+
+    private void forget(Path file) {
+        known.remove(file);
+        pending.remove(file);
+        if (waitingSince.remove(file) != null) {
+            results.removeWaitingCompanion(file);
+        }
+        results.removeResult(file);
+    }
+
+    /**
+     * Give up the companion files whose master file did not arrive in time, processed again if they change.
+     */
+    private void expireWaitingCompanions() {
+        long now = System.currentTimeMillis();
+        for (Iterator<Map.Entry<Path, Long>> entries = waitingSince.entrySet().iterator(); entries.hasNext(); ) {
+            Map.Entry<Path, Long> entry = entries.next();
+            if (now - entry.getValue() < companionTimeoutMillis) {
+                break;
+            }
+            entries.remove();
+            results.removeWaitingCompanion(entry.getKey());
+            known.remove(entry.getKey());
+            log.info("No master file arrived for {}: left as it is", entry.getKey());
+        }
+    }
+
+    private void processSettledFiles() {
+        long now = System.currentTimeMillis();
+        List<Path> settled = new ArrayList<>();
+        for (Iterator<Map.Entry<Path, Pending>> entries = pending.entrySet().iterator(); entries.hasNext(); ) {
+            Map.Entry<Path, Pending> entry = entries.next();
+            Pending waiting = entry.getValue();
+            long size;
+            try {
+                size = Files.size(entry.getKey());
+            } catch (IOException e) {
+                log.debug("File gone before it settled: {}", entry.getKey());
+                entries.remove();
+                known.remove(entry.getKey());
+                continue;
+            }
+            if (size != waiting.size) {
+                waiting.size = size;
+                waiting.since = now;
+            } else if (now - waiting.since >= settleMillis) {
+                settled.add(entry.getKey());
+                entries.remove();
+            }
+        }
+        if (!settled.isEmpty()) {
+            process(settled);
+        }
+    }
+
+    private void process(List<Path> files) {
+        List<MediaProcessor.Result> processed;
+        try {
+            processed = processor.process(files);
+        } catch (MediaProcessorException e) {
+            // Keep watching, the files being processed again once they change
+            log.warn("Failed to process {} files, left as they are: {}", files.size(), e.getMessage());
+            known.removeAll(files);
+            return;
+        }
+
+        // Results are in the order of the files, without the files which could not be processed
+        int next = 0;
+        for (Path file : files) {
+            if (next < processed.size() && processed.get(next).getOriginalPath().equals(file)) {
+                accept(processed.get(next++));
+            } else {
+                MediaProcessor.Result master = results.getResultMatchingRoot(file);
+                if (master != null) {
+                    output.accept(MediaProcessorImpl.ResultImpl.companion(master, file));
+                } else if (MediaPipeline.isCompanion(file)) {
+                    results.addWaitingCompanion(file);
+                    waitingSince.put(file, System.currentTimeMillis());
+                } else {
+                    log.debug("File not processed and without master file: ignored ({})", file);
+                }
+            }
+        }
+    }
+
+    /**
+     * Pass on the result of a master file, followed by those of its companion files waiting for it. The master
+     * file replaces an earlier one of the same directory and root, still there, so the companion files arriving
+     * next get its new filename.
+     */
+    private void accept(MediaProcessor.Result master) {
+        for (MediaProcessor.Result replaced : results.replaceResult(master)) {
+            log.debug("{} replaces {} as master file", master.getOriginalPath(), replaced.getOriginalPath());
+        }
+        output.accept(master);
+        for (Path companion : results.takeWaitingCompanions(master.getOriginalPath())) {
+            waitingSince.remove(companion);
+            output.accept(MediaProcessorImpl.ResultImpl.companion(master, companion));
+        }
+    }
+
+    private static class Pending {
+
+        private long size;
+
+        private long since;
+
+        Pending(long size, long since) {
+            this.size = size;
+            this.since = since;
+        }
+    }
+}
@@ -1,10 +1,13 @@
 package net.marmier.mediafilename;
 
-import net.marmier.mediafilename.filename.FilenameHelper;
-import net.marmier.mediafilename.index.IndexedResultsHolder;
+import net.marmier.mediafilename.metadata.GeneratedFilenameMetaDataService;
+import net.marmier.mediafilename.metadata.MetaDataService;
+import net.marmier.mediafilename.metadata.cache.CachingMetaDataService;
+import net.marmier.mediafilename.metadata.cache.MetaDataCache;
+import net.marmier.mediafilename.metadata.exif.ExifToolPool;
+import net.marmier.mediafilename.metadata.exif.ExiftoolMetaDataService;
 import net.marmier.mediafilename.timezone.Offset;
 import net.marmier.mediafilename.ui.PhotoFilenameConverterFrame;
-import net.marmier.mediafilename.util.finder.Finder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -13,11 +16,17 @@ import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 
@@ -32,6 +41,18 @@ import java.util.Objects;
  */
 public class MediaFilename {
 
+    private static final String WORKERS_OPTION = "--workers=";
+
+    private static final String VIRTUAL_THREADS_OPTION = "--virtual-threads";
+
+    private static final String INVALIDATE_CACHE_OPTION = "--invalidate-cache";
+
+    private static final String INCREMENTAL_OPTION = "--incremental";
+
+    private static final String RETIMEZONE_OPTION = "--retimezone=";
+
+    private static final String WATCH_OPTION = "--watch";
+
     private Logger log;
 
     private Path workingDirectory;
@@ -44,15 +65,36 @@ public class MediaFilename {
         Offset offset;
         File targetFile;
 
-        if (args.length < 1) {
+        // Options may come anywhere, the remaining arguments are positional
+        Options options = new Options();
+        List<String> arguments = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith(WORKERS_OPTION)) {
+                options.setWorkers(matchWorkers(arg.substring(WORKERS_OPTION.length())));
+            } else if (VIRTUAL_THREADS_OPTION.equals(arg)) {
+                options.setVirtualThreads(checkVirtualThreads());
+            } else if (INVALIDATE_CACHE_OPTION.equals(arg)) {
+                options.setInvalidateCache(true);
+            } else if (INCREMENTAL_OPTION.equals(arg)) {
+                options.setIncremental(true);
+            } else if (arg.startsWith(RETIMEZONE_OPTION)) {
+                options.setRetimezoneFrom(matchCode(arg.substring(RETIMEZONE_OPTION.length())));
+            } else if (WATCH_OPTION.equals(arg)) {
+                options.setWatch(true);
+            } else {
+                arguments.add(arg);
+            }
+        }
+
+        if (arguments.size() < 1) {
             showUsage(timeZoneMessage());
             System.exit(1);
         }
-        String firstArgument = args[0];
-        if (args.length == 1 && "--run-with-ui".equals(firstArgument)) {
+        String firstArgument = arguments.get(0);
+        if (arguments.size() == 1 && "--run-with-ui".equals(firstArgument)) {
             startUi();
         }
-        else if (args.length < 2) {
+        else if (arguments.size() < 2) {
             showUsage(timeZoneMessage());
             System.exit(1);
         } else {
@@ -60,10 +102,10 @@ public class MediaFilename {
             offset = matchCode(firstArgument);
 
             // Get the fileArgumentName parameter
-            String argument1 = args[1];
+            String argument1 = arguments.get(1);
             targetFile = new File(argument1);
 
-            prepareStart(offset, targetFile, null, null);
+            prepareStart(offset, targetFile, options, null, null);
         }
     }
 
@@ -87,6 +129,23 @@ public class MediaFilename {
     }
 
     public static void prepareStart(Offset offset, File targetFile, OutputAppender err, OutputAppender out) throws IOException {
+        prepareStart(offset, targetFile, MediaProcessorImpl.DEFAULT_WORKERS, err, out);
+    }
+
+    /**
+     * Process the target file or directory, extracting metadata with the given number of workers.
+     * The resulting script does not depend on the number of workers.
+     */
+    public static void prepareStart(Offset offset, File targetFile, int workers, OutputAppender err, OutputAppender out) throws IOException {
+        Options options = new Options();
+        options.setWorkers(workers);
+        prepareStart(offset, targetFile, options, err, out);
+    }
+
+    /**
+     * Process the target file or directory with the given options.
+     */
+    public static void prepareStart(Offset offset, File targetFile, Options options, OutputAppender err, OutputAppender out) throws IOException {
         LocalDateTime launchTime = LocalDateTime.now();
 
         /*
@@ -119,6 +178,10 @@ public class MediaFilename {
         // Prepare the command targetFile name
         Path commandFile = new File(workingDirectory + "/" + outputFilenameBase + ".sh").toPath();
 
+        // The journal outlives the day of the run, so an interrupted run can be resumed later
+        Path journalFile = new File(String.format("%s/Importation_%s_tz%s.journal",
+            workingDirectory, targetFile.getName(), offset.toString())).toPath();
+
         // Initialize the log filenamebase dynamically. (This work provided we use non-static loggers)
         System.setProperty("filenamebase", workingDirectory + "/" + outputFilenameBase);
 
@@ -135,11 +198,16 @@ public class MediaFilename {
         errOutputAppender.println("targetFile: " + targetFile);
         errOutputAppender.println("workingDirectory: " + workingDirectory);
         errOutputAppender.println("filenameBase: " + outputFilenameBase);
+        errOutputAppender.println("workers: " + options.getWorkers() + (options.isVirtualThreads() ? " (virtual threads)" : ""));
+        errOutputAppender.println("incremental: " + options.isIncremental());
+        if (options.getRetimezoneFrom() != null) {
+            errOutputAppender.println("retimezone: from " + options.getRetimezoneFrom().toString() + " to " + offset.toString());
+        }
 
-        mainInstance.realStart(offset, targetFile, commandFile, errOutputAppender, outOutputAppender);
+        mainInstance.realStart(offset, targetFile, options, commandFile, journalFile, errOutputAppender, outOutputAppender);
     }
 
-    private void realStart(Offset offset, File targetFile, Path commandFile, OutputAppender err, OutputAppender out) throws IOException {
+    private void realStart(Offset offset, File targetFile, Options options, Path commandFile, Path journalFile, OutputAppender err, OutputAppender out) throws IOException {
 
         // Working with the full path from now on.
         Path fullTargetPath;
@@ -149,64 +217,135 @@ public class MediaFilename {
             fullTargetPath = targetFile.toPath();
         }
 
-        // Initialize the all files map with entries without result.
-        final Finder finder = new Finder();
-        List<Path> allFiles = finder.find(fullTargetPath, false, false);
+        if (options.isWatch()) {
+            watch(offset, options, fullTargetPath, commandFile, err, out);
+            return;
+        }
 
         // Initialize the service (last, so we can configure the log targetFile dynamically, just above)
-        MediaProcessor mediaProcessor = new MediaProcessorImpl(offset, workingDirectory);
-
-        /*
-            First pass to process supported files
-          */
-        log.info("First pass: processing known extensions");
-
-        // Process the media files and get the results
-        List<MediaProcessor.Result> resultList = mediaProcessor.process(allFiles);
+        final List<MediaProcessor.Result> results;
+        // The cache is closed, and saved, after the processor
+        try (ResultJournal journal = ResultJournal.open(journalFile);
+             MetaDataCache cache = openCache(options, err);
+             MediaProcessor mediaProcessor = createProcessor(offset, options, cache)) {
+
+            if (journal.getReplayedCount() > 0) {
+                err.println(String.format("Resuming an interrupted run: %d files already processed, from %s", journal.getReplayedCount(), journalFile));
+            }
 
-        // Index the results
-        final IndexedResultsHolder indexedResults = new IndexedResultsHolder(resultList);
+            /*
+                Single pass to process the files as the directories are traversed, the companion files getting the
+                new filename of their master file, recording the results in the journal as they come
+              */
+            log.info("Processing files and matching their companion files");
+            MediaPipeline.Outcome outcome = new MediaPipeline(mediaProcessor, journal).run(fullTargetPath);
+            results = outcome.getResults();
+            for (Path filepath : outcome.getUnprocessedFiles()) {
+                log.debug("No result nor master file found for [{}]", filepath);
+            }
 
-        /*
-            Second pass to match companion files to their master and use their new filename.
-         */
-        log.info("Second pass: matching companion files");
-
-        for (Path filepath : allFiles) {
-            if (indexedResults.getResultMatchingPath(filepath) == null) { // We proceed if the given file doesn't have a result yet.
-                final MediaProcessor.Result result = matchToExistingResult(err, indexedResults, filepath);
-                if (result != null) {
-                    final String newFilename = result.getNewFilenameRoot() + "." + FilenameHelper.getExtension(filepath.toString());
-                    indexedResults.addResult(new MediaProcessorImpl.ResultImpl(filepath, newFilename));
-                    log.debug("Generated filename: {} {}", filepath.toString(), newFilename);
-                }
+            if (cache != null) {
+                err.println(String.format("Metadata cache: %d hits, %d of them by content, %d misses",
+                    cache.getHits(), cache.getFingerprintHits(), cache.getMisses()));
             }
         }
 
         // Generate the command targetFile
         backupPreviousRunIfExist(commandFile);
-        writeResult(commandFile, indexedResults.getResults(), out);
+        writeResult(commandFile, results, out);
+
+        // The run is complete and its commands written, the next one starts afresh
+        Files.deleteIfExists(journalFile);
     }
 
-    private MediaProcessor.Result matchToExistingResult(OutputAppender err, IndexedResultsHolder results, Path filepath) {
-        String filenameRoot = filenameRoot(filepath.toFile().getName());
-        if (filenameRoot == null || filenameRoot.isEmpty()) {
-            err.println(String.format("Skipping file for which we could not determine base filename: %s", filepath.toString()));
-            return null;
+    /**
+     * Process the files arriving in the folder until the JVM is stopped, appending the rename commands to the
+     * command file as they come.
+     */
+    private void watch(Offset offset, Options options, Path folder, Path commandFile, OutputAppender err, OutputAppender out) throws IOException {
+        backupPreviousRunIfExist(commandFile);
+        try (MetaDataCache cache = openCache(options, err);
+             MediaProcessor mediaProcessor = createProcessor(offset, options, cache);
+             BufferedWriter writer = Files.newBufferedWriter(commandFile, StandardOpenOption.CREATE_NEW)) {
+
+            DropFolderWatcher watcher = new DropFolderWatcher(mediaProcessor, folder, result -> {
+                String command = command(result);
+                out.println(command);
+                try {
+                    writer.write(command);
+                    writer.write("\n");
+                    writer.flush();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+
+            // On Ctrl-C, stop watching and let the resources above be closed before the JVM exits
+            Thread watching = Thread.currentThread();
+            Thread stopper = new Thread(() -> {
+                watcher.stop();
+                try {
+                    watching.join(10_000);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            Runtime.getRuntime().addShutdownHook(stopper);
+
+            err.println("Watching " + folder + " for new files, stop with Ctrl-C");
+            try {
+                watcher.run();
+            } finally {
+                try {
+                    Runtime.getRuntime().removeShutdownHook(stopper);
+                } catch (IllegalStateException e) {
+                    // Stopped by the hook itself
+                }
+            }
         }
-        MediaProcessor.Result resultMatchingRoot = results.getResultMatchingRoot(filepath);
-        if (resultMatchingRoot != null) {
-            log.debug("Found result matching [{}] to [{}]", filenameRoot, resultMatchingRoot.getNewFilename());
-            return resultMatchingRoot;
+    }
+
+    /**
+     * @return the metadata cache, or null if it is disabled or the run reads no file
+     */
+    private MetaDataCache openCache(Options options, OutputAppender err) {
+        // Correcting the offset reads no file, so needs no cache
+        if (options.getRetimezoneFrom() != null) {
+            return null;
         }
-        else {
-            log.debug("No result found matching [{}] for [{}]", filenameRoot, filepath.toString());
+        Path cacheFile = MetaDataCache.defaultFile();
+        if (cacheFile == null) {
+            log.info("Metadata cache disabled");
             return null;
         }
+        err.println("metadataCache: " + cacheFile);
+        MetaDataCache cache = MetaDataCache.open(cacheFile);
+        if (options.isInvalidateCache()) {
+            cache.invalidate();
+        }
+        return cache;
+    }
+
+    /**
+     * Create the processor for the options, its services answering from the cache if there is one, and from
+     * the filenames generated by an earlier run in incremental mode. To correct the offset, the processor only
+     * reads the filenames generated with the wrong offset, with a single worker as no file is read.
+     */
+    private MediaProcessor createProcessor(Offset offset, Options options, MetaDataCache cache) {
+        if (options.getRetimezoneFrom() != null) {
+            return new MediaProcessorImpl(offset, workingDirectory, GeneratedFilenameMetaDataService.generatedWith(options.getRetimezoneFrom()));
+        }
+        int workers = options.getWorkers();
+        if (options.isVirtualThreads()) {
+            MetaDataService service = decorate(new ExiftoolMetaDataService(new ExifToolPool(workers)), cache, options);
+            return MediaProcessorImpl.withVirtualThreads(offset, workingDirectory, service, workers);
+        }
+        return new MediaProcessorImpl(offset, workingDirectory, () -> decorate(new ExiftoolMetaDataService(), cache, options), workers);
     }
 
-    private static String filenameRoot(String filepath) {
-        return FilenameHelper.stripExtension(filepath);
+    private static MetaDataService decorate(MetaDataService service, MetaDataCache cache, Options options) {
+        MetaDataService decorated = cache == null ? service : new CachingMetaDataService(service, cache);
+        return options.isIncremental() ? new GeneratedFilenameMetaDataService(decorated) : decorated;
     }
 
     private static Offset matchCode(String literalCode) {
@@ -221,24 +360,55 @@ public class MediaFilename {
         return offset;
     }
 
+    private static int matchWorkers(String literalWorkers) {
+        int workers = 0;
+        try {
+            workers = Integer.parseInt(literalWorkers);
+        } catch (NumberFormatException e) {
+            // Reported below
+        }
+        if (workers < 1) {
+            showUsage("Invalid worker count provided: " + literalWorkers + ". Expecting a positive number.\n");
+            System.exit(1);
+        }
+        return workers;
+    }
+
+    private static boolean checkVirtualThreads() {
+        if (!VirtualThreads.isAvailable()) {
+            showUsage("Virtual threads require a build with the java21 profile, run on Java 21 or later.\n");
+            System.exit(1);
+        }
+        return true;
+    }
+
     private static String timeZoneMessage() {
         return "Time zone can be any of: " + Offset.dumpOffsetCodes() + "\n";
     }
 
+    /**
+     * Write the command file, forced to the storage device so it survives a power loss once the journal of the
+     * run is deleted.
+     * @throws IOException if the command file cannot be written
+     */
     private void writeResult(Path commandFile, List<MediaProcessor.Result> allResults, OutputAppender out) throws IOException {
-        try (BufferedWriter writer = Files.newBufferedWriter(commandFile, StandardOpenOption.CREATE_NEW)) {
+        try (FileChannel channel = FileChannel.open(commandFile, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+             Writer writer = new BufferedWriter(Channels.newWriter(channel, StandardCharsets.UTF_8.newEncoder(), -1))) {
             for (MediaProcessor.Result result : allResults) {
-                String command = String.format("mv \'%s\' \'%s\'", workingDirectory.relativize(result.getOriginalPath()), result.getNewFilename());
+                String command = command(result);
                 out.println(command);
                 writer.write(command);
                 writer.write("\n");
             }
-        } catch (Exception e) {
-            // Last ditch
-            e.printStackTrace();
+            writer.flush();
+            channel.force(true);
         }
     }
 
+    private String command(MediaProcessor.Result result) {
+        return String.format("mv \'%s\' \'%s\'", workingDirectory.relativize(result.getOriginalPath()), result.getNewFilename());
+    }
+
     private static void backupPreviousRunIfExist(Path commandFile) throws IOException {
         if (Files.exists(commandFile)) {
             Files.move(commandFile, createBackupFilename(commandFile));
@@ -251,13 +421,104 @@ public class MediaFilename {
 
     private static void showUsage(String additionalInfo) {
         String usage = "Please provide a valid timezone (ex. +01:00) and the path to the directory containing the media to rename, \n"
-            + "or use --run-with-ui to start the GUI.";
+            + "or use --run-with-ui to start the GUI. Use --workers=N to extract metadata with N workers,\n"
+            + "and --virtual-threads to extract each file on a virtual thread, N files at once (Java 21 build only).\n"
+            + "Use --invalidate-cache to extract all files again rather than reuse the capture times of earlier runs,\n"
+            + "and --incremental to read the capture time of files renamed by an earlier run from their name.\n"
+            + "Use --retimezone=OLD to rename the files renamed with the wrong timezone OLD for the given timezone, from their name only,\n"
+            + "and --watch to keep processing the files arriving in the directory, until stopped with Ctrl-C.";
         System.err.println(usage);
         if (additionalInfo != null) {
             System.err.println(additionalInfo);
         }
     }
 
+    /**
+     * Options of a run, with the defaults of the command line.
+     */
+    public static class Options {
+
+        private int workers = MediaProcessorImpl.DEFAULT_WORKERS;
+
+        private boolean virtualThreads;
+
+        private boolean invalidateCache;
+
+        private boolean incremental;
+
+        private Offset retimezoneFrom;
+
+        private boolean watch;
+
+        public int getWorkers() {
+            return workers;
+        }
+
+        /**
+         * @param workers the number of workers extracting metadata, or of files extracted at once with virtual threads
+         */
+        public void setWorkers(int workers) {
+            this.workers = workers;
+        }
+
+        public boolean isVirtualThreads() {
+            return virtualThreads;
+        }
+
+        /**
+         * @param virtualThreads whether to extract each file on a virtual thread of its own
+         */
+        public void setVirtualThreads(boolean virtualThreads) {
+            this.virtualThreads = virtualThreads;
+        }
+
+        public boolean isInvalidateCache() {
+            return invalidateCache;
+        }
+
+        /**
+         * @param invalidateCache whether to drop the metadata cache, so all files are extracted again
+         */
+        public void setInvalidateCache(boolean invalidateCache) {
+            this.invalidateCache = invalidateCache;
+        }
+
+        public boolean isIncremental() {
+            return incremental;
+        }
+
+        /**
+         * @param incremental whether to read the capture time of files renamed by an earlier run from their name,
+         * leaving them as they are unless the offset changed
+         */
+        public void setIncremental(boolean incremental) {
+            this.incremental = incremental;
+        }
+
+        public Offset getRetimezoneFrom() {
+            return retimezoneFrom;
+        }
+
+        /**
+         * @param retimezoneFrom the wrong offset files were renamed with, to rename them for the offset of the run
+         * from their name only, or null to process the files
+         */
+        public void setRetimezoneFrom(Offset retimezoneFrom) {
+            this.retimezoneFrom = retimezoneFrom;
+        }
+
+        public boolean isWatch() {
+            return watch;
+        }
+
+        /**
+         * @param watch whether to keep processing the files arriving in the directory, rather than those present
+         */
+        public void setWatch(boolean watch) {
+            this.watch = watch;
+        }
+    }
+
     /**
      * Simple appender abstraction to allow us to log on different kind of output, like standard output and error when running
      * as a utility command, or like text areas when running in GUI.
@@ -0,0 +1,390 @@
+package net.marmier.mediafilename;
+
+import net.marmier.mediafilename.index.IndexedResultsHolder;
+import net.marmier.mediafilename.util.finder.Finder;
+import net.marmier.mediafilename.util.finder.FinderException;
+import net.marmier.mediafilename.util.finder.ParallelFinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Overlaps the traversal of a directory with the extraction of its files. A traversal thread pushes the paths
+ * found into a queue, waiting when as many paths as the queue size wait, while the calling thread takes them in
+ * chunks and hands them to the processor's workers. The paths waiting for extraction are thus bounded by the
+ * queue size, however large the tree. Files are processed in the order of the traversal, those of a directory
+ * together once the traversal left it.
+ * <p>
+ * The files of a directory with the same filename root form a group, such as a picture and its companion files:
+ * one file of the group is extracted, and the others get its new filename with their own extension, without
+ * being extracted. A companion file found in an earlier chunk than its master file, as in a directory larger
+ * than the queue, waits for it.
+ * <p>
+ * With a {@link ResultJournal}, the outcome of each chunk is recorded once processed, and the files recorded by
+ * an interrupted run are not processed again, their recorded outcome being used instead.
+ */
+public class MediaPipeline {
+
+    /**
+     * System property to override the default number of paths waiting for extraction.
+     */
+    public static final String QUEUE_SIZE_PROPERTY = "mediafilename.pipeline.queueSize";
+
+    private static final int DEFAULT_QUEUE_SIZE = 1024;
+
+    /**
+     * System property setting the number of directories listed at once, with a {@link ParallelFinder}. The
+     * directories are traversed sequentially by default.
+     */
+    public static final String FINDER_PARALLELISM_PROPERTY = "mediafilename.finder.parallelism";
+
+    // Chunks are a quarter of the queue, so the traversal goes on while a chunk is extracted
+    private static final int CHUNKS_PER_QUEUE = 4;
+
+    // Extensions of companion files, extracted last in their group as they are seldom the master file
+    private static final Set<String> COMPANION_EXTENSIONS = new HashSet<>(Arrays.asList("xmp", "aae", "thm", "xml", "dop", "pp3"));
+
+    // Marks the end of the traversal in the queue
+    private static final List<Path> END = Collections.emptyList();
+
+    private Logger log = LoggerFactory.getLogger(MediaPipeline.class);
+
+    private final MediaProcessor processor;
+
+    // Null for a finder created for each run, as set by the FINDER_PARALLELISM_PROPERTY
+    private final Finder finder;
+
+    private final int queueSize;
+
+    // Null without journal
+    private final ResultJournal journal;
+
+    /**
+     * Build a pipeline with the queue size of the {@link #QUEUE_SIZE_PROPERTY} system property, and the traversal
+     * parallelism of the {@link #FINDER_PARALLELISM_PROPERTY} one.
+     * @param processor the processor of the files found
+     */
+    public MediaPipeline(MediaProcessor processor) {
+        this(processor, (ResultJournal) null);
+    }
+
+    /**
+     * Build a pipeline as {@link #MediaPipeline(MediaProcessor)} does, recording its progress in the given journal.
+     * @param processor the processor of the files found
+     * @param journal the journal of the run, possibly with the records of an interrupted one
+     */
+    public MediaPipeline(MediaProcessor processor, ResultJournal journal) {
+        this(processor, null, Integer.getInteger(QUEUE_SIZE_PROPERTY, DEFAULT_QUEUE_SIZE), journal);
+    }
+
+    /**
+     * @param processor the processor of the files found
+     * @param finder the finder traversing the directories
+     * @param queueSize the maximum number of paths waiting for extraction
+     */
+    public MediaPipeline(MediaProcessor processor, Finder finder, int queueSize) {
+        this(processor, finder, queueSize, null);
+    }
+
+    /**
+     * @param processor the processor of the files found
+     * @param finder the finder traversing the directories, or null for one created for each run as set by the
+     * {@link #FINDER_PARALLELISM_PROPERTY} system property
+     * @param queueSize the maximum number of paths waiting for extraction
+     * @param journal the journal of the run, or null
+     */
+    public MediaPipeline(MediaProcessor processor, Finder finder, int queueSize, ResultJournal journal) {
+        if (queueSize < 1) {
+            throw new IllegalArgumentException(String.format("Queue size must be at least 1: %d", queueSize));
+        }
+        this.processor = processor;
+        this.finder = finder;
+        this.queueSize = queueSize;
+        this.journal = journal;
+    }
+
+    /**
+     * Find and process the files under the given path.
+     * @param path the file or directory to process
+     * @return the results, and the files without result, in the order of the traversal
+     * @throws FinderException if the traversal fails
+     * @throws MediaProcessorException if the processing fails
+     */
+    public Outcome run(Path path) {
+        TraversalThread traversal = new TraversalThread(path);
+        traversal.start();
+
+        Outcome outcome = new Outcome();
+        int chunkSize = Math.max(1, queueSize / CHUNKS_PER_QUEUE);
+        // Files taken from the queue and not processed yet, grouped by directory and filename root
+        Deque<List<Path>> groups = new ArrayDeque<>();
+        int taken = 0;
+        List<Path> chunk = new ArrayList<>(chunkSize);
+        try {
+            boolean ended = false;
+            while (!ended || !groups.isEmpty()) {
+                // Waiting for files only when there is nothing to process
+                while (!ended && taken < chunkSize) {
+                    List<Path> files = groups.isEmpty() ? traversal.queue.take() : traversal.queue.poll();
+                    if (files == null) {
+                        break;
+                    } else if (files == END) {
+                        ended = true;
+                    } else {
+                        for (List<Path> group : IndexedResultsHolder.groupByRoot(files)) {
+                            groups.add(group);
+                            taken += group.size();
+                        }
+                    }
+                }
+                // Whole groups, so a master file and its companion files are in the same chunk
+                chunk.clear();
+                while (!groups.isEmpty() && chunk.size() < chunkSize) {
+                    chunk.addAll(groups.poll());
+                }
+                taken -= chunk.size();
+                traversal.permits.release(chunk.size());
+                process(chunk, outcome);
+            }
+            traversal.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MediaProcessorException("Interrupted while processing files", e);
+        } finally {
+            // Stops a traversal waiting for the processing after a processing error
+            traversal.interrupt();
+        }
+        if (traversal.failure != null) {
+            throw traversal.failure;
+        }
+        if (log.isDebugEnabled()) {
+            int unprocessed = outcome.getUnprocessedFiles().size();
+            log.debug("Processed {} files, {} without result", outcome.results.getResults().size() + unprocessed, unprocessed);
+        }
+        return outcome;
+    }
+
+    private void process(List<Path> chunk, Outcome outcome) {
+        // The masters of the chunk, indexed apart until all the results are added in the order of the chunk
+        IndexedResultsHolder masters = new IndexedResultsHolder(Collections.emptyList());
+        Map<Path, MediaProcessor.Result> results = new HashMap<>();
+        List<Path> files = new ArrayList<>(chunk.size());
+        for (Path file : chunk) {
+            if (journal != null && journal.isReplayed(file)) {
+                MediaProcessor.Result result = journal.getReplayed(file);
+                if (result != null) {
+                    results.put(file, result);
+                    masters.addResult(result);
+                }
+            } else if (master(file, masters, outcome) == null) {
+                files.add(file);
+            }
+        }
+        extract(files, results, masters);
+
+        // Outcomes in the order of the chunk, each master followed by the companions of earlier chunks waiting for it
+        for (Path file : chunk) {
+            MediaProcessor.Result result = results.get(file);
+            if (result == null) {
+                MediaProcessor.Result master = master(file, masters, outcome);
+                if (master != null) {
+                    result = MediaProcessorImpl.ResultImpl.companion(master, file);
+                }
+            }
+            if (journal != null && (!journal.isReplayed(file) || result != journal.getReplayed(file))) {
+                journal.record(file, result);
+            }
+            if (result == null) {
+                outcome.results.addWaitingCompanion(file);
+                continue;
+            }
+            outcome.results.addResult(result);
+            for (Path companion : outcome.results.takeWaitingCompanions(file)) {
+                MediaProcessor.Result companionResult = MediaProcessorImpl.ResultImpl.companion(result, companion);
+                outcome.results.addResult(companionResult);
+                if (journal != null) {
+                    journal.record(companion, companionResult);
+                }
+            }
+        }
+        if (journal != null) {
+            journal.flush();
+        }
+    }
+
+    private static MediaProcessor.Result master(Path file, IndexedResultsHolder masters, Outcome outcome) {
+        MediaProcessor.Result master = masters.getResultMatchingRoot(file);
+        return master != null ? master : outcome.results.getResultMatchingRoot(file);
+    }
+
+    /**
+     * Extract the files grouped by directory and filename root, one file of each group at a time until one of them
+     * gives a result, so the other files of the group, its companions, are not extracted.
+     */
+    private void extract(List<Path> files, Map<Path, MediaProcessor.Result> results, IndexedResultsHolder masters) {
+        List<Deque<Path>> groups = new ArrayList<>();
+        for (List<Path> group : IndexedResultsHolder.groupByRoot(files)) {
+            group.sort(Comparator.comparing(MediaPipeline::isCompanion));
+            groups.add(new ArrayDeque<>(group));
+        }
+        while (!groups.isEmpty()) {
+            List<Path> primaries = new ArrayList<>(groups.size());
+            groups.forEach(group -> primaries.add(group.poll()));
+            List<MediaProcessor.Result> processed = processor.process(primaries);
+
+            // Results are in the order of the files, without the files which could not be processed
+            List<Deque<Path>> unresolved = new ArrayList<>();
+            int next = 0;
+            for (int i = 0; i < primaries.size(); i++) {
+                if (next < processed.size() && processed.get(next).getOriginalPath().equals(primaries.get(i))) {
+                    MediaProcessor.Result master = processed.get(next++);
+                    results.put(master.getOriginalPath(), master);
+                    masters.addResult(master);
+                } else if (!groups.get(i).isEmpty()) {
+                    unresolved.add(groups.get(i));
+                }
+            }
+            groups = unresolved;
+        }
+    }
+
+    /**
+     * @return <code>true</code> if the file has the extension of a companion file, such as xmp
+     */
+    static boolean isCompanion(Path file) {
+        String name = file.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return dot >= 0 && COMPANION_EXTENSIONS.contains(name.substring(dot + 1).toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Walks the tree and pushes the files found into the queue, those of a directory together once the traversal
+     * left it, followed by the end marker. When as many files as the queue size wait, the files of the directories
+     * being traversed are pushed without waiting for the rest of them.
+     */
+    private class TraversalThread extends Thread {
+
+        private final Path path;
+
+        private final BlockingQueue<List<Path>> queue = new LinkedBlockingQueue<>();
+
+        // A permit for each file found and not handed to the processor yet
+        private final Semaphore permits = new Semaphore(queueSize);
+
+        // The files of the directories being traversed, the current one and its ancestors
+        private final Map<Path, List<Path>> directories = new LinkedHashMap<>();
+
+        private Path current;
+
+        private volatile RuntimeException failure;
+
+        TraversalThread(Path path) {
+            super("finder");
+            setDaemon(true);
+            this.path = path;
+        }
+
+        @Override
+        public void run() {
+            try {
+                if (finder != null) {
+                    finder.find(path, false, false, this::put);
+                } else {
+                    find(Integer.getInteger(FINDER_PARALLELISM_PROPERTY, 0));
+                }
+                push(null);
+            } catch (RuntimeException e) {
+                failure = e;
+            }
+            queue.add(END);
+        }
+
+        private void find(int parallelism) {
+            if (parallelism > 0) {
+                // An ordered traversal, so the results do not depend on the parallelism, streamed directory after
+                // directory so the permits hold it back
+                try (ParallelFinder parallelFinder = new ParallelFinder(parallelism)) {
+                    parallelFinder.find(path, false, false, this::put);
+                }
+            } else {
+                new Finder().find(path, false, false, this::put);
+            }
+        }
+
+        private void put(Path file) {
+            try {
+                if (!permits.tryAcquire()) {
+                    push(null);
+                    permits.acquire();
+                }
+            } catch (InterruptedException e) {
+                interrupt();
+                throw new FinderException(String.format("Traversal interrupted at path: %s", file));
+            }
+            Path directory = file.getParent();
+            if (!Objects.equals(directory, current)) {
+                push(directory);
+                current = directory;
+            }
+            directories.computeIfAbsent(directory, key -> new ArrayList<>()).add(file);
+        }
+
+        /**
+         * Push the files of the directories left by the traversal.
+         * @param directory the directory traversed, or null to push the files of all the directories
+         */
+        private void push(Path directory) {
+            for (Iterator<Map.Entry<Path, List<Path>>> entries = directories.entrySet().iterator(); entries.hasNext(); ) {
+                Map.Entry<Path, List<Path>> entry = entries.next();
+                if (directory == null || entry.getKey() == null || !directory.startsWith(entry.getKey())) {
+                    queue.add(entry.getValue());
+                    entries.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * The outcome of a run.
+     */
+    public static class Outcome {
+
+        // The results and the files without result waiting for their master file, packed
+        private final IndexedResultsHolder results = new IndexedResultsHolder(Collections.emptyList());
+
+        /**
+         * @return the results of the processed files and of their companion files, in the order of the traversal,
+         * except for the companion files found before their master file, which follow it
+         */
+        public List<MediaProcessor.Result> getResults() {
+            return results.getResults();
+        }
+
+        /**
+         * @return the files found which could not be processed and have no master file, in the order of the traversal,
+         * rebuilt on each call
+         */
+        public List<Path> getUnprocessedFiles() {
+            return results.getWaitingCompanions();
+        }
+    }
+}
@@ -3,11 +3,14 @@ package net.marmier.mediafilename;
 import java.io.File;
 import java.nio.file.Path;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
 
 /**
  * Added by raphael on 14.09.16.
  */
-public interface MediaProcessor {
+public interface MediaProcessor extends AutoCloseable {
 
     List<Result> process(List<Path> file) throws MediaProcessorException;
 
@@ -15,6 +18,57 @@ public interface MediaProcessor {
 
     String generateFilename(File mediaFile) throws MediaProcessorException;
 
+    /**
+     * Process a single file as {@link #processFile(Path)} does, on the given executor.
+     * @param originalFile absolute path of the file to process
+     * @param executor the executor running the processing
+     * @return a future completed with the result, with null if the file is not supported, or exceptionally
+     * with a {@link MediaProcessorException}
+     */
+    default CompletableFuture<Result> processFileAsync(Path originalFile, Executor executor) {
+        return CompletableFuture.supplyAsync(() -> processFile(originalFile), executor);
+    }
+
+    /**
+     * Process each of the given files as {@link #processFileAsync(Path, Executor)} does. No more files than the
+     * {@link #getWorkers() workers} are submitted at once, the next file being submitted as one completes, so the
+     * tasks do not hold threads of the executor waiting for the workers. A file failing does not stop the others.
+     * @param files absolute paths of the files to process
+     * @param executor the executor running the processing
+     * @return a future for each file, in the order given
+     */
+    default List<CompletableFuture<Result>> processAsync(List<Path> files, Executor executor) {
+        return AsyncProcessing.processEach(this, files, executor);
+    }
+
+    /**
+     * Process each of the given files on the given executor, passing the results to the consumer as they
+     * come, one at a time. Files which are not supported have no result. No more files than the
+     * {@link #getWorkers() workers} are submitted at once, the next file being submitted as one completes, so the
+     * tasks do not hold threads of the executor waiting for the workers.
+     * @param files absolute paths of the files to process
+     * @param executor the executor running the processing
+     * @param consumer the consumer of the results, in the order of completion
+     * @return a future completed once all files are processed and their results consumed, or exceptionally as
+     * soon as a file fails or the consumer throws, the files left being then not submitted
+     */
+    default CompletableFuture<Void> processAsync(List<Path> files, Executor executor, Consumer<Result> consumer) {
+        return AsyncProcessing.process(this, files, executor, consumer);
+    }
+
+    /**
+     * @return the number of files processed at once, 1 by default
+     */
+    default int getWorkers() {
+        return 1;
+    }
+
+    /**
+     * Release the resources held by the processor, like the metadata service's external processes.
+     */
+    @Override
+    void close();
+
     interface Result {
         Path getOriginalPath();
         String getNewFilename();
@@ -3,40 +3,217 @@ package net.marmier.mediafilename;
 import net.marmier.mediafilename.filename.FilenameGenerator;
 import net.marmier.mediafilename.metadata.MetaData;
 import net.marmier.mediafilename.metadata.MetaDataService;
+import net.marmier.mediafilename.metadata.exif.ExifToolPool;
 import net.marmier.mediafilename.metadata.exif.ExiftoolMetaDataService;
 import net.marmier.mediafilename.metadata.exif.ExiftoolMetaDataServiceException;
+import net.marmier.mediafilename.storage.DeviceScheduler;
+import net.marmier.mediafilename.storage.StorageDevice;
+import net.marmier.mediafilename.storage.StorageDevices;
 import net.marmier.mediafilename.timezone.Offset;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Objects;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
+import static net.marmier.mediafilename.filename.FilenameHelper.getExtension;
 import static net.marmier.mediafilename.filename.FilenameHelper.stripExtension;
 
 /**
+ * Processes media files with one or more workers. Each worker extracts metadata with its own metadata
+ * service, while the results keep the order of the files given. Workers take turns on the storage devices
+ * holding the files, each device being read by no more workers than its limit, see {@link StorageDevices}. Alternatively, with virtual threads, each
+ * file is extracted by a task of its own, a limited number at once, all sharing one service.
+ * <p>
+ * Single files, including those processed asynchronously on a caller's executor, are extracted by any idle
+ * service, so at most as many at once as there are services.
+ * <p>
  * Added by raphael on 14.09.16.
  */
 public class MediaProcessorImpl implements MediaProcessor {
 
+    /**
+     * Number of workers used when none is given.
+     */
+    public static final int DEFAULT_WORKERS = 1;
+
+    // Files of a call are split in a few chunks per worker, so a worker stuck on slow files does not hold the others
+    private static final int CHUNKS_PER_WORKER = 4;
+
     private Logger log = LoggerFactory.getLogger(MediaProcessorImpl.class);
 
-    private MetaDataService metaDataService = new ExiftoolMetaDataService();
+    // All the services, each in use by one worker at most at any time
+    private final List<MetaDataService> metaDataServices;
+
+    private final BlockingQueue<MetaDataService> idleServices;
+
+    // Null with a single worker, the calling thread then does the work
+    private final ExecutorService executor;
+
+    // Shares the workers among the storage devices, null unless there are several workers
+    private final DeviceScheduler scheduler;
+
+    private final StorageDevices devices = new StorageDevices();
+
+    // Limits the files extracted at once when each file has its own task, null otherwise
+    private final Semaphore permits;
+
+    private final int workers;
 
     private FilenameGenerator sigGen;
 
     private final Path workingDirectory;
 
     public MediaProcessorImpl(Offset code, Path workingDirectory) {
+        this(code, workingDirectory, DEFAULT_WORKERS);
+    }
+
+    /**
+     * Build a processor extracting metadata with the given number of workers, each with its own
+     * {@link ExiftoolMetaDataService}.
+     * @param code the timezone offset
+     * @param workingDirectory the directory new paths are relative to
+     * @param workers the number of workers
+     */
+    public MediaProcessorImpl(Offset code, Path workingDirectory, int workers) {
+        this(code, workingDirectory, ExiftoolMetaDataService::new, workers);
+    }
+
+    /**
+     * Build a processor extracting metadata with the given service. The service is kept for the lifetime
+     * of the processor, so its resources are reused across calls, and closed along with the processor.
+     * @param code the timezone offset
+     * @param workingDirectory the directory new paths are relative to
+     * @param metaDataService the service used to extract metadata
+     */
+    public MediaProcessorImpl(Offset code, Path workingDirectory, MetaDataService metaDataService) {
+        this(code, workingDirectory, Collections.singletonList(metaDataService));
+    }
+
+    /**
+     * Build a processor extracting metadata with the given number of workers, each with its own service
+     * from the given supplier. The services are kept for the lifetime of the processor and closed along
+     * with it.
+     * @param code the timezone offset
+     * @param workingDirectory the directory new paths are relative to
+     * @param metaDataServices supplier of the service of each worker
+     * @param workers the number of workers
+     */
+    public MediaProcessorImpl(Offset code, Path workingDirectory, Supplier<MetaDataService> metaDataServices, int workers) {
+        this(code, workingDirectory, createServices(metaDataServices, workers));
+    }
+
+    /**
+     * Build a processor extracting the metadata of each file with a task of its own on the given executor,
+     * at most the given number of files at once. All the tasks share the given service.
+     */
+    MediaProcessorImpl(Offset code, Path workingDirectory, MetaDataService metaDataService, ExecutorService perFileExecutor, int permits) {
+        this(code, workingDirectory, Collections.singletonList(metaDataService), perFileExecutor, new Semaphore(requirePositive(permits)));
+    }
+
+    private MediaProcessorImpl(Offset code, Path workingDirectory, List<MetaDataService> metaDataServices) {
+        this(code, workingDirectory, metaDataServices, metaDataServices.size() > 1 ? createExecutor(metaDataServices.size()) : null, null);
+    }
+
+    private MediaProcessorImpl(Offset code, Path workingDirectory, List<MetaDataService> metaDataServices, ExecutorService executor, Semaphore permits) {
         sigGen = new FilenameGenerator(code);
         this.workingDirectory = workingDirectory;
+        this.metaDataServices = metaDataServices;
+        this.idleServices = new LinkedBlockingQueue<>(metaDataServices);
+        this.executor = executor;
+        this.permits = permits;
+        this.workers = permits == null ? metaDataServices.size() : permits.availablePermits();
+        this.scheduler = executor != null && permits == null ? new DeviceScheduler(executor, workers) : null;
     }
 
     /**
-     * Process a list of file as described in {@link MediaProcessor#processFile(Path)}.
+     * Build a processor extracting the metadata of each file on a virtual thread of its own, with at most the
+     * given number of files extracted at once. This bounds the concurrent Exiftool requests and disk reads,
+     * while a file waiting on them does not hold a platform thread. The files share an
+     * {@link ExiftoolMetaDataService} with as many Exiftool instances as permits.
+     * @param code the timezone offset
+     * @param workingDirectory the directory new paths are relative to
+     * @param permits the maximum number of files extracted at once
+     * @return the processor
+     * @throws UnsupportedOperationException if virtual threads are not available, see {@link VirtualThreads}
+     */
+    public static MediaProcessorImpl withVirtualThreads(Offset code, Path workingDirectory, int permits) {
+        requirePositive(permits);
+        ExecutorService executor = VirtualThreads.newPerTaskExecutor();
+        return new MediaProcessorImpl(code, workingDirectory, new ExiftoolMetaDataService(new ExifToolPool(permits)), executor, permits);
+    }
+
+    /**
+     * Build a processor extracting the metadata of each file on a virtual thread of its own, with at most the
+     * given number of files extracted at once, all sharing the given service. The service is closed along with
+     * the processor.
+     * @param code the timezone offset
+     * @param workingDirectory the directory new paths are relative to
+     * @param metaDataService the service used to extract metadata, safe for concurrent use
+     * @param permits the maximum number of files extracted at once
+     * @return the processor
+     * @throws UnsupportedOperationException if virtual threads are not available, see {@link VirtualThreads}
+     */
+    public static MediaProcessorImpl withVirtualThreads(Offset code, Path workingDirectory, MetaDataService metaDataService, int permits) {
+        requirePositive(permits);
+        ExecutorService executor = VirtualThreads.newPerTaskExecutor();
+        return new MediaProcessorImpl(code, workingDirectory, metaDataService, executor, permits);
+    }
+
+    private static int requirePositive(int workers) {
+        if (workers < 1) {
+            throw new IllegalArgumentException(String.format("Worker count must be at least 1: %d", workers));
+        }
+        return workers;
+    }
+
+    private static List<MetaDataService> createServices(Supplier<MetaDataService> supplier, int workers) {
+        requirePositive(workers);
+        List<MetaDataService> services = new ArrayList<>(workers);
+        for (int i = 0; i < workers; i++) {
+            services.add(supplier.get());
+        }
+        return services;
+    }
+
+    private static ExecutorService createExecutor(int workers) {
+        AtomicInteger count = new AtomicInteger();
+        return Executors.newFixedThreadPool(workers, runnable -> {
+            Thread thread = new Thread(runnable, "media-worker-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @return the number of workers, or of files extracted at once when each file has its own task
+     */
+    @Override
+    public int getWorkers() {
+        return workers;
+    }
+
+    /**
+     * Process a list of file as described in {@link MediaProcessor#processFile(Path)}. The files are split in
+     * contiguous chunks shared among the workers, the metadata of each chunk being requested at once from the
+     * worker's service, so it can group its requests. The results are in the order of the files given,
+     * whatever the number of workers.
      *
      * @param file The List of absolute paths of files to process.
      * @return The list of result objects corresponding to the processed files
@@ -44,10 +221,139 @@ public class MediaProcessorImpl implements MediaProcessor {
      */
     @Override
     public List<Result> process(List<Path> file) throws MediaProcessorException {
-        return file.stream()
-            .map(this::processFile)
-            .filter(Objects::nonNull)
-            .collect(Collectors.toList());
+        file.forEach(this::requireAbsolute);
+
+        List<File> mediaFiles = file.stream().map(Path::toFile).collect(Collectors.toList());
+        List<MetaData> metaData;
+        try {
+            if (executor == null) {
+                metaData = metadataFromFiles(mediaFiles);
+            } else if (permits == null) {
+                metaData = metadataInParallel(mediaFiles);
+            } else {
+                metaData = metadataPerFile(mediaFiles);
+            }
+        } catch (ExiftoolMetaDataServiceException e) {
+            throw new MediaProcessorException("A problem occured while retrieving metadata from media files", e);
+        }
+
+        List<Result> results = new ArrayList<>(file.size());
+        for (int i = 0; i < file.size(); i++) {
+            Result result = createResult(file.get(i), metaData.get(i));
+            if (result != null) {
+                results.add(result);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Extract the metadata of the chunks on the workers, and gather them in the order of the files. Chunks
+     * hold files of a single storage device, and the devices take turns within their own limits, so that a
+     * slow device does not hold up the workers and is not slowed further by concurrent reads.
+     */
+    private List<MetaData> metadataInParallel(List<File> files) throws ExiftoolMetaDataServiceException {
+        Map<StorageDevice, List<Integer>> byDevice = new LinkedHashMap<>();
+        for (int i = 0; i < files.size(); i++) {
+            byDevice.computeIfAbsent(devices.deviceOf(files.get(i).toPath()), device -> new ArrayList<>()).add(i);
+        }
+
+        int chunkSize = Math.max(1, (files.size() + workers * CHUNKS_PER_WORKER - 1) / (workers * CHUNKS_PER_WORKER));
+        List<DeviceScheduler.DeviceTask<List<MetaData>>> chunks = new ArrayList<>();
+        List<List<Integer>> positions = new ArrayList<>();
+        for (Map.Entry<StorageDevice, List<Integer>> device : byDevice.entrySet()) {
+            List<Integer> indexes = device.getValue();
+            for (int start = 0; start < indexes.size(); start += chunkSize) {
+                List<Integer> chunk = indexes.subList(start, Math.min(start + chunkSize, indexes.size()));
+                List<File> chunkFiles = chunk.stream().map(files::get).collect(Collectors.toList());
+                chunks.add(new DeviceScheduler.DeviceTask<>(device.getKey(), () -> metadataFromFiles(chunkFiles)));
+                positions.add(chunk);
+            }
+        }
+
+        List<List<MetaData>> chunkResults;
+        try {
+            chunkResults = scheduler.runAll(chunks);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MediaProcessorException("Interrupted while retrieving metadata from media files", e);
+        } catch (ExecutionException e) {
+            throw unwrap(e);
+        }
+
+        MetaData[] metaData = new MetaData[files.size()];
+        for (int i = 0; i < positions.size(); i++) {
+            List<Integer> chunk = positions.get(i);
+            for (int j = 0; j < chunk.size(); j++) {
+                metaData[chunk.get(j)] = chunkResults.get(i).get(j);
+            }
+        }
+        return Arrays.asList(metaData);
+    }
+
+    /**
+     * Extract the metadata of each file with a task of its own, sharing the service, and gather them in the
+     * order of the files.
+     */
+    private List<MetaData> metadataPerFile(List<File> files) throws ExiftoolMetaDataServiceException {
+        MetaDataService service = metaDataServices.get(0);
+        List<Future<List<MetaData>>> tasks = new ArrayList<>(files.size());
+        for (File file : files) {
+            tasks.add(executor.submit(() -> {
+                permits.acquire();
+                try {
+                    return Collections.singletonList(service.metadataFromFile(file));
+                } finally {
+                    permits.release();
+                }
+            }));
+        }
+        return gather(tasks, files.size());
+    }
+
+    private List<MetaData> gather(List<Future<List<MetaData>>> tasks, int size) throws ExiftoolMetaDataServiceException {
+        List<MetaData> metaData = new ArrayList<>(size);
+        try {
+            for (Future<List<MetaData>> task : tasks) {
+                metaData.addAll(task.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MediaProcessorException("Interrupted while retrieving metadata from media files", e);
+        } catch (ExecutionException e) {
+            throw unwrap(e);
+        } finally {
+            tasks.forEach(task -> task.cancel(true));
+        }
+        return metaData;
+    }
+
+    /**
+     * @return the failure of a task to throw, as is if it is a metadata service failure
+     */
+    private static ExiftoolMetaDataServiceException unwrap(ExecutionException e) {
+        if (e.getCause() instanceof ExiftoolMetaDataServiceException) {
+            return (ExiftoolMetaDataServiceException) e.getCause();
+        }
+        throw new MediaProcessorException("A problem occured while retrieving metadata from media files", e.getCause());
+    }
+
+    private List<MetaData> metadataFromFiles(List<File> files) throws ExiftoolMetaDataServiceException {
+        MetaDataService service = borrowService();
+        try {
+            return service.metadataFromFiles(files);
+        } finally {
+            idleServices.add(service);
+        }
+    }
+
+    private MetaDataService borrowService() {
+        try {
+            return idleServices.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MediaProcessorException("Interrupted while waiting for a metadata service", e);
+        }
     }
 
     /**
@@ -59,13 +365,30 @@ public class MediaProcessorImpl implements MediaProcessor {
      */
     @Override
     public Result processFile(Path file) throws MediaProcessorException {
+        requireAbsolute(file);
+
+        log.debug("Processing {}", file.getFileName());
+
+        String newName = generateFilename(file.toFile());
+        return createResult(file, newName);
+    }
+
+    private void requireAbsolute(Path file) {
         if (!file.isAbsolute()) {
             throw new MediaProcessorException(String.format("Expecting file path to be absolute: %s", file.toString()));
         }
+    }
 
+    private Result createResult(Path file, MetaData meta) {
         log.debug("Processing {}", file.getFileName());
+        return createResult(file, meta == null ? null : createFilename(meta));
+    }
 
-        String newName = generateFilename(file.toFile());
+    private Result createResult(Path file, String newName) {
+        if (newName != null && newName.equals(file.getFileName().toString())) {
+            log.debug("File already has its new name: ignored ({})", file.toString());
+            return null;
+        }
         if (newName != null) {
             String newRelativeName = createNewRelativePath(file, newName);
             return new ResultImpl(file, newRelativeName);
@@ -93,6 +416,21 @@ public class MediaProcessorImpl implements MediaProcessor {
             this.newFilename = newFilename;
         }
 
+        /**
+         * @return the result of a companion file, named after its master file with its own extension. A companion
+         * file matched by a companion rule keeps its whole filename after the part generated for the master file.
+         */
+        static ResultImpl companion(Result master, Path companion) {
+            String masterRoot = stripExtension(master.getOriginalPath().getFileName().toString());
+            String newRoot = master.getNewFilenameRoot();
+            String filename = companion.getFileName().toString();
+            boolean sameRoot = masterRoot == null || filename.startsWith(masterRoot + ".") && filename.indexOf('.', masterRoot.length() + 1) < 0;
+            if (!sameRoot && newRoot.endsWith(masterRoot)) {
+                return new ResultImpl(companion, newRoot.substring(0, newRoot.length() - masterRoot.length()) + filename);
+            }
+            return new ResultImpl(companion, newRoot + "." + getExtension(companion.toString()));
+        }
+
         public Path getOriginalPath() {
             return originalPath;
         }
@@ -114,16 +452,31 @@ public class MediaProcessorImpl implements MediaProcessor {
     @Override
     public String generateFilename(File mediaFile) throws MediaProcessorException {
         MetaData meta;
+        MetaDataService service = borrowService();
         try {
-            meta = metaDataService.metadataFromFile(mediaFile);
+            meta = service.metadataFromFile(mediaFile);
         } catch (ExiftoolMetaDataServiceException e) {
             throw new MediaProcessorException("A problem occured while retrieving metadata from media file" + mediaFile.toString(), e);
+        } finally {
+            idleServices.add(service);
         }
         if (meta == null) {
             return null;
         }
+        return createFilename(meta);
+    }
+
+    private String createFilename(MetaData meta) {
         String sig = sigGen.createUtcTimeZoneFilename(meta);
         log.debug("Capture datetime: {}. Result: {}.", meta.getCaptureDateTime(), sig);
         return sig;
     }
+
+    @Override
+    public void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+        metaDataServices.forEach(MetaDataService::close);
+    }
 }
@@ -0,0 +1,176 @@
+package net.marmier.mediafilename;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Append-only journal of the files processed by a run, with their new filename or the lack of one, so a run
+ * interrupted by a crash can be resumed without processing these files again. The records are written in
+ * batches, each flushed at once and forced to the storage device, so they survive a power loss. A record cut short by a crash is dropped when the journal is opened again.
+ * <p>
+ * Records are lines of tab separated fields: "R", the original path and the new filename for a result, or
+ * "U" and the original path for a file without result.
+ */
+public class ResultJournal implements AutoCloseable {
+
+    private static final String RESULT = "R";
+
+    private static final String UNPROCESSED = "U";
+
+    private Logger log = LoggerFactory.getLogger(ResultJournal.class);
+
+    private final Path file;
+
+    private final FileChannel channel;
+
+    private final Writer writer;
+
+    // The records of earlier runs, null for the files without result
+    private final Map<Path, MediaProcessor.Result> replayed = new HashMap<>();
+
+    private ResultJournal(Path file) throws IOException {
+        this.file = file;
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            replay();
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        this.writer = Channels.newWriter(channel, StandardCharsets.UTF_8.newEncoder(), -1);
+    }
+
+    /**
+     * Open the journal in the given file, replaying the records of an interrupted run if it exists.
+     * @param file the journal file
+     * @return the journal
+     * @throws IOException if the journal cannot be read or written
+     */
+    public static ResultJournal open(Path file) throws IOException {
+        return new ResultJournal(file);
+    }
+
+    private void replay() throws IOException {
+        byte[] content = Files.readAllBytes(file);
+        int end = content.length;
+        while (end > 0 && content[end - 1] != '\n') {
+            end--;
+        }
+        if (end < content.length) {
+            log.warn("Dropping a record cut short at the end of the journal {}", file);
+        }
+        // Later records are appended after the last complete one
+        channel.truncate(end);
+        channel.position(end);
+
+        String records = new String(content, 0, end, StandardCharsets.UTF_8);
+        for (String record : records.split("\n")) {
+            if (!record.isEmpty()) {
+                replay(record);
+            }
+        }
+        if (!replayed.isEmpty()) {
+            log.info("Replayed {} files from the journal {}", replayed.size(), file);
+        }
+    }
+
+    private void replay(String record) {
+        String[] fields = record.split("\t", -1);
+        if (RESULT.equals(fields[0]) && fields.length == 3) {
+            Path path = Paths.get(unescape(fields[1]));
+            replayed.put(path, new MediaProcessorImpl.ResultImpl(path, unescape(fields[2])));
+        } else if (UNPROCESSED.equals(fields[0]) && fields.length == 2) {
+            replayed.put(Paths.get(unescape(fields[1])), null);
+        } else {
+            log.warn("Ignoring malformed record in the journal {}: {}", file, record);
+        }
+    }
+
+    /**
+     * @param file a file
+     * @return <code>true</code> if the file was processed by an earlier run
+     */
+    public boolean isReplayed(Path file) {
+        return replayed.containsKey(file);
+    }
+
+    /**
+     * @param file a file processed by an earlier run
+     * @return its result, or null if it had none
+     */
+    public MediaProcessor.Result getReplayed(Path file) {
+        return replayed.get(file);
+    }
+
+    /**
+     * @return the number of files processed by earlier runs
+     */
+    public int getReplayedCount() {
+        return replayed.size();
+    }
+
+    /**
+     * Add the record of a file to the current batch.
+     * @param file the file processed
+     * @param result its result, or null if it has none
+     */
+    public void record(Path file, MediaProcessor.Result result) {
+        try {
+            if (result != null) {
+                writer.write(RESULT + "\t" + escape(file.toString()) + "\t" + escape(result.getNewFilename()) + "\n");
+            } else {
+                writer.write(UNPROCESSED + "\t" + escape(file.toString()) + "\n");
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Write the current batch of records, forced to the storage device.
+     */
+    public void flush() {
+        try {
+            writer.flush();
+            channel.force(false);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+
+    private static String escape(String field) {
+        return field.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n").replace("\r", "\\r");
+    }
+
+    private static String unescape(String field) {
+        StringBuilder unescaped = new StringBuilder(field.length());
+        for (int i = 0; i < field.length(); i++) {
+            char c = field.charAt(i);
+            if (c == '\\' && i + 1 < field.length()) {
+                char next = field.charAt(++i);
+                unescaped.append(next == 't' ? '\t' : next == 'n' ? '\n' : next == 'r' ? '\r' : next);
+            } else {
+                unescaped.append(c);
+            }
+        }
+        return unescaped.toString();
+    }
+}
@@ -0,0 +1,54 @@
+package net.marmier.mediafilename;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Access to virtual threads, available when the tool is built with the java21 Maven profile and run on
+ * Java 21 or later.
+ */
+public final class VirtualThreads {
+
+    private static final String EXECUTORS_CLASS = "net.marmier.mediafilename.VirtualThreadExecutors";
+
+    // Null when the build or the runtime does not support virtual threads
+    private static final Method NEW_PER_TASK_EXECUTOR = findFactory();
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * @return true if virtual threads can be used
+     */
+    public static boolean isAvailable() {
+        return NEW_PER_TASK_EXECUTOR != null;
+    }
+
+    /**
+     * @return an executor starting a new virtual thread for each task
+     * @throws UnsupportedOperationException if virtual threads are not available
+     */
+    public static ExecutorService newPerTaskExecutor() {
+        if (NEW_PER_TASK_EXECUTOR == null) {
+            throw new UnsupportedOperationException("Virtual threads require the java21 build profile and Java 21 or later.");
+        }
+        try {
+            return (ExecutorService) NEW_PER_TASK_EXECUTOR.invoke(null);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        } catch (InvocationTargetException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private static Method findFactory() {
+        try {
+            Method factory = Class.forName(EXECUTORS_CLASS).getDeclaredMethod("newPerTaskExecutor");
+            factory.setAccessible(true);
+            return factory;
+        } catch (ClassNotFoundException | NoSuchMethodException | UnsupportedClassVersionError e) {
+            return null;
+        }
+    }
+}
@@ -4,7 +4,6 @@ import net.marmier.mediafilename.metadata.MetaData;
 import net.marmier.mediafilename.timezone.Offset;
 
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 
 /**
  * Added by raphael on 27.12.15.
@@ -19,11 +18,6 @@ public class FilenameGenerator {
 
     public String createUtcTimeZoneFilename(MetaData meta) {
         LocalDateTime utcDateTime = tzOffset.reverse(meta.getCaptureDateTime());
-
-
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd_HHmmss");
-
-
-        return String.format("%sutc_tz%s_%s", utcDateTime.format(formatter), tzOffset.toString(), meta.getFileName());
+        return GeneratedFilename.format(utcDateTime, tzOffset, meta.getFileName());
     }
 }
@@ -0,0 +1,87 @@
+package net.marmier.mediafilename.filename;
+
+import net.marmier.mediafilename.timezone.Offset;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A filename in the format of {@link FilenameGenerator#createUtcTimeZoneFilename}, as in
+ * 2015-12-03_074904utc_tz+0100_DSC_5926.JPG, read back into its parts.
+ */
+public class GeneratedFilename {
+
+    private static final Pattern PATTERN = Pattern.compile("^(\\d{4}-\\d{2}-\\d{2}_\\d{6})utc_tz([+-]\\d{4})_(.+)$");
+
+    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd_HHmmss");
+
+    private final LocalDateTime utcDateTime;
+
+    private final Offset offset;
+
+    private final String originalFilename;
+
+    private GeneratedFilename(LocalDateTime utcDateTime, Offset offset, String originalFilename) {
+        this.utcDateTime = utcDateTime;
+        this.offset = offset;
+        this.originalFilename = originalFilename;
+    }
+
+    /**
+     * @param filename a filename, without directory
+     * @return its parts, or null if it is not a generated filename
+     */
+    public static GeneratedFilename parse(String filename) {
+        Matcher matcher = PATTERN.matcher(filename);
+        if (!matcher.matches()) {
+            return null;
+        }
+        try {
+            LocalDateTime utcDateTime = LocalDateTime.parse(matcher.group(1), FORMATTER);
+            return new GeneratedFilename(utcDateTime, Offset.forDesignation(matcher.group(2)), matcher.group(3));
+        } catch (DateTimeParseException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @param utcDateTime the time of capture in UTC, to the second
+     * @param offset the offset of the local time of capture
+     * @param originalFilename the filename before it is generated
+     * @return the generated filename
+     */
+    public static String format(LocalDateTime utcDateTime, Offset offset, String originalFilename) {
+        return utcDateTime.format(FORMATTER) + "utc_tz" + offset + "_" + originalFilename;
+    }
+
+    /**
+     * @return the time of capture in UTC
+     */
+    public LocalDateTime getUtcDateTime() {
+        return utcDateTime;
+    }
+
+    /**
+     * @return the offset the filename was generated with
+     */
+    public Offset getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return the local time of capture, as read from the media file when the filename was generated
+     */
+    public LocalDateTime getCaptureDateTime() {
+        return offset.apply(utcDateTime);
+    }
+
+    /**
+     * @return the filename before it was generated
+     */
+    public String getOriginalFilename() {
+        return originalFilename;
+    }
+}
@@ -0,0 +1,179 @@
+package net.marmier.mediafilename.index;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Rules matching companion files whose filename root differs from the one of their master file, one per line:
+ * <ul>
+ * <li><code>extension nef cr2</code>: companion named after the whole master filename, as in DSC_0001.NEF.xmp;</li>
+ * <li><code>suffix " (Edited)"</code>: master root followed by a suffix, as in IMG_0001 (Edited).jpg;</li>
+ * <li><code>prefix IMG_E IMG_</code>: variant of the start of the master root, as in IMG_E0001.JPG.</li>
+ * </ul>
+ * Values with spaces are quoted, and lines starting with # are comments. The rules are compiled into a set and
+ * two tries, so the cost of matching a filename does not grow with the number of rules.
+ */
+public final class CompanionRules {
+
+    /**
+     * System property to replace the default rules with those of a file.
+     */
+    public static final String RULES_FILE_PROPERTY = "mediafilename.companion.rules";
+
+    private static final String DEFAULT_RULES = "/companion-rules.txt";
+
+    private static final Pattern TOKEN = Pattern.compile("\"([^\"]*)\"|(\\S+)");
+
+    /**
+     * Rules matching no other companion file than those with the root of their master file.
+     */
+    public static final CompanionRules NONE = new CompanionRules(new HashSet<>(), new Node(), new Node());
+
+    private static CompanionRules defaults;
+
+    // Lower case master extensions
+    private final Set<String> extensions;
+
+    // Suffixes, read from their last character
+    private final Node suffixes;
+
+    // Variants of the start of master roots, with the start they replace
+    private final Node prefixes;
+
+    private CompanionRules(Set<String> extensions, Node suffixes, Node prefixes) {
+        this.extensions = extensions;
+        this.suffixes = suffixes;
+        this.prefixes = prefixes;
+    }
+
+    /**
+     * @return the rules of the {@link #RULES_FILE_PROPERTY} file, or the default ones
+     * @throws IllegalArgumentException if a rule is invalid
+     * @throws UncheckedIOException if the rules cannot be read
+     */
+    public static synchronized CompanionRules defaults() {
+        if (defaults == null) {
+            String file = System.getProperty(RULES_FILE_PROPERTY);
+            try {
+                if (file != null) {
+                    defaults = parse(Files.readAllLines(Paths.get(file), StandardCharsets.UTF_8));
+                } else {
+                    try (InputStream in = CompanionRules.class.getResourceAsStream(DEFAULT_RULES)) {
+                        defaults = parse(new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8)).lines().collect(Collectors.toList()));
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(String.format("Cannot read the companion rules %s", file != null ? file : DEFAULT_RULES), e);
+            }
+        }
+        return defaults;
+    }
+
+    /**
+     * @param lines the lines of a rules file
+     * @return the compiled rules
+     * @throws IllegalArgumentException if a rule is invalid
+     */
+    public static CompanionRules parse(List<String> lines) {
+        Set<String> extensions = new HashSet<>();
+        Node suffixes = new Node();
+        Node prefixes = new Node();
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i).trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            List<String> tokens = new ArrayList<>();
+            Matcher matcher = TOKEN.matcher(line);
+            while (matcher.find()) {
+                tokens.add(matcher.group(1) != null ? matcher.group(1) : matcher.group(2));
+            }
+            String kind = tokens.get(0);
+            if ("extension".equals(kind) && tokens.size() > 1) {
+                tokens.subList(1, tokens.size()).forEach(extension -> extensions.add(extension.toLowerCase(Locale.ROOT)));
+            } else if ("suffix".equals(kind) && tokens.size() == 2 && !tokens.get(1).isEmpty()) {
+                suffixes.add(new StringBuilder(tokens.get(1)).reverse()).replacement = "";
+            } else if ("prefix".equals(kind) && tokens.size() == 3 && !tokens.get(1).isEmpty()) {
+                prefixes.add(tokens.get(1)).replacement = tokens.get(2);
+            } else {
+                throw new IllegalArgumentException(String.format("Invalid companion rule at line %d: %s", i + 1, line));
+            }
+        }
+        return new CompanionRules(extensions, suffixes, prefixes);
+    }
+
+    /**
+     * @param root the filename root of a companion file
+     * @return the filename root of its master file by the rules, the given root if no rule applies
+     */
+    public String masterRoot(String root) {
+        String master = root;
+        int dot = master.lastIndexOf('.');
+        if (dot > 0 && !extensions.isEmpty() && extensions.contains(master.substring(dot + 1).toLowerCase(Locale.ROOT))) {
+            master = master.substring(0, dot);
+        }
+
+        // Longest suffix, leaving a root
+        int suffix = 0;
+        Node node = suffixes;
+        for (int i = master.length() - 1; i > 0 && node != null; i--) {
+            node = node.children.get(master.charAt(i));
+            if (node != null && node.replacement != null) {
+                suffix = master.length() - i;
+            }
+        }
+        if (suffix > 0) {
+            master = master.substring(0, master.length() - suffix);
+        }
+
+        // Longest prefix, leaving a root
+        int prefix = 0;
+        String replacement = null;
+        node = prefixes;
+        for (int i = 0; i < master.length() - 1 && node != null; i++) {
+            node = node.children.get(master.charAt(i));
+            if (node != null && node.replacement != null) {
+                prefix = i + 1;
+                replacement = node.replacement;
+            }
+        }
+        if (replacement != null) {
+            master = replacement + master.substring(prefix);
+        }
+        return master;
+    }
+
+    /**
+     * Node of a trie, ending a rule when it has a replacement.
+     */
+    private static final class Node {
+
+        private final Map<Character, Node> children = new HashMap<>();
+
+        private String replacement;
+
+        Node add(CharSequence key) {
+            Node node = this;
+            for (int i = 0; i < key.length(); i++) {
+                node = node.children.computeIfAbsent(key.charAt(i), c -> new Node());
+            }
+            return node;
+        }
+    }
+}
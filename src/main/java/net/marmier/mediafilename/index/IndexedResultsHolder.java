@@ -3,63 +3,615 @@ package net.marmier.mediafilename.index;
 import net.marmier.mediafilename.MediaProcessor;
 import net.marmier.mediafilename.filename.FilenameHelper;
 
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.util.*;
 
 /**
+ * Holds the results of a run, packed in a {@link ResultStore}, indexed by directory and filename root to match
+ * the companion files to their master file.
+ * <p>
  * Added by raphael on 01.04.18.
  */
 public class IndexedResultsHolder {
 
-    private final List<MediaProcessor.Result> results;
+    // Load factor of the root index, beyond which it is doubled
+    private static final float LOAD_FACTOR = 0.75f;
 
-    // Map to contain all entries, with the full original path as the key associated with the resulting filename.
-    // Order must be preserved.
-    private final Map<String, MediaProcessor.Result> byPathIndex = new LinkedHashMap<>();
+    // Replaced by a store of the results left when more than half of them were removed
+    private ResultStore results = new ResultStore();
 
-    // Map to contain results of the first pass by original filename without extension (root), so we can correlate
-    // with secondary files and use the same new filename.
-    private final Map<String, MediaProcessor.Result> byRootIndex = new TreeMap<>();
+    private PathStore originals = results.originals();
 
+    // Index of the results by directory and original filename without extension (root), so we can correlate with
+    // secondary files of the same directory and use the same new filename. Camera counters wrap and restart on
+    // each card, so the same root is found in many directories. An open addressing table of the index of the
+    // first result of each directory and root, plus one so that 0 is an empty slot, the keys being read from
+    // the packed results.
+    private int[] byRootIndex = new int[16];
+
+    private int byRootCount;
+
+    // Length in bytes of the root of each result, at the start of its filename
+    private short[] rootLength = new short[16];
+
+    // The next result of the same directory with the same root, plus one, the index holding the first one only
+    private int[] sameRoot = new int[16];
+
+    // The results removed, no longer indexed, null until one is
+    private BitSet removed;
+
+    private int removedCount;
+
+    // Files without result waiting for a master file, packed as the results, in the order they were added. Created
+    // with the first one, as most holders have none, and dropped when none is left.
+    private PathStore waiting;
+
+    // The root of the master file each waiting file waits for, in the same directory, empty for a file without root
+    private PathStore waitingRoots;
+
+    // The next file waiting for the same directory and root, plus one
+    private int[] nextWaiting;
+
+    // The waiting files taken by their master file
+    private BitSet taken;
+
+    // The first file waiting for each directory and root, plus one, in an open addressing table as the root index.
+    // Taking the files waiting for a root takes all of them, so when the first one is taken, all of them are.
+    private int[] waitingByRoot;
+
+    private int waitingByRootCount;
+
+    // Waiting files with a root, not taken yet
+    private int matchable;
+
+    // Waiting files not taken yet, with or without root
+    private int left;
+
+    private final CompanionRules rules;
+
+    /**
+     * Build a holder matching companion files with the {@link CompanionRules#defaults() default rules}.
+     * @param results the results to index
+     */
     public IndexedResultsHolder(List<MediaProcessor.Result> results) {
-        this.results = new ArrayList<>(results);
+        this(results, CompanionRules.defaults());
+    }
+
+    /**
+     * @param results the results to index
+     * @param rules the rules matching the companion files whose root differs from the one of their master file
+     */
+    public IndexedResultsHolder(List<MediaProcessor.Result> results, CompanionRules rules) {
+        this.rules = rules;
 
         // Index the result
         for (MediaProcessor.Result result : results) {
-            indexResult(result);
+            addResult(result);
         }
     }
 
+    /**
+     * @param path the original path of a file
+     * @return its result, or null if there is none
+     */
     public MediaProcessor.Result getResultMatchingPath(Path path) {
-        return byPathIndex.get(path.toString());
+        String root = getFilenameRoot(path);
+        int directory = originals.directoryId(path.getParent());
+        if (root == null || directory < 0) {
+            return null;
+        }
+        byte[] name = path.getFileName().toString().getBytes(StandardCharsets.UTF_8);
+        for (int index = find(directory, root.getBytes(StandardCharsets.UTF_8)); index >= 0; index = sameRoot[index] - 1) {
+            if (originals.nameEquals(index, name)) {
+                return results.get(index);
+            }
+        }
+        return null;
     }
 
+    /**
+     * @param path the path of a file
+     * @return the result of a file of the same directory with the same filename root, or with the root given by
+     * the companion rules, or null if there is none
+     */
     public MediaProcessor.Result getResultMatchingRoot(Path path) {
         String queryRoot = getFilenameRoot(path);
-        return queryRoot == null ? null : byRootIndex.get(queryRoot);
+        if (queryRoot == null) {
+            return null;
+        }
+        int directory = originals.directoryId(path.getParent());
+        if (directory < 0) {
+            return null;
+        }
+        int index = find(directory, queryRoot.getBytes(StandardCharsets.UTF_8));
+        if (index < 0) {
+            String masterRoot = rules.masterRoot(queryRoot);
+            if (!masterRoot.equals(queryRoot)) {
+                index = find(directory, masterRoot.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        return index < 0 ? null : results.get(index);
     }
 
-    public void addResult(MediaProcessor.Result result) {
-        this.results.add(result);
-        indexResult(result);
+    /**
+     * Keep a file without result until a master file of the same directory with the same filename root, or the
+     * root given by the companion rules, is added. A file whose filename root cannot be determined is kept all the
+     * same, among the files left without master file.
+     * @param path the path of the file
+     * @return false if the filename root of the file cannot be determined, so no master file can match it
+     */
+    public boolean addWaitingCompanion(Path path) {
+        if (waiting == null) {
+            waiting = new PathStore();
+            waitingRoots = new PathStore();
+            nextWaiting = new int[16];
+            taken = new BitSet();
+            waitingByRoot = new int[16];
+        }
+        String root = getFilenameRoot(path);
+        int index = waiting.size();
+        waiting.add(path);
+        left++;
+        waitingRoots.add(path.getParent(), root == null ? "" : rules.masterRoot(root));
+        if (index == nextWaiting.length) {
+            nextWaiting = Arrays.copyOf(nextWaiting, index + (index >> 1));
+        }
+        if (root == null) {
+            return false;
+        }
+        matchable++;
+
+        if (waitingByRootCount + 1 > waitingByRoot.length * LOAD_FACTOR) {
+            rehashWaiting(waitingByRoot.length * 2);
+        }
+        int directory = waitingRoots.directoryOf(index);
+        int length = waitingRoots.nameLength(index);
+        int mask = waitingByRoot.length - 1;
+        int slot = hash(directory, waitingRoots.nameHash(index, length)) & mask;
+        for (; waitingByRoot[slot] != 0; slot = (slot + 1) & mask) {
+            int first = waitingByRoot[slot] - 1;
+            if (waitingRoots.directoryOf(first) == directory && waitingRoots.nameLength(first) == length && waitingRoots.nameRegionEquals(first, index, length)) {
+                if (taken.get(first)) {
+                    waitingByRoot[slot] = index + 1;
+                } else {
+                    int last = first;
+                    while (nextWaiting[last] != 0) {
+                        last = nextWaiting[last] - 1;
+                    }
+                    nextWaiting[last] = index + 1;
+                }
+                return true;
+            }
+        }
+        waitingByRoot[slot] = index + 1;
+        waitingByRootCount++;
+        return true;
     }
 
-    private void indexResult(MediaProcessor.Result result) {
+    /**
+     * @param master the path of a master file
+     * @return the waiting companions matching the master file, no longer waiting
+     */
+    public List<Path> takeWaitingCompanions(Path master) {
+        if (matchable == 0) {
+            return Collections.emptyList();
+        }
+        String root = getFilenameRoot(master);
+        int directory = waitingRoots.directoryId(master.getParent());
+        if (root == null || directory < 0) {
+            return Collections.emptyList();
+        }
+        byte[] bytes = root.getBytes(StandardCharsets.UTF_8);
+        int mask = waitingByRoot.length - 1;
+        for (int slot = hash(directory, PathStore.hash(bytes, bytes.length)) & mask; waitingByRoot[slot] != 0; slot = (slot + 1) & mask) {
+            int first = waitingByRoot[slot] - 1;
+            if (waitingRoots.directoryOf(first) == directory && waitingRoots.nameEquals(first, bytes)) {
+                if (taken.get(first)) {
+                    break;
+                }
+                List<Path> companions = new ArrayList<>(1);
+                for (int index = first; index >= 0; ) {
+                    int next = nextWaiting[index] - 1;
+                    companions.add(waiting.get(index));
+                    taken(index);
+                    index = next;
+                }
+                return companions;
+            }
+        }
+        return Collections.emptyList();
+    }
 
-        Objects.requireNonNull(result);
-        String originalPath = result.getOriginalPath().toString();
-        byPathIndex.putIfAbsent(originalPath, result);
+    /**
+     * Stop keeping a file waiting for a master file, as when it is given up.
+     * @param path the path of the file
+     * @return false if the file was not waiting
+     */
+    public boolean removeWaitingCompanion(Path path) {
+        // The same id in both stores, which intern the same directories in the same order
+        int directory = waiting == null ? -1 : waiting.directoryId(path.getParent());
+        if (directory < 0 || path.getFileName() == null) {
+            return false;
+        }
+        byte[] name = path.getFileName().toString().getBytes(StandardCharsets.UTF_8);
+        String root = getFilenameRoot(path);
+        if (root == null) {
+            // Not indexed, looked for among the files waiting
+            for (int index = taken.nextClearBit(0); index < waiting.size(); index = taken.nextClearBit(index + 1)) {
+                if (waiting.directoryOf(index) == directory && waiting.nameEquals(index, name)) {
+                    taken(index);
+                    return true;
+                }
+            }
+            return false;
+        }
+        byte[] bytes = rules.masterRoot(root).getBytes(StandardCharsets.UTF_8);
+        int mask = waitingByRoot.length - 1;
+        for (int slot = hash(directory, PathStore.hash(bytes, bytes.length)) & mask; waitingByRoot[slot] != 0; slot = (slot + 1) & mask) {
+            int first = waitingByRoot[slot] - 1;
+            if (waitingRoots.directoryOf(first) == directory && waitingRoots.nameEquals(first, bytes)) {
+                if (taken.get(first)) {
+                    return false;
+                }
+                // Unlinked from the files waiting for the root, the first one being taken only with the others
+                for (int index = first, previous = -1; index >= 0; previous = index, index = nextWaiting[index] - 1) {
+                    if (waiting.nameEquals(index, name)) {
+                        if (previous >= 0) {
+                            nextWaiting[previous] = nextWaiting[index];
+                        } else if (nextWaiting[index] != 0) {
+                            waitingByRoot[slot] = nextWaiting[index];
+                        }
+                        taken(index);
+                        return true;
+                    }
+                }
+                return false;
+            }
+        }
+        return false;
+    }
+
+    private void taken(int index) {
+        taken.set(index);
+        if (waitingRoots.nameLength(index) > 0) {
+            matchable--;
+        }
+        if (--left == 0) {
+            waiting = null;
+            waitingRoots = null;
+            nextWaiting = null;
+            taken = null;
+            waitingByRoot = null;
+            waitingByRootCount = 0;
+        }
+    }
+
+    /**
+     * @return the files still waiting for a master file, in the order they were added
+     */
+    public List<Path> getWaitingCompanions() {
+        if (waiting == null) {
+            return new ArrayList<>();
+        }
+        List<Path> left = new ArrayList<>(waiting.size() - taken.cardinality());
+        for (int index = taken.nextClearBit(0); index < waiting.size(); index = taken.nextClearBit(index + 1)) {
+            left.add(waiting.get(index));
+        }
+        return left;
+    }
+
+    /**
+     * Group the files of the same directory with the same filename root, such as a picture and its companion files.
+     * @param paths the paths of files
+     * @return the groups, in the order of their first file, each in the order of the given paths
+     */
+    public static Collection<List<Path>> groupByRoot(List<Path> paths) {
+        Map<Object, List<Path>> groups = new LinkedHashMap<>();
+        for (Path path : paths) {
+            String root = getFilenameRoot(path);
+            // A file without root is alone in its group
+            Object key = root == null ? path : new DirectoryRoot(path.getParent(), root);
+            groups.computeIfAbsent(key, k -> new ArrayList<>(2)).add(path);
+        }
+        return groups.values();
+    }
+
+    /**
+     * Add a result in place of those of the same directory and filename root, so the companion files found later
+     * get the new filename of the latest master file, as when the filenames of a card are reused by the next one.
+     * @param result the result of a master file
+     * @return the results replaced, in no particular order
+     */
+    public List<MediaProcessor.Result> replaceResult(MediaProcessor.Result result) {
+        List<MediaProcessor.Result> replaced = new ArrayList<>(0);
+        Path original = result.getOriginalPath();
+        String root = getFilenameRoot(original);
+        int directory = originals.directoryId(original.getParent());
+        int slot = root == null || directory < 0 ? -1 : slot(directory, root.getBytes(StandardCharsets.UTF_8));
+        if (slot >= 0) {
+            for (int index = byRootIndex[slot] - 1; index >= 0; ) {
+                int next = sameRoot[index] - 1;
+                replaced.add(results.get(index));
+                removed(index);
+                index = next;
+            }
+            delete(slot);
+        }
+        addResult(result);
+        compactIfSparse();
+        return replaced;
+    }
+
+    /**
+     * Forget the result of a file, so no file matches it any more, as when the file is renamed or moved away.
+     * @param original the original path of the file
+     * @return false if the file has no result
+     */
+    public boolean removeResult(Path original) {
+        String root = getFilenameRoot(original);
+        int directory = originals.directoryId(original.getParent());
+        int slot = root == null || directory < 0 ? -1 : slot(directory, root.getBytes(StandardCharsets.UTF_8));
+        if (slot < 0) {
+            return false;
+        }
+        byte[] name = original.getFileName().toString().getBytes(StandardCharsets.UTF_8);
+        for (int index = byRootIndex[slot] - 1, previous = -1; index >= 0; previous = index, index = sameRoot[index] - 1) {
+            if (originals.nameEquals(index, name)) {
+                if (previous >= 0) {
+                    sameRoot[previous] = sameRoot[index];
+                } else if (sameRoot[index] != 0) {
+                    byRootIndex[slot] = sameRoot[index];
+                } else {
+                    delete(slot);
+                }
+                removed(index);
+                compactIfSparse();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void removed(int index) {
+        if (removed == null) {
+            removed = new BitSet();
+        }
+        removed.set(index);
+        sameRoot[index] = 0;
+        removedCount++;
+    }
+
+    /**
+     * Pack the results left once more than half of them were removed, so a holder whose results come and go, as
+     * in a watched folder, does not grow with all the results it ever had.
+     */
+    private void compactIfSparse() {
+        if (removedCount <= results.size() / 2) {
+            return;
+        }
+        List<MediaProcessor.Result> left = getResults();
+        results = new ResultStore();
+        originals = results.originals();
+        byRootIndex = new int[16];
+        byRootCount = 0;
+        rootLength = new short[16];
+        sameRoot = new int[16];
+        removed = null;
+        removedCount = 0;
+        left.forEach(this::addResult);
+    }
 
+    public void addResult(MediaProcessor.Result result) {
+        Objects.requireNonNull(result);
         String filenameRoot = getFilenameRoot(result.getOriginalPath());
         Objects.requireNonNull(filenameRoot);
-        byRootIndex.putIfAbsent(filenameRoot, result);
+
+        int index = results.size();
+        results.add(result);
+        if (index == rootLength.length) {
+            rootLength = Arrays.copyOf(rootLength, index + (index >> 1));
+            sameRoot = Arrays.copyOf(sameRoot, rootLength.length);
+        }
+        // The root starts the filename stored, so it is read from there rather than encoded again
+        int length = utf8Length(filenameRoot);
+        rootLength[index] = (short) length;
+
+        int directory = originals.directoryOf(index);
+        int hash = hash(directory, originals.nameHash(index, length));
+        int first = find(directory, index, hash);
+        if (first < 0) {
+            if (byRootCount + 1 > byRootIndex.length * LOAD_FACTOR) {
+                rehash(byRootIndex.length * 2);
+            }
+            insert(index, hash);
+            byRootCount++;
+        } else {
+            // Chained after the first one, the order of the others not mattering to the lookup by path
+            sameRoot[index] = sameRoot[first];
+            sameRoot[first] = index + 1;
+        }
+    }
+
+    /**
+     * @return the index of the first result of the directory with the given root, or -1 if there is none
+     */
+    private int find(int directory, byte[] root) {
+        int slot = slot(directory, root);
+        return slot < 0 ? -1 : byRootIndex[slot] - 1;
+    }
+
+    /**
+     * @return the slot of the root index holding the first result of the directory with the given root, or -1 if
+     * there is none
+     */
+    private int slot(int directory, byte[] root) {
+        int mask = byRootIndex.length - 1;
+        for (int slot = hash(directory, PathStore.hash(root, root.length)) & mask; byRootIndex[slot] != 0; slot = (slot + 1) & mask) {
+            int index = byRootIndex[slot] - 1;
+            if (originals.directoryOf(index) == directory && rootLength[index] == root.length && originals.nameStartsWith(index, root)) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the index of the first result of the directory with the root of the given result, or -1 if there is none
+     */
+    private int find(int directory, int result, int hash) {
+        int mask = byRootIndex.length - 1;
+        int length = rootLength[result];
+        for (int slot = hash & mask; byRootIndex[slot] != 0; slot = (slot + 1) & mask) {
+            int index = byRootIndex[slot] - 1;
+            if (originals.directoryOf(index) == directory && rootLength[index] == length && originals.nameRegionEquals(index, result, length)) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    private void insert(int index, int hash) {
+        int mask = byRootIndex.length - 1;
+        int slot = hash & mask;
+        while (byRootIndex[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        byRootIndex[slot] = index + 1;
+    }
+
+    /**
+     * Empty a slot of the root index, moving back the entries after it whose probe went past it, so they are still
+     * found without leaving a tombstone.
+     */
+    private void delete(int slot) {
+        int mask = byRootIndex.length - 1;
+        int free = slot;
+        for (int next = (free + 1) & mask; byRootIndex[next] != 0; next = (next + 1) & mask) {
+            int index = byRootIndex[next] - 1;
+            int home = hash(originals.directoryOf(index), originals.nameHash(index, rootLength[index])) & mask;
+            if (((next - home) & mask) >= ((next - free) & mask)) {
+                byRootIndex[free] = byRootIndex[next];
+                free = next;
+            }
+        }
+        byRootIndex[free] = 0;
+        byRootCount--;
+    }
+
+    private void rehash(int capacity) {
+        int[] previous = byRootIndex;
+        byRootIndex = new int[capacity];
+        for (int entry : previous) {
+            if (entry != 0) {
+                int index = entry - 1;
+                insert(index, hash(originals.directoryOf(index), originals.nameHash(index, rootLength[index])));
+            }
+        }
+    }
+
+    private void rehashWaiting(int capacity) {
+        int[] previous = waitingByRoot;
+        waitingByRoot = new int[capacity];
+        int mask = capacity - 1;
+        for (int entry : previous) {
+            if (entry != 0) {
+                int index = entry - 1;
+                int slot = hash(waitingRoots.directoryOf(index), waitingRoots.nameHash(index, waitingRoots.nameLength(index))) & mask;
+                while (waitingByRoot[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                waitingByRoot[slot] = entry;
+            }
+        }
     }
 
-    private String getFilenameRoot(Path originalPath) {
-        return FilenameHelper.stripExtension(originalPath.toFile().getName());
+    private static int hash(int directory, int rootHash) {
+        // Roots such as DSC_0001, DSC_0002... have close hashes, spread over the table by the mix of MurmurHash3
+        int hash = rootHash * 31 + directory;
+        hash = (hash ^ (hash >>> 16)) * 0x85EBCA6B;
+        hash = (hash ^ (hash >>> 13)) * 0xC2B2AE35;
+        return hash ^ (hash >>> 16);
+    }
+
+    private static int utf8Length(String s) {
+        int length = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    private static String getFilenameRoot(Path originalPath) {
+        Path filenamePath = originalPath.getFileName();
+        if (filenamePath == null) {
+            return null;
+        }
+        String filename = filenamePath.toString();
+        // The usual name.ext or name.ext.xmp without the regular expression, with the same result as stripExtension
+        int dot = filename.lastIndexOf('.');
+        if (dot > 0 && dot < filename.length() - 1 && filename.charAt(0) != '.' && filename.indexOf("..") < 0 && filename.indexOf('\n') < 0) {
+            return filename.substring(0, dot);
+        }
+        return FilenameHelper.stripExtension(filename);
     }
 
+    /**
+     * @return the results, without the removed ones
+     */
     public List<MediaProcessor.Result> getResults() {
-        return Collections.unmodifiableList(results);
+        if (removedCount == 0) {
+            return Collections.unmodifiableList(results);
+        }
+        List<MediaProcessor.Result> left = new ArrayList<>(results.size() - removedCount);
+        for (int index = removed.nextClearBit(0); index < results.size(); index = removed.nextClearBit(index + 1)) {
+            left.add(results.get(index));
+        }
+        return left;
+    }
+
+    /**
+     * Key grouping the files by directory, null for files given without one, and filename root.
+     */
+    private static final class DirectoryRoot {
+
+        private final Path directory;
+
+        private final String root;
+
+        private final int hash;
+
+        DirectoryRoot(Path directory, String root) {
+            this.directory = directory;
+            this.root = root;
+            this.hash = 31 * Objects.hashCode(directory) + root.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof DirectoryRoot)) {
+                return false;
+            }
+            DirectoryRoot other = (DirectoryRoot) o;
+            return hash == other.hash && root.equals(other.root) && Objects.equals(directory, other.directory);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
     }
 }
@@ -0,0 +1,180 @@
+package net.marmier.mediafilename.index;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * Append-only list of paths packed into primitive arrays: the directories are interned and referenced by id, and
+ * the filenames are stored once, encoded in a single byte array. A path takes eight bytes plus its filename, and
+ * is rebuilt when read.
+ */
+final class PathStore extends AbstractList<Path> implements RandomAccess {
+
+    private final List<Path> directories = new ArrayList<>();
+
+    private final Map<Path, Integer> directoryIds = new HashMap<>();
+
+    // The filenames in UTF-8, one after the other
+    private byte[] names = new byte[1024];
+
+    private int namesLength;
+
+    private int size;
+
+    private int[] directory = new int[16];
+
+    // Start of the filename in the names, which ends where the next one starts
+    private int[] nameStart = new int[16];
+
+    @Override
+    public boolean add(Path path) {
+        Path filename = path.getFileName();
+        add(path.getParent(), filename == null ? "" : filename.toString());
+        return true;
+    }
+
+    /**
+     * @param parent a directory, null for a filename given without one
+     * @param name a filename
+     * @return the index of the path added
+     */
+    int add(Path parent, String name) {
+        if (size == directory.length) {
+            int capacity = size + (size >> 1);
+            directory = Arrays.copyOf(directory, capacity);
+            nameStart = Arrays.copyOf(nameStart, capacity);
+        }
+        byte[] encoded = name.getBytes(StandardCharsets.UTF_8);
+        if (namesLength + encoded.length > names.length) {
+            names = Arrays.copyOf(names, Math.max(namesLength + encoded.length, names.length + (names.length >> 1)));
+        }
+        System.arraycopy(encoded, 0, names, namesLength, encoded.length);
+        directory[size] = intern(parent);
+        nameStart[size] = namesLength;
+        namesLength += encoded.length;
+        return size++;
+    }
+
+    private int intern(Path parent) {
+        Integer id = directoryIds.get(parent);
+        if (id == null) {
+            id = directories.size();
+            directories.add(parent);
+            directoryIds.put(parent, id);
+        }
+        return id;
+    }
+
+    @Override
+    public Path get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException(String.format("Index: %d, size: %d", index, size));
+        }
+        Path parent = directories.get(directory[index]);
+        return parent == null ? Paths.get(name(index)) : parent.resolve(name(index));
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the number of directories interned, whose ids go from 0 to this number excluded
+     */
+    int directoryCount() {
+        return directories.size();
+    }
+
+    /**
+     * @param parent a directory
+     * @return its id, or -1 if no path is in the directory
+     */
+    int directoryId(Path parent) {
+        Integer id = directoryIds.get(parent);
+        return id == null ? -1 : id;
+    }
+
+    int directoryOf(int index) {
+        return directory[index];
+    }
+
+    /**
+     * @return the length in bytes of the filename of the path
+     */
+    int nameLength(int index) {
+        return nameEnd(index) - nameStart[index];
+    }
+
+    /**
+     * @return <code>true</code> if the filename of the path is the given one, in UTF-8
+     */
+    boolean nameEquals(int index, byte[] name) {
+        return nameLength(index) == name.length && nameStartsWith(index, name);
+    }
+
+    /**
+     * @return <code>true</code> if the filenames of the paths start with the same bytes
+     */
+    boolean nameRegionEquals(int index, int other, int length) {
+        int start = nameStart[index];
+        int otherStart = nameStart[other];
+        for (int i = 0; i < length; i++) {
+            if (names[start + i] != names[otherStart + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return <code>true</code> if the filename of the path starts with the given bytes
+     */
+    boolean nameStartsWith(int index, byte[] prefix) {
+        int start = nameStart[index];
+        if (nameEnd(index) - start < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (names[start + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the hash of the first bytes of the filename of the path, as by {@link #hash(byte[], int)}
+     */
+    int nameHash(int index, int length) {
+        int hash = 1;
+        for (int i = nameStart[index], end = i + length; i < end; i++) {
+            hash = 31 * hash + names[i];
+        }
+        return hash;
+    }
+
+    static int hash(byte[] bytes, int length) {
+        int hash = 1;
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + bytes[i];
+        }
+        return hash;
+    }
+
+    private int nameEnd(int index) {
+        return index + 1 < size ? nameStart[index + 1] : namesLength;
+    }
+
+    String name(int index) {
+        return new String(names, nameStart[index], nameEnd(index) - nameStart[index], StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,184 @@
+package net.marmier.mediafilename.index;
+
+import net.marmier.mediafilename.MediaProcessor;
+import net.marmier.mediafilename.filename.FilenameHelper;
+import net.marmier.mediafilename.filename.GeneratedFilename;
+import net.marmier.mediafilename.timezone.Offset;
+
+import java.nio.file.Path;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Append-only list of results packed into primitive arrays, for imports of millions of files. The directories
+ * are interned and referenced by id, the original filenames are stored once, encoded in a single byte array,
+ * and a generated new filename is stored as its time and offset, the rest of it being the directory of the new
+ * filenames of the directory and the original filename. A result takes about thirty bytes instead of a few
+ * hundred for its path and strings.
+ * <p>
+ * The results are rebuilt when read. Those whose new filename is not a generated one, in the same directory as
+ * the original file, are kept as they are given.
+ */
+public final class ResultStore extends AbstractList<MediaProcessor.Result> implements RandomAccess {
+
+    private static final Offset[] OFFSETS = Offset.values();
+
+    // The generated part of a new filename, 0 for a digit and + for the sign of the offset
+    private static final String GENERATED_LAYOUT = "0000-00-00_000000utc_tz+0000_";
+
+    private static final int GENERATED_LENGTH = GENERATED_LAYOUT.length();
+
+    // Offset of the results kept as they are given
+    private static final byte AS_GIVEN = -1;
+
+    // The original paths, with the directories interned and the filenames encoded in a single byte array
+    private final PathStore originals = new PathStore();
+
+    // The directory part of the new filenames of each directory, as in "2015/", null until a result has one
+    private final List<String> newDirectories = new ArrayList<>();
+
+    private int size;
+
+    // Time in UTC of the generated new filename, in seconds from the epoch
+    private long[] utcSeconds = new long[16];
+
+    private byte[] offset = new byte[16];
+
+    // The results kept as they are given, with their indexes in ascending order
+    private final List<MediaProcessor.Result> asGiven = new ArrayList<>();
+
+    private int[] asGivenIndex = new int[16];
+
+    @Override
+    public boolean add(MediaProcessor.Result result) {
+        if (size == offset.length) {
+            int capacity = size + (size >> 1);
+            utcSeconds = Arrays.copyOf(utcSeconds, capacity);
+            offset = Arrays.copyOf(offset, capacity);
+        }
+        Path original = result.getOriginalPath();
+        String name = original.getFileName().toString();
+        originals.add(original.getParent(), name);
+        int id = originals.directoryOf(size);
+        while (newDirectories.size() < originals.directoryCount()) {
+            newDirectories.add(null);
+        }
+
+        if (!pack(size, id, name, result.getNewFilename())) {
+            offset[size] = AS_GIVEN;
+            if (asGiven.size() == asGivenIndex.length) {
+                asGivenIndex = Arrays.copyOf(asGivenIndex, asGiven.size() * 2);
+            }
+            asGivenIndex[asGiven.size()] = size;
+            asGiven.add(result);
+        }
+        size++;
+        return true;
+    }
+
+    /**
+     * Store the time and offset of a generated new filename, if the result can be rebuilt from them. The generated
+     * part, as in 2015-12-03_074904utc_tz+0100_, is read without regular expression nor formatter, its digits
+     * being the ones formatted again.
+     */
+    private boolean pack(int index, int id, String name, String newFilename) {
+        int start = newFilename.lastIndexOf('/') + 1;
+        if (newFilename.length() != start + GENERATED_LENGTH + name.length() || !newFilename.startsWith(name, start + GENERATED_LENGTH)
+            || !matchesLayout(newFilename, start)) {
+            return false;
+        }
+        String newDirectory = newDirectories.get(id);
+        if (newDirectory == null) {
+            newDirectory = newFilename.substring(0, start);
+        } else if (newDirectory.length() != start || !newFilename.startsWith(newDirectory)) {
+            return false;
+        }
+        LocalDateTime utcDateTime;
+        Offset generatedOffset;
+        try {
+            utcDateTime = LocalDateTime.of(number(newFilename, start, 4), number(newFilename, start + 5, 2),
+                number(newFilename, start + 8, 2), number(newFilename, start + 11, 2),
+                number(newFilename, start + 13, 2), number(newFilename, start + 15, 2));
+            generatedOffset = Offset.forDesignation(newFilename.substring(start + 23, start + 28));
+        } catch (DateTimeException | IllegalArgumentException e) {
+            return false;
+        }
+        newDirectories.set(id, newDirectory);
+        utcSeconds[index] = utcDateTime.toEpochSecond(ZoneOffset.UTC);
+        offset[index] = (byte) generatedOffset.ordinal();
+        return true;
+    }
+
+    private static boolean matchesLayout(String newFilename, int start) {
+        for (int i = 0; i < GENERATED_LENGTH; i++) {
+            char expected = GENERATED_LAYOUT.charAt(i);
+            char c = newFilename.charAt(start + i);
+            if (expected == '0' ? c < '0' || c > '9' : expected == '+' ? c != '+' && c != '-' : c != expected) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int number(String digits, int start, int length) {
+        int number = 0;
+        for (int i = start; i < start + length; i++) {
+            number = number * 10 + digits.charAt(i) - '0';
+        }
+        return number;
+    }
+
+    @Override
+    public MediaProcessor.Result get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException(String.format("Index: %d, size: %d", index, size));
+        }
+        return offset[index] == AS_GIVEN ? asGiven.get(Arrays.binarySearch(asGivenIndex, 0, asGiven.size(), index)) : new StoredResult(index);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the original paths of the results, at the same indexes
+     */
+    PathStore originals() {
+        return originals;
+    }
+
+    /**
+     * A result rebuilt from the store.
+     */
+    private final class StoredResult implements MediaProcessor.Result {
+
+        private final int index;
+
+        StoredResult(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public Path getOriginalPath() {
+            return originals.get(index);
+        }
+
+        @Override
+        public String getNewFilename() {
+            LocalDateTime utcDateTime = LocalDateTime.ofEpochSecond(utcSeconds[index], 0, ZoneOffset.UTC);
+            return newDirectories.get(originals.directoryOf(index)) + GeneratedFilename.format(utcDateTime, OFFSETS[offset[index]], originals.name(index));
+        }
+
+        @Override
+        public String getNewFilenameRoot() {
+            return FilenameHelper.stripExtension(getNewFilename());
+        }
+    }
+}
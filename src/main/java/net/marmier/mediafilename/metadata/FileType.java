@@ -0,0 +1,26 @@
+package net.marmier.mediafilename.metadata;
+
+/**
+ * Types of media files, as identified from their content.
+ */
+public enum FileType {
+
+    JPEG,
+
+    /** TIFF structured files, including most raw formats (NEF, DNG, ARW, CR2, ORF, RW2, PEF) */
+    TIFF,
+
+    /** QuickTime movies */
+    QUICKTIME,
+
+    /** ISO base media files other than QuickTime and HEIF: MP4, M4V, 3GP... */
+    MP4,
+
+    /** HEIF still images, like HEIC pictures */
+    HEIF,
+
+    PNG,
+
+    /** Content not recognized, left to the file name extension */
+    UNKNOWN
+}
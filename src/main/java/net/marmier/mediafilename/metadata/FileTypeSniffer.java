@@ -0,0 +1,90 @@
+package net.marmier.mediafilename.metadata;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Identifies the type of media files from the magic bytes at their start, with a single small read.
+ */
+public class FileTypeSniffer {
+
+    private static final int HEAD_SIZE = 32;
+
+    private static final Set<String> HEIF_BRANDS = new HashSet<>(Arrays.asList(
+        "heic", "heix", "heim", "heis", "hevc", "hevx", "hevm", "hevs", "mif1", "msf1", "avif"));
+
+    // First atoms of QuickTime movies without a file type atom
+    private static final Set<String> QUICKTIME_ATOMS = new HashSet<>(Arrays.asList(
+        "moov", "mdat", "wide", "free", "skip", "pnot"));
+
+    /**
+     * @param path the file to identify
+     * @return the type of the file, {@link FileType#UNKNOWN} if its content is not recognized
+     * @throws IOException if the file cannot be read
+     */
+    public FileType sniff(Path path) throws IOException {
+        ByteBuffer head = ByteBuffer.allocate(HEAD_SIZE);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            int read;
+            do {
+                read = channel.read(head, head.position());
+            } while (read > 0 && head.hasRemaining());
+        }
+        head.flip();
+        return sniff(head);
+    }
+
+    /**
+     * @param head the first bytes of a file
+     * @return the type of the file, {@link FileType#UNKNOWN} if its content is not recognized
+     */
+    public FileType sniff(ByteBuffer head) {
+        int length = head.remaining();
+        if (length < 4) {
+            return FileType.UNKNOWN;
+        }
+        int b0 = head.get(0) & 0xff;
+        int b1 = head.get(1) & 0xff;
+        int b2 = head.get(2) & 0xff;
+        int b3 = head.get(3) & 0xff;
+        if (b0 == 0xff && b1 == 0xd8 && b2 == 0xff) {
+            return FileType.JPEG;
+        }
+        if (b0 == 0x89 && b1 == 'P' && b2 == 'N' && b3 == 'G') {
+            return FileType.PNG;
+        }
+        if (b0 == 'I' && b1 == 'I' && (b2 == 42 && b3 == 0 || b2 == 'R' && (b3 == 'O' || b3 == 'S') || b2 == 'U' && b3 == 0)
+            || b0 == 'M' && b1 == 'M' && (b2 == 0 && b3 == 42 || b2 == 'O' && b3 == 'R')) {
+            return FileType.TIFF;
+        }
+        if (length >= 12) {
+            String atom = ascii(head, 4);
+            if ("ftyp".equals(atom)) {
+                String brand = ascii(head, 8);
+                if ("qt  ".equals(brand)) {
+                    return FileType.QUICKTIME;
+                }
+                return HEIF_BRANDS.contains(brand) ? FileType.HEIF : FileType.MP4;
+            }
+            if (QUICKTIME_ATOMS.contains(atom)) {
+                return FileType.QUICKTIME;
+            }
+        }
+        return FileType.UNKNOWN;
+    }
+
+    private static String ascii(ByteBuffer head, int offset) {
+        byte[] bytes = new byte[4];
+        for (int i = 0; i < 4; i++) {
+            bytes[i] = head.get(offset + i);
+        }
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+}
@@ -0,0 +1,105 @@
+package net.marmier.mediafilename.metadata;
+
+import net.marmier.mediafilename.filename.GeneratedFilename;
+import net.marmier.mediafilename.metadata.exif.ExiftoolMetaDataServiceException;
+import net.marmier.mediafilename.timezone.Offset;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Service reading the metadata of files renamed in an earlier run back from their generated filename, without
+ * reading the files, and passing the other files on to another service. The metadata holds the original
+ * filename, so the filename generated again is the same, unless the offset changed.
+ * <p>
+ * To correct the offset of files renamed with a wrong one, the service can read only the filenames generated with
+ * that offset, the other files having no metadata, so that no file is read at all.
+ */
+public class GeneratedFilenameMetaDataService implements MetaDataService {
+
+    // Gives no metadata, without reading the files
+    private static final MetaDataService NO_METADATA = new MetaDataService() {
+        @Override
+        public MetaData metadataFromFile(File file) {
+            return null;
+        }
+
+        @Override
+        public List<MetaData> metadataFromFiles(List<File> files) {
+            return Collections.nCopies(files.size(), null);
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+
+    private final MetaDataService delegate;
+
+    // Null to read the filenames generated with any offset
+    private final Offset offset;
+
+    /**
+     * @param delegate the service extracting the files not renamed yet, closed along with this one
+     */
+    public GeneratedFilenameMetaDataService(MetaDataService delegate) {
+        this(delegate, null);
+    }
+
+    private GeneratedFilenameMetaDataService(MetaDataService delegate, Offset offset) {
+        this.delegate = delegate;
+        this.offset = offset;
+    }
+
+    /**
+     * Build a service reading only the filenames generated with the given offset, without reading any file.
+     * @param offset the offset the filenames were generated with
+     * @return the service
+     */
+    public static GeneratedFilenameMetaDataService generatedWith(Offset offset) {
+        return new GeneratedFilenameMetaDataService(NO_METADATA, offset);
+    }
+
+    @Override
+    public MetaData metadataFromFile(File file) throws ExiftoolMetaDataServiceException {
+        MetaData meta = fromFilename(file);
+        return meta != null ? meta : delegate.metadataFromFile(file);
+    }
+
+    @Override
+    public List<MetaData> metadataFromFiles(List<File> files) throws ExiftoolMetaDataServiceException {
+        MetaData[] metaData = new MetaData[files.size()];
+        List<Integer> others = new ArrayList<>();
+        for (int i = 0; i < files.size(); i++) {
+            metaData[i] = fromFilename(files.get(i));
+            if (metaData[i] == null) {
+                others.add(i);
+            }
+        }
+        if (!others.isEmpty()) {
+            List<File> otherFiles = new ArrayList<>(others.size());
+            others.forEach(index -> otherFiles.add(files.get(index)));
+            List<MetaData> extracted = delegate.metadataFromFiles(otherFiles);
+            for (int i = 0; i < others.size(); i++) {
+                metaData[others.get(i)] = extracted.get(i);
+            }
+        }
+        return Arrays.asList(metaData);
+    }
+
+    private MetaData fromFilename(File file) {
+        GeneratedFilename generated = GeneratedFilename.parse(file.getName());
+        if (generated == null || offset != null && generated.getOffset() != offset) {
+            return null;
+        }
+        return new PhotoMetaData(generated.getCaptureDateTime(), generated.getOriginalFilename());
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+}
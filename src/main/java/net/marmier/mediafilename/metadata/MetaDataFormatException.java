@@ -0,0 +1,17 @@
+package net.marmier.mediafilename.metadata;
+
+import java.io.IOException;
+
+/**
+ * Signals a file whose structure cannot be understood by one of the in-process metadata readers.
+ */
+public class MetaDataFormatException extends IOException {
+
+    public MetaDataFormatException(String message) {
+        super(message);
+    }
+
+    public MetaDataFormatException(String message, Throwable e) {
+        super(message, e);
+    }
+}
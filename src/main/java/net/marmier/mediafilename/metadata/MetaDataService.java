@@ -3,11 +3,26 @@ package net.marmier.mediafilename.metadata;
 import net.marmier.mediafilename.metadata.exif.ExiftoolMetaDataServiceException;
 
 import java.io.File;
+import java.util.List;
 
 /**
  * Added by raphael on 30.11.15.
  */
-public interface MetaDataService {
+public interface MetaDataService extends AutoCloseable {
 
     MetaData metadataFromFile(File file) throws ExiftoolMetaDataServiceException;
+
+    /**
+     * Extract the metadata of many files at once, allowing the implementation to group its requests.
+     * @param files the files to extract metadata from
+     * @return the metadata of each file, in the order given, with null for unsupported files
+     * @throws ExiftoolMetaDataServiceException if the extraction fails
+     */
+    List<MetaData> metadataFromFiles(List<File> files) throws ExiftoolMetaDataServiceException;
+
+    /**
+     * Release the resources held by the service, like external processes.
+     */
+    @Override
+    void close();
 }
@@ -0,0 +1,84 @@
+package net.marmier.mediafilename.metadata.cache;
+
+import net.marmier.mediafilename.metadata.MetaData;
+import net.marmier.mediafilename.metadata.MetaDataService;
+import net.marmier.mediafilename.metadata.PhotoMetaData;
+import net.marmier.mediafilename.metadata.exif.ExiftoolMetaDataServiceException;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Service answering from a {@link MetaDataCache} for the files unchanged since they were extracted, and from
+ * another service for the others, whose capture times are then cached. Files without a capture time are not
+ * cached, so they are extracted again on the next run.
+ */
+public class CachingMetaDataService implements MetaDataService {
+
+    private final MetaDataService delegate;
+
+    private final MetaDataCache cache;
+
+    /**
+     * @param delegate the service extracting the files missing from the cache, closed along with this one
+     * @param cache the cache, possibly shared with other services, and closed by its owner
+     */
+    public CachingMetaDataService(MetaDataService delegate, MetaDataCache cache) {
+        this.delegate = delegate;
+        this.cache = cache;
+    }
+
+    @Override
+    public MetaData metadataFromFile(File file) throws ExiftoolMetaDataServiceException {
+        MetaDataCache.Lookup lookup = cache.lookup(file.toPath());
+        if (lookup.getCapture() != null) {
+            return new PhotoMetaData(lookup.getCapture(), file.getName());
+        }
+        MetaData meta = delegate.metadataFromFile(file);
+        store(lookup, meta);
+        return meta;
+    }
+
+    /**
+     * Answer the files found in the cache, and request the others from the other service at once.
+     */
+    @Override
+    public List<MetaData> metadataFromFiles(List<File> files) throws ExiftoolMetaDataServiceException {
+        MetaData[] metaData = new MetaData[files.size()];
+        List<Integer> missing = new ArrayList<>();
+        List<MetaDataCache.Lookup> lookups = new ArrayList<>();
+        for (int i = 0; i < files.size(); i++) {
+            File file = files.get(i);
+            MetaDataCache.Lookup lookup = cache.lookup(file.toPath());
+            if (lookup.getCapture() != null) {
+                metaData[i] = new PhotoMetaData(lookup.getCapture(), file.getName());
+            } else {
+                missing.add(i);
+                lookups.add(lookup);
+            }
+        }
+        if (!missing.isEmpty()) {
+            List<File> missingFiles = new ArrayList<>(missing.size());
+            missing.forEach(index -> missingFiles.add(files.get(index)));
+            List<MetaData> extracted = delegate.metadataFromFiles(missingFiles);
+            for (int i = 0; i < missing.size(); i++) {
+                metaData[missing.get(i)] = extracted.get(i);
+                store(lookups.get(i), extracted.get(i));
+            }
+        }
+        return Arrays.asList(metaData);
+    }
+
+    private void store(MetaDataCache.Lookup lookup, MetaData meta) {
+        if (meta != null && meta.getCaptureDateTime() != null) {
+            cache.put(lookup, meta.getCaptureDateTime());
+        }
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+}
@@ -0,0 +1,65 @@
+package net.marmier.mediafilename.metadata.cache;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+
+/**
+ * Cheap fingerprint of the content of a file, recognizing it after it is renamed or moved. It digests the size
+ * and a sample at the head and at the tail of the file, rather than the whole content. The head holds the
+ * metadata of media files, and the tail differs between two shots of the same camera.
+ */
+final class Fingerprint {
+
+    static final int SAMPLE_SIZE = 64 * 1024;
+
+    private Fingerprint() {
+    }
+
+    /**
+     * @param file a file
+     * @return the fingerprint of its content
+     * @throws IOException if the file cannot be read
+     */
+    static String of(Path file) throws IOException {
+        MessageDigest digest = newDigest();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            digest.update(ByteBuffer.allocate(Long.BYTES).putLong(0, size));
+
+            ByteBuffer sample = ByteBuffer.allocate(SAMPLE_SIZE);
+            digest.update(read(channel, sample, 0));
+            if (size > SAMPLE_SIZE) {
+                // The tail, without reading again what the head covered
+                digest.update(read(channel, sample, Math.max(SAMPLE_SIZE, size - SAMPLE_SIZE)));
+            }
+        }
+        return Base64.getEncoder().withoutPadding().encodeToString(digest.digest());
+    }
+
+    private static ByteBuffer read(FileChannel channel, ByteBuffer sample, long position) throws IOException {
+        sample.clear();
+        while (sample.hasRemaining()) {
+            int read = channel.read(sample, position + sample.position());
+            if (read < 0) {
+                break;
+            }
+        }
+        sample.flip();
+        return sample;
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform supports SHA-1
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,417 @@
+package net.marmier.mediafilename.metadata.cache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Capture times extracted in earlier runs, by absolute path. An entry is only valid while the file keeps the
+ * size and last modification time it had when extracted. Otherwise, the file is looked up by its content
+ * {@link Fingerprint}, so it is still recognized once renamed or moved, and its entry follows it. The entries
+ * are loaded from a file when opened, and written back when closed, if they changed, without those of the files
+ * not seen for longer than the retention period, deleted or moved out of reach since.
+ */
+public class MetaDataCache implements AutoCloseable {
+
+    /**
+     * System property setting the cache file. An empty value disables the cache.
+     */
+    public static final String CACHE_FILE_PROPERTY = "mediafilename.cache.file";
+
+    /**
+     * System property setting the number of days an entry is kept without its file being seen.
+     */
+    public static final String RETENTION_DAYS_PROPERTY = "mediafilename.cache.retentionDays";
+
+    private static final int DEFAULT_RETENTION_DAYS = 90;
+
+    // "MFC" and the version of the format
+    private static final int MAGIC = 0x4d464303;
+
+    // The previous version, without the day an entry was last seen
+    private static final int MAGIC_2 = 0x4d464302;
+
+    private Logger log = LoggerFactory.getLogger(MetaDataCache.class);
+
+    private final Path file;
+
+    private final int retentionDays;
+
+    private final Clock clock;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    // Path of the entry of each fingerprint
+    private final Map<String, String> byFingerprint = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong fingerprintHits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private volatile boolean modified;
+
+    private MetaDataCache(Path file, int retentionDays, Clock clock) {
+        this.file = file;
+        this.retentionDays = retentionDays;
+        this.clock = clock;
+    }
+
+    /**
+     * @return the cache file of the {@link #CACHE_FILE_PROPERTY} system property, by default in the user's cache
+     * directory, or null if the cache is disabled
+     */
+    public static Path defaultFile() {
+        String property = System.getProperty(CACHE_FILE_PROPERTY);
+        if (property != null) {
+            return property.trim().isEmpty() ? null : Paths.get(property);
+        }
+        String cacheHome = System.getenv("XDG_CACHE_HOME");
+        Path directory = cacheHome == null || cacheHome.isEmpty() ?
+            Paths.get(System.getProperty("user.home"), ".cache") : Paths.get(cacheHome);
+        return directory.resolve("mediafilename").resolve("metadata.cache");
+    }
+
+    /**
+     * Open the cache stored in the given file. A missing or unreadable file gives an empty cache.
+     * @param file the cache file
+     * @return the cache
+     */
+    public static MetaDataCache open(Path file) {
+        return open(file, Integer.getInteger(RETENTION_DAYS_PROPERTY, DEFAULT_RETENTION_DAYS), Clock.systemUTC());
+    }
+
+    /**
+     * @param file the cache file
+     * @param retentionDays the number of days an entry is kept without its file being seen
+     * @param clock the clock giving the day the files are seen
+     * @return the cache
+     */
+    static MetaDataCache open(Path file, int retentionDays, Clock clock) {
+        MetaDataCache cache = new MetaDataCache(file, retentionDays, clock);
+        cache.load();
+        return cache;
+    }
+
+    private void load() {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            int magic = in.readInt();
+            if (magic != MAGIC && magic != MAGIC_2) {
+                log.warn("Ignoring metadata cache in an unknown format: {}", file);
+                return;
+            }
+            int count = in.readInt();
+            int today = today();
+            for (int i = 0; i < count; i++) {
+                String path = in.readUTF();
+                long size = in.readLong();
+                long lastModified = in.readLong();
+                String fingerprint = in.readUTF();
+                LocalDateTime capture = LocalDateTime.ofEpochSecond(in.readLong(), in.readInt(), ZoneOffset.UTC);
+                int lastSeen = magic == MAGIC ? in.readInt() : today;
+                entries.put(path, new Entry(size, lastModified, fingerprint, capture, lastSeen));
+                byFingerprint.put(fingerprint, path);
+            }
+            log.info("Loaded {} entries from the metadata cache {}", count, file);
+        } catch (NoSuchFileException e) {
+            log.debug("No metadata cache yet: {}", file);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Ignoring unreadable metadata cache {}: {}", file, e.toString());
+            entries.clear();
+            byFingerprint.clear();
+        }
+    }
+
+    /**
+     * @param file a file
+     * @return the capture time cached for the file, or for a file with the same content, or null if there is none
+     */
+    public LocalDateTime get(Path file) {
+        return lookup(file).getCapture();
+    }
+
+    /**
+     * Look a file up as {@link #get(Path)} does, keeping what was read of the file for {@link #put(Lookup, LocalDateTime)}.
+     * @param file a file
+     * @return the lookup, with the capture time found, if any
+     */
+    public Lookup lookup(Path file) {
+        Lookup lookup = new Lookup(key(file), attributes(file));
+        if (lookup.attributes == null) {
+            misses.incrementAndGet();
+            return lookup;
+        }
+        Entry entry = entries.get(lookup.key);
+        if (entry != null && entry.matches(lookup.attributes)) {
+            hits.incrementAndGet();
+            seen(entry);
+            lookup.capture = entry.capture;
+            return lookup;
+        }
+
+        // Renamed, moved or touched since, recognized by its content
+        lookup.fingerprint = fingerprint(file);
+        String previousKey = lookup.fingerprint == null ? null : byFingerprint.get(lookup.fingerprint);
+        Entry previous = previousKey == null ? null : entries.get(previousKey);
+        // The entry may have been replaced since, for a file with another content
+        if (previous == null || !previous.fingerprint.equals(lookup.fingerprint)) {
+            misses.incrementAndGet();
+            return lookup;
+        }
+        log.debug("Recognized {} as {}", file, previousKey);
+        hits.incrementAndGet();
+        fingerprintHits.incrementAndGet();
+        if (!previousKey.equals(lookup.key) && Files.notExists(Paths.get(previousKey))) {
+            entries.remove(previousKey);
+        }
+        store(lookup.key, lookup.attributes, lookup.fingerprint, previous.capture);
+        lookup.capture = previous.capture;
+        return lookup;
+    }
+
+    /**
+     * Cache the capture time of a file, along with its current size, last modification time and fingerprint.
+     * @param file a file
+     * @param capture its capture time
+     */
+    public void put(Path file, LocalDateTime capture) {
+        BasicFileAttributes attributes = attributes(file);
+        String fingerprint = attributes == null ? null : fingerprint(file);
+        if (fingerprint != null) {
+            store(key(file), attributes, fingerprint, capture);
+        }
+    }
+
+    /**
+     * Cache the capture time of a file looked up and missing, with the size, last modification time and
+     * fingerprint read by the lookup, so its content is not read again. Nothing is cached if the lookup could not
+     * read them.
+     * @param lookup the lookup of the file
+     * @param capture its capture time
+     */
+    public void put(Lookup lookup, LocalDateTime capture) {
+        if (lookup.fingerprint != null) {
+            store(lookup.key, lookup.attributes, lookup.fingerprint, capture);
+        }
+    }
+
+    private void store(String key, BasicFileAttributes attributes, String fingerprint, LocalDateTime capture) {
+        entries.put(key, new Entry(attributes.size(), attributes.lastModifiedTime().toMillis(), fingerprint, capture, today()));
+        byFingerprint.put(fingerprint, key);
+        modified = true;
+    }
+
+    /**
+     * Note the day the file of the entry was seen, so its entry is kept for another retention period. Written
+     * back once a day at most, so a run of hits alone does not rewrite the cache file on each run of the day.
+     */
+    private void seen(Entry entry) {
+        int today = today();
+        if (entry.lastSeen != today) {
+            entry.lastSeen = today;
+            modified = true;
+        }
+    }
+
+    private int today() {
+        return (int) LocalDate.now(clock).toEpochDay();
+    }
+
+    /**
+     * Drop all the entries, so every file is extracted again.
+     */
+    public void invalidate() {
+        log.info("Invalidating the metadata cache {}", file);
+        entries.clear();
+        byFingerprint.clear();
+        modified = true;
+    }
+
+    /**
+     * @return the number of files found in the cache, by path or by content
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return the number of files found in the cache by content only, after they were renamed, moved or touched
+     */
+    public long getFingerprintHits() {
+        return fingerprintHits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private static String key(Path file) {
+        return file.toAbsolutePath().normalize().toString();
+    }
+
+    private String fingerprint(Path file) {
+        try {
+            return Fingerprint.of(file);
+        } catch (IOException e) {
+            log.debug("Cannot read the content of {}: {}", file, e.getMessage());
+            return null;
+        }
+    }
+
+    private BasicFileAttributes attributes(Path file) {
+        try {
+            return Files.readAttributes(file, BasicFileAttributes.class);
+        } catch (IOException e) {
+            log.debug("Cannot read the attributes of {}: {}", file, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Write the entries to the cache file, replacing it at once so an interrupted run does not leave it truncated.
+     * The entries of the files not seen for longer than the retention period are dropped.
+     * @throws IOException if the file cannot be written
+     */
+    public void save() throws IOException {
+        prune();
+        Path directory = file.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+                // A snapshot, as the entries may change while being written
+                Map<String, Entry> snapshot = new HashMap<>(entries);
+                out.writeInt(MAGIC);
+                out.writeInt(snapshot.size());
+                for (Map.Entry<String, Entry> entry : snapshot.entrySet()) {
+                    Entry value = entry.getValue();
+                    out.writeUTF(entry.getKey());
+                    out.writeLong(value.size);
+                    out.writeLong(value.lastModified);
+                    out.writeUTF(value.fingerprint);
+                    out.writeLong(value.capture.toEpochSecond(ZoneOffset.UTC));
+                    out.writeInt(value.capture.getNano());
+                    out.writeInt(value.lastSeen);
+                }
+            }
+            try {
+                Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+            modified = false;
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    private void prune() {
+        int oldest = today() - retentionDays;
+        int pruned = 0;
+        for (Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator(); iterator.hasNext(); ) {
+            Map.Entry<String, Entry> entry = iterator.next();
+            if (entry.getValue().lastSeen < oldest) {
+                iterator.remove();
+                byFingerprint.remove(entry.getValue().fingerprint, entry.getKey());
+                pruned++;
+            }
+        }
+        if (pruned > 0) {
+            log.info("Dropped {} entries not seen for {} days from the metadata cache", pruned, retentionDays);
+        }
+    }
+
+    /**
+     * Save the entries if they changed, and report the hits and misses.
+     */
+    @Override
+    public void close() {
+        log.info("Metadata cache: {} hits, {} of them by content, {} misses", hits.get(), fingerprintHits.get(), misses.get());
+        if (modified) {
+            try {
+                save();
+            } catch (IOException e) {
+                log.warn("Could not save the metadata cache {}: {}", file, e.toString());
+            }
+        }
+    }
+
+    private static class Entry {
+
+        private final long size;
+
+        private final long lastModified;
+
+        private final String fingerprint;
+
+        private final LocalDateTime capture;
+
+        // The day the file was last seen, from the epoch
+        private volatile int lastSeen;
+
+        Entry(long size, long lastModified, String fingerprint, LocalDateTime capture, int lastSeen) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.fingerprint = fingerprint;
+            this.capture = capture;
+            this.lastSeen = lastSeen;
+        }
+
+        boolean matches(BasicFileAttributes attributes) {
+            return size == attributes.size() && lastModified == attributes.lastModifiedTime().toMillis();
+        }
+    }
+
+    /**
+     * The lookup of a file, with what was read of the file to look it up.
+     */
+    public static final class Lookup {
+
+        private final String key;
+
+        private final BasicFileAttributes attributes;
+
+        // Null until the content is read, when the file is not found by its path
+        private String fingerprint;
+
+        private LocalDateTime capture;
+
+        private Lookup(String key, BasicFileAttributes attributes) {
+            this.key = key;
+            this.attributes = attributes;
+        }
+
+        /**
+         * @return the capture time cached for the file, or for a file with the same content, or null if there is none
+         */
+        public LocalDateTime getCapture() {
+            return capture;
+        }
+    }
+}
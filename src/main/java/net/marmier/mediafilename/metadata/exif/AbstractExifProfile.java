@@ -1,36 +1,52 @@
 package net.marmier.mediafilename.metadata.exif;
 
-import com.thebuzzmedia.exiftool.ExifTool;
+import com.thebuzzmedia.exiftool.Tag;
+import net.marmier.mediafilename.metadata.FileType;
 import net.marmier.mediafilename.metadata.MetaData;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 import java.io.File;
-import java.io.IOException;
-import java.util.regex.Pattern;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * Added by raphael on 07.05.16.
  */
 public abstract class AbstractExifProfile implements ExifProfile {
 
-    private Logger log = LoggerFactory.getLogger(this.getClass());
+    public AbstractExifProfile(FileType fileType, List<String> extensions, Tag... tags) {
+        this.fileType = fileType;
+        this.extensions = Collections.unmodifiableList(extensions);
+        this.tags = Collections.unmodifiableList(Arrays.asList(tags));
+    }
+
+    private final FileType fileType;
+
+    private final List<String> extensions;
 
-    public AbstractExifProfile(Pattern filePattern) {
-        this.filePattern = filePattern;
+    private final List<Tag> tags;
+
+    @Override
+    public FileType getFileType() {
+        return fileType;
     }
 
-    private final Pattern filePattern;
+    @Override
+    public Collection<String> getExtensions() {
+        return extensions;
+    }
 
     @Override
-    public MetaData extract(File file, ExifTool tool) throws IOException {
-        String input = file.toString();
-        if (filePattern.matcher(input).matches()) {
-            log.debug("Extracting from file: {}", file.toString());
-            return extractMeta(file, tool);
-        }
-        return null;
+    public Collection<Tag> getTags() {
+        return tags;
     }
 
-    protected abstract MetaData extractMeta(File file, ExifTool tool) throws IOException;
+    /**
+     * By default, profiles rely on Exiftool only.
+     */
+    @Override
+    public MetaData readInProcess(File file) {
+        return null;
+    }
 }
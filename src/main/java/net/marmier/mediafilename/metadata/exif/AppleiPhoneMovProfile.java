@@ -1,24 +1,26 @@
 package net.marmier.mediafilename.metadata.exif;
 
-import com.thebuzzmedia.exiftool.ExifTool;
 import com.thebuzzmedia.exiftool.Tag;
 import com.thebuzzmedia.exiftool.core.StandardTag;
 import net.marmier.mediafilename.metadata.MetaData;
 import net.marmier.mediafilename.metadata.PhotoMetaData;
+import net.marmier.mediafilename.metadata.quicktime.QuickTimeTags;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.File;
-import java.io.IOException;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
-import java.util.Arrays;
-import java.util.List;
+import java.time.format.DateTimeParseException;
+import java.util.Collections;
 import java.util.Map;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
  * Added by raphael on 25.12.15.
  */
-public class AppleiPhoneMovProfile extends AbstractExifProfile {
+public class AppleiPhoneMovProfile extends QuickTimeProfile {
 
     /*
         MOV file created by apple's iPhone models have a "DateTimeOriginal" field set
@@ -30,24 +32,48 @@ public class AppleiPhoneMovProfile extends AbstractExifProfile {
     private final String IPHONE_MODEL = "iPhone";
 
     /* "Make" */
-    private final StandardTag makeField = StandardTag.MAKE;
+    private static final StandardTag makeField = StandardTag.MAKE;
 
     /* "Model" */
-    private final StandardTag modelField = StandardTag.MODEL;
+    private static final StandardTag modelField = StandardTag.MODEL;
 
     /* "CreationDate" */
-    private final StandardTag dateTimeField = StandardTag.CREATION_DATE;
+    private static final StandardTag dateTimeField = StandardTag.CREATION_DATE;
+
+    /* "com.apple.quicktime.creationdate" item, as in "2016-05-03T20:15:26+0200" */
+    private static final Pattern ITEM_DATE_TIME = Pattern.compile("^(\\d{4}-\\d{2}-\\d{2}T\\d{2}:\\d{2}:\\d{2}).*");
+
+    private Logger log = LoggerFactory.getLogger(AppleiPhoneMovProfile.class);
 
     public AppleiPhoneMovProfile() {
-        super(Pattern.compile(".+\\.(mov|MOV)$"));
+        super(Collections.singletonList("mov"), dateTimeField, modelField, makeField);
+    }
+
+    /**
+     * Take the date from the metadata items read in process. As with Exiftool's "CreationDate", the local time is kept.
+     */
+    @Override
+    public MetaData fromQuickTimeTags(File file, QuickTimeTags tags) {
+        try {
+            if (isIPhone(tags.getItem(QuickTimeTags.KEY_MAKE), tags.getItem(QuickTimeTags.KEY_MODEL))) {
+                String dateTime = tags.getItem(QuickTimeTags.KEY_CREATION_DATE);
+                Matcher matcher = dateTime == null ? null : ITEM_DATE_TIME.matcher(dateTime);
+                if (matcher != null && matcher.matches()) {
+                    return new PhotoMetaData(LocalDateTime.parse(matcher.group(1)), file.getName());
+                }
+            }
+            return null;
+        } catch (DateTimeParseException e) {
+            log.debug("Falling back to Exiftool for {}: {}", file, e.getMessage());
+            return null;
+        }
     }
 
-    public MetaData extractMeta(File file, ExifTool tool) throws IOException {
-        List<Tag> tags = Arrays.asList(new StandardTag[] { dateTimeField, modelField, makeField });
-        Map<Tag, String> valueMap = tool.getImageMeta(file, tags);
+    @Override
+    public MetaData fromTags(File file, Map<Tag, String> valueMap) {
         String model = valueMap.get(modelField);
         String make = valueMap.get(makeField);
-        if (APPLE_MAKE.equals(make) && model != null && model.startsWith(IPHONE_MODEL)) {
+        if (isIPhone(make, model)) {
             String dateTime = valueMap.get(dateTimeField);
             return dateTime == null ?
                 null :
@@ -55,4 +81,8 @@ public class AppleiPhoneMovProfile extends AbstractExifProfile {
         }
         return null;
     }
+
+    private boolean isIPhone(String make, String model) {
+        return APPLE_MAKE.equals(make) && model != null && model.startsWith(IPHONE_MODEL);
+    }
 }
@@ -1,10 +1,12 @@
 package net.marmier.mediafilename.metadata.exif;
 
-import com.thebuzzmedia.exiftool.ExifTool;
+import com.thebuzzmedia.exiftool.Tag;
+import net.marmier.mediafilename.metadata.FileType;
 import net.marmier.mediafilename.metadata.MetaData;
 
 import java.io.File;
-import java.io.IOException;
+import java.util.Collection;
+import java.util.Map;
 
 /**
  * Added by raphael on 11.12.15.
@@ -12,15 +14,40 @@ import java.io.IOException;
 public interface ExifProfile {
 
     /**
-     * Attempt to extract metadata from the passed file using
-     * the passed Exiftool instance. By contract, return null if
-     * the profile does not support the type of file.
+     * @return the type of file content the profile supports.
+     */
+    FileType getFileType();
+
+    /**
+     * @return the file name extensions of the types of file the profile supports, without the leading dot,
+     * like "jpg" or "mov.part". They are matched regardless of case.
+     */
+    Collection<String> getExtensions();
+
+    /**
+     * @return the tags the profile needs to build the metadata.
+     */
+    Collection<Tag> getTags();
+
+    /**
+     * Build the metadata from the tag values read from the passed file. The values may hold
+     * the tags of other profiles too, as they are read at once for all the profiles supporting
+     * the file. By contract, return null if the values do not fit the profile.
+     *
+     * @param file the file the values were read from.
+     * @param values the values read, by tag.
+     * @return the metadata object, or null if the values do not fit.
+     */
+    MetaData fromTags(File file, Map<Tag, String> values);
+
+    /**
+     * Attempt to extract metadata from the passed file without Exiftool, by reading the file
+     * directly. By contract, return null if the profile cannot, in which case the extraction
+     * falls back to reading the tags with Exiftool.
      *
      * @param file the file to extract metadata from.
-     * @param tool the Exiftool instance to be used.
-     * @return the metadata object, or null if the file is not supported.
-     * @throws IOException in case the file cannot be acessed.
+     * @return the metadata object, or null to fall back to Exiftool.
      */
-    MetaData extract(File file, ExifTool tool) throws IOException;
+    MetaData readInProcess(File file);
 
 }
@@ -0,0 +1,232 @@
+package net.marmier.mediafilename.metadata.exif;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Pool of long-lived Exiftool instances running in "stay open" mode, so the cost of starting
+ * the Perl interpreter is paid once per instance instead of once per file.
+ * <p>
+ * Instances are created lazily, up to the configured size, the first time they are needed. They
+ * are closed when the pool is closed, or at the latest when the JVM shuts down. Instances whose
+ * process died or was killed are discarded, to be replaced by fresh ones.
+ */
+public class ExifToolPool implements AutoCloseable {
+
+    /**
+     * System property to override the default number of Exiftool instances.
+     */
+    public static final String POOL_SIZE_PROPERTY = "mediafilename.exiftool.poolSize";
+
+    /**
+     * System property read by exiftool-lib for the path of the exiftool executable.
+     */
+    public static final String EXIFTOOL_PATH_PROPERTY = "exiftool.path";
+
+    private static final String DEFAULT_EXIFTOOL_PATH = "exiftool";
+
+    private static final int DEFAULT_POOL_SIZE = 1;
+
+    private Logger log = LoggerFactory.getLogger(ExifToolPool.class);
+
+    private final int size;
+
+    private final Supplier<PooledExifTool> factory;
+
+    // Instances ready to be borrowed
+    private final Deque<PooledExifTool> idle = new ArrayDeque<>();
+
+    // All instances created so far, borrowed or not
+    private final List<PooledExifTool> created = new ArrayList<>();
+
+    private final ExiftoolCounters counters = new ExiftoolCounters();
+
+    private Thread shutdownHook;
+
+    private boolean closed;
+
+    /**
+     * Build a pool sized after the {@link #POOL_SIZE_PROPERTY} system property, one instance by default.
+     */
+    public ExifToolPool() {
+        this(Integer.getInteger(POOL_SIZE_PROPERTY, DEFAULT_POOL_SIZE));
+    }
+
+    /**
+     * Build a pool of stay-open Exiftool instances.
+     * @param size the maximum number of instances
+     */
+    public ExifToolPool(int size) {
+        this(size, () -> new PooledExifTool(System.getProperty(EXIFTOOL_PATH_PROPERTY, DEFAULT_EXIFTOOL_PATH)));
+    }
+
+    /**
+     * Build a pool using the given factory to create the instances.
+     * @param size the maximum number of instances
+     * @param factory the factory creating new instances
+     */
+    public ExifToolPool(int size, Supplier<PooledExifTool> factory) {
+        if (size < 1) {
+            throw new IllegalArgumentException(String.format("Exiftool pool size must be at least 1: %d", size));
+        }
+        this.size = size;
+        this.factory = factory;
+    }
+
+    /**
+     * Borrow an instance from the pool, creating one if none is idle and the pool is not full yet,
+     * or waiting for an instance to be released otherwise. Borrowed instances must be given back
+     * with {@link #release(PooledExifTool)}.
+     * @return an Exiftool instance for the exclusive use of the caller
+     * @throws ExiftoolMetaDataServiceException if the pool is closed or the wait was interrupted
+     */
+    public synchronized PooledExifTool borrow() throws ExiftoolMetaDataServiceException {
+        while (true) {
+            if (closed) {
+                throw new ExiftoolMetaDataServiceException("Exiftool pool is closed.");
+            }
+            if (!idle.isEmpty()) {
+                PooledExifTool tool = idle.pop();
+                if (tool.isHealthy()) {
+                    return tool;
+                }
+                discard(tool);
+                continue;
+            }
+            if (created.size() < size) {
+                return create();
+            }
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ExiftoolMetaDataServiceException("Interrupted while waiting for an Exiftool instance.", e);
+            }
+        }
+    }
+
+    /**
+     * Give back an instance obtained with {@link #borrow()}. Failed instances are discarded.
+     * @param tool the instance to give back
+     */
+    public synchronized void release(PooledExifTool tool) {
+        if (closed) {
+            closeQuietly(tool);
+            return;
+        }
+        if (tool.isHealthy()) {
+            idle.push(tool);
+        } else {
+            discard(tool);
+        }
+        notifyAll();
+    }
+
+    /**
+     * Run the given function with an instance borrowed for the duration of the call.
+     * @param function the function to run
+     * @param <T> the type of the function's result
+     * @return the function's result
+     * @throws ExiftoolMetaDataServiceException if no instance could be obtained
+     * @throws IOException if the function fails to read a file
+     */
+    public <T> T apply(ToolFunction<T> function) throws ExiftoolMetaDataServiceException, IOException {
+        PooledExifTool tool = borrow();
+        try {
+            return function.apply(tool);
+        } finally {
+            release(tool);
+        }
+    }
+
+    /**
+     * @return the number of instances in use or idle, discarded ones excluded
+     */
+    public synchronized int getCreatedCount() {
+        return created.size();
+    }
+
+    /**
+     * @return the counters of the requests sent to the instances of the pool
+     */
+    public ExiftoolCounters getCounters() {
+        return counters;
+    }
+
+    /**
+     * @return the maximum number of instances
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Close all instances. Instances currently borrowed are closed when released.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        log.debug("Closing {} Exiftool instance(s)", created.size());
+        idle.forEach(this::closeQuietly);
+        idle.clear();
+        removeShutdownHook();
+        notifyAll();
+    }
+
+    private PooledExifTool create() {
+        log.debug("Creating Exiftool instance {} of {}", created.size() + 1, size);
+        PooledExifTool tool = factory.get();
+        created.add(tool);
+        if (shutdownHook == null) {
+            shutdownHook = new Thread(this::close, "exiftool-pool-shutdown");
+            Runtime.getRuntime().addShutdownHook(shutdownHook);
+        }
+        return tool;
+    }
+
+    private void discard(PooledExifTool tool) {
+        log.warn("Discarding failed Exiftool instance");
+        created.remove(tool);
+        counters.restart();
+        tool.kill();
+        closeQuietly(tool);
+    }
+
+    private void removeShutdownHook() {
+        if (shutdownHook != null && Thread.currentThread() != shutdownHook) {
+            try {
+                Runtime.getRuntime().removeShutdownHook(shutdownHook);
+            } catch (IllegalStateException e) {
+                // Already shutting down, the hook is running or will run.
+            }
+        }
+        shutdownHook = null;
+    }
+
+    private void closeQuietly(PooledExifTool tool) {
+        try {
+            tool.close();
+        } catch (IOException | RuntimeException e) {
+            log.warn("Failed to close Exiftool instance: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Function using an Exiftool instance.
+     * @param <T> the type of the result
+     */
+    @FunctionalInterface
+    public interface ToolFunction<T> {
+        T apply(PooledExifTool tool) throws IOException;
+    }
+}
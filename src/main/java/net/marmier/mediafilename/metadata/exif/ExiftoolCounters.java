@@ -0,0 +1,89 @@
+package net.marmier.mediafilename.metadata.exif;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters of the Exiftool requests of a pool and of their failures, for monitoring long imports.
+ */
+public class ExiftoolCounters {
+
+    private final AtomicLong requests = new AtomicLong();
+
+    private final AtomicLong timeouts = new AtomicLong();
+
+    private final AtomicLong crashes = new AtomicLong();
+
+    private final AtomicLong restarts = new AtomicLong();
+
+    private final AtomicLong retries = new AtomicLong();
+
+    private final AtomicLong quarantined = new AtomicLong();
+
+    void request() {
+        requests.incrementAndGet();
+    }
+
+    void failure(ExiftoolProcessException e) {
+        (e.isTimeout() ? timeouts : crashes).incrementAndGet();
+    }
+
+    void restart() {
+        restarts.incrementAndGet();
+    }
+
+    void retry() {
+        retries.incrementAndGet();
+    }
+
+    void quarantine() {
+        quarantined.incrementAndGet();
+    }
+
+    /**
+     * @return the number of requests sent to Exiftool
+     */
+    public long getRequests() {
+        return requests.get();
+    }
+
+    /**
+     * @return the number of requests killed for missing their deadline
+     */
+    public long getTimeouts() {
+        return timeouts.get();
+    }
+
+    /**
+     * @return the number of requests failed by the death of the process
+     */
+    public long getCrashes() {
+        return crashes.get();
+    }
+
+    /**
+     * @return the number of failed instances replaced by fresh ones
+     */
+    public long getRestarts() {
+        return restarts.get();
+    }
+
+    /**
+     * @return the number of requests sent again after a failure
+     */
+    public long getRetries() {
+        return retries.get();
+    }
+
+    /**
+     * @return the number of files no longer sent to Exiftool, as they repeatedly failed it
+     */
+    public long getQuarantined() {
+        return quarantined.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d requests, %d timeouts, %d crashes, %d restarts, %d retries, %d quarantined files",
+            getRequests(), getTimeouts(), getCrashes(), getRestarts(), getRetries(), getQuarantined());
+    }
+}
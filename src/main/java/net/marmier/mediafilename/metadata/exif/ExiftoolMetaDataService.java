@@ -1,50 +1,338 @@
 package net.marmier.mediafilename.metadata.exif;
 
-import com.thebuzzmedia.exiftool.ExifTool;
-import com.thebuzzmedia.exiftool.ExifToolBuilder;
+import com.thebuzzmedia.exiftool.Tag;
+import net.marmier.mediafilename.metadata.FileType;
+import net.marmier.mediafilename.metadata.FileTypeSniffer;
 import net.marmier.mediafilename.metadata.MetaData;
 import net.marmier.mediafilename.metadata.MetaDataService;
+import net.marmier.mediafilename.metadata.quicktime.QuickTimeTags;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Added by raphael on 30.11.15.
  */
 public class ExiftoolMetaDataService implements MetaDataService {
 
-    private ExifTool tool;
+    /**
+     * System property to override the default number of files per Exiftool request in batch extractions.
+     */
+    public static final String BATCH_SIZE_PROPERTY = "mediafilename.exiftool.batchSize";
 
-    private List<ExifProfile> registeredProfiles = new ArrayList<>();
+    private static final int DEFAULT_BATCH_SIZE = 50;
+
+    /**
+     * System property to override the default number of Exiftool failures a file may cause before it is
+     * quarantined, that is no longer sent to Exiftool.
+     */
+    public static final String MAX_FAILURES_PROPERTY = "mediafilename.exiftool.maxFailures";
+
+    private static final int DEFAULT_MAX_FAILURES = 2;
+
+    private Logger log = LoggerFactory.getLogger(ExiftoolMetaDataService.class);
+
+    private final ExifToolPool pool;
+
+    private final int batchSize;
+
+    private final ProfileRegistry registry;
+
+    private final FileTypeSniffer sniffer = new FileTypeSniffer();
+
+    private final int maxFailures = Integer.getInteger(MAX_FAILURES_PROPERTY, DEFAULT_MAX_FAILURES);
+
+    // Exiftool failures caused by each file, alone in its request
+    private final Map<File, Integer> failures = new ConcurrentHashMap<>();
 
     public ExiftoolMetaDataService() {
-        registeredProfiles.add(new JpgProfile());
-        registeredProfiles.add(new NikonNefProfile());
-        registeredProfiles.add(new AppleiPhoneMovProfile());
-        registeredProfiles.add(new MovProfile());
+        this(new ExifToolPool());
+    }
 
-        //tool = new ExifTool(ExifTool.Feature.STAY_OPEN);
+    /**
+     * Build a service using the Exiftool instances of the given pool.
+     * @param pool the pool of Exiftool instances, closed along with the service
+     */
+    public ExiftoolMetaDataService(ExifToolPool pool) {
+        this(pool, Integer.getInteger(BATCH_SIZE_PROPERTY, DEFAULT_BATCH_SIZE));
     }
 
+    /**
+     * Build a service using the Exiftool instances of the given pool.
+     * @param pool the pool of Exiftool instances, closed along with the service
+     * @param batchSize the maximum number of files per Exiftool request in batch extractions
+     */
+    public ExiftoolMetaDataService(ExifToolPool pool, int batchSize) {
+        this(pool, batchSize, ProfileRegistry.withDefaults());
+    }
+
+    /**
+     * Build a service using the Exiftool instances of the given pool.
+     * @param pool the pool of Exiftool instances, closed along with the service
+     * @param batchSize the maximum number of files per Exiftool request in batch extractions
+     * @param registry the profiles to extract metadata with
+     */
+    public ExiftoolMetaDataService(ExifToolPool pool, int batchSize, ProfileRegistry registry) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException(String.format("Batch size must be at least 1: %d", batchSize));
+        }
+        this.pool = pool;
+        this.batchSize = batchSize;
+        this.registry = registry;
+    }
+
+    /**
+     * Extract the metadata of a file. The profiles supporting the file extension first attempt to read it in
+     * process, then those of its content type when they differ. Failing that, the file is read with a single
+     * Exiftool request for the tags of all the profiles, then each profile, in order of registration, is given
+     * the chance to build the metadata from the shared values.
+     * @param file the file to extract metadata from
+     * @return the metadata, or null if the file is not supported
+     * @throws ExiftoolMetaDataServiceException if the file cannot be read
+     */
     @Override
     public MetaData metadataFromFile(File file) throws ExiftoolMetaDataServiceException {
+        List<ExifProfile> byExtension = registry.profilesFor(file);
+        MetaData inProcess = readInProcess(file, byExtension, Collections.emptyList());
+        if (inProcess != null) {
+            return inProcess;
+        }
+        List<ExifProfile> supporting = byContent(file);
+        inProcess = readInProcess(file, supporting, byExtension);
+        if (inProcess != null) {
+            return inProcess;
+        }
+        List<ExifProfile> profiles = withTags(supporting);
+        if (profiles.isEmpty()) {
+            return null;
+        }
 
-        try {
-            for (ExifProfile profile : registeredProfiles) {
-                MetaData metaData = profile.extract(file, getTool());
-                if (metaData != null) {
-                    return metaData;
+        log.debug("Extracting from file: {}", file);
+        return fromTags(file, profiles, read(file, tagsOf(profiles)));
+    }
+
+    /**
+     * Extract the metadata of many files. Files not read in process by their profiles are sent to Exiftool,
+     * grouped by supporting profiles in batches of at most the batch size, each with a single read of all the
+     * profiles' tags.
+     * @param files the files to extract metadata from
+     * @return the metadata of each file, in the order given, with null for unsupported files
+     * @throws ExiftoolMetaDataServiceException if the extraction fails
+     */
+    @Override
+    public List<MetaData> metadataFromFiles(List<File> files) throws ExiftoolMetaDataServiceException {
+        MetaData[] results = new MetaData[files.size()];
+
+        // Files grouped by the profiles supporting them, with their positions
+        Map<List<ExifProfile>, Map<File, List<Integer>>> groups = new LinkedHashMap<>();
+        for (int i = 0; i < results.length; i++) {
+            File file = files.get(i);
+            List<ExifProfile> byExtension = registry.profilesFor(file);
+            List<ExifProfile> profiles = byExtension;
+            results[i] = readInProcess(file, byExtension, Collections.emptyList());
+            if (results[i] == null) {
+                profiles = byContent(file);
+                results[i] = readInProcess(file, profiles, byExtension);
+            }
+            profiles = withTags(profiles);
+            if (results[i] == null && !profiles.isEmpty()) {
+                groups.computeIfAbsent(profiles, p -> new LinkedHashMap<>())
+                    .computeIfAbsent(file, f -> new ArrayList<>())
+                    .add(i);
+            }
+        }
+
+        for (Map.Entry<List<ExifProfile>, Map<File, List<Integer>>> group : groups.entrySet()) {
+            List<ExifProfile> profiles = group.getKey();
+            Collection<Tag> tags = tagsOf(profiles);
+            List<File> groupFiles = new ArrayList<>(group.getValue().keySet());
+            for (int from = 0; from < groupFiles.size(); from += batchSize) {
+                List<File> batch = groupFiles.subList(from, Math.min(from + batchSize, groupFiles.size()));
+                Map<File, Map<Tag, String>> values = readBatch(batch, tags);
+                for (File file : batch) {
+                    MetaData metaData = fromTags(file, profiles, values.get(file));
+                    group.getValue().get(file).forEach(i -> results[i] = metaData);
                 }
             }
+        }
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Called only when the profiles of the file extension did not read it in process, so that most files are
+     * not opened once more to find their type. Thumbnails and sidecar files are not opened at all.
+     * @return the profiles for the file, narrowed to its content type when recognized
+     */
+    private List<ExifProfile> byContent(File file) {
+        if (!registry.handlesByContent(file)) {
+            return registry.profilesFor(file);
+        }
+        FileType type;
+        try {
+            type = sniffer.sniff(file.toPath());
         } catch (IOException e) {
-            throw new ExiftoolMetaDataServiceException(String.format("File %s is unreadable.", file.getAbsoluteFile()), e);
+            log.debug("File type of {} is unknown: {}", file, e.getMessage());
+            type = FileType.UNKNOWN;
+        }
+        return registry.profilesFor(file, type);
+    }
+
+    private static MetaData readInProcess(File file, List<ExifProfile> profiles, List<ExifProfile> tried) {
+        if (profiles == tried) {
+            return null;
+        }
+        // Parsed once for all the QuickTime profiles, null if not parsed yet or unreadable
+        QuickTimeTags quickTime = null;
+        boolean quickTimeRead = false;
+        for (ExifProfile profile : profiles) {
+            if (tried.contains(profile)) {
+                continue;
+            }
+            MetaData metaData;
+            if (profile instanceof QuickTimeProfile) {
+                if (!quickTimeRead) {
+                    quickTime = ((QuickTimeProfile) profile).read(file);
+                    quickTimeRead = true;
+                }
+                metaData = quickTime == null ? null : ((QuickTimeProfile) profile).fromQuickTimeTags(file, quickTime);
+            } else {
+                metaData = profile.readInProcess(file);
+            }
+            if (metaData != null) {
+                return metaData;
+            }
+        }
+        return null;
+    }
+
+    private static List<ExifProfile> withTags(List<ExifProfile> profiles) {
+        List<ExifProfile> withTags = new ArrayList<>(profiles.size());
+        for (ExifProfile profile : profiles) {
+            if (!profile.getTags().isEmpty()) {
+                withTags.add(profile);
+            }
+        }
+        return withTags;
+    }
+
+    private static Collection<Tag> tagsOf(List<ExifProfile> profiles) {
+        Set<Tag> tags = new LinkedHashSet<>();
+        profiles.forEach(profile -> tags.addAll(profile.getTags()));
+        return tags;
+    }
+
+    private static MetaData fromTags(File file, List<ExifProfile> profiles, Map<Tag, String> values) {
+        for (ExifProfile profile : profiles) {
+            MetaData metaData = profile.fromTags(file, values);
+            if (metaData != null) {
+                return metaData;
+            }
         }
         return null;
     }
 
-    public ExifTool getTool() {
-        return new ExifToolBuilder().build();
+    /**
+     * Read a single file, retrying on a fresh instance as long as the file is not quarantined.
+     * @return the values read, empty for a quarantined file
+     */
+    private Map<Tag, String> read(File file, Collection<Tag> tags) throws ExiftoolMetaDataServiceException {
+        while (!isQuarantined(file)) {
+            try {
+                pool.getCounters().request();
+                return pool.apply(tool -> tool.getImageMeta(file, tags));
+            } catch (ExiftoolProcessException e) {
+                fail(file, e);
+            } catch (IOException e) {
+                throw new ExiftoolMetaDataServiceException(String.format("File %s is unreadable.", file.getAbsoluteFile()), e);
+            }
+        }
+        return Collections.emptyMap();
+    }
+
+    /**
+     * Read a batch of files. When the process fails, the batch is split in halves retried on fresh instances,
+     * down to single files, to isolate the culprit.
+     * @return the values read for each file, empty for quarantined files
+     */
+    private Map<File, Map<Tag, String>> readBatch(List<File> batch, Collection<Tag> tags) throws ExiftoolMetaDataServiceException {
+        Map<File, Map<Tag, String>> results = new HashMap<>();
+        List<File> candidates = new ArrayList<>(batch.size());
+        for (File file : batch) {
+            if (isQuarantined(file)) {
+                results.put(file, Collections.emptyMap());
+            } else {
+                candidates.add(file);
+            }
+        }
+        if (candidates.isEmpty()) {
+            return results;
+        }
+        try {
+            pool.getCounters().request();
+            results.putAll(pool.apply(tool -> tool.getImageMeta(candidates, tags)));
+        } catch (ExiftoolProcessException e) {
+            if (candidates.size() == 1) {
+                fail(candidates.get(0), e);
+                results.putAll(readBatch(candidates, tags));
+            } else {
+                pool.getCounters().failure(e);
+                pool.getCounters().retry();
+                log.warn("Exiftool failed on a batch of {} files, retrying in halves: {}", candidates.size(), e.getMessage());
+                int half = candidates.size() / 2;
+                results.putAll(readBatch(candidates.subList(0, half), tags));
+                results.putAll(readBatch(candidates.subList(half, candidates.size()), tags));
+            }
+        } catch (IOException e) {
+            throw new ExiftoolMetaDataServiceException(String.format("Batch of %d files starting with %s is unreadable.",
+                candidates.size(), candidates.get(0).getAbsoluteFile()), e);
+        }
+        return results;
+    }
+
+    private boolean isQuarantined(File file) {
+        return failures.getOrDefault(file, 0) >= maxFailures;
+    }
+
+    /**
+     * Record a failure of Exiftool on a file alone in its request, quarantining the file when it failed too often.
+     */
+    private void fail(File file, ExiftoolProcessException e) {
+        pool.getCounters().failure(e);
+        int count = failures.merge(file, 1, Integer::sum);
+        if (count >= maxFailures) {
+            pool.getCounters().quarantine();
+            log.error("Exiftool failed {} times on file {}, which is now quarantined: {}", count, file, e.getMessage());
+        } else {
+            pool.getCounters().retry();
+            log.warn("Exiftool failed on file {}, retrying: {}", file, e.getMessage());
+        }
+    }
+
+    /**
+     * @return the counters of the Exiftool requests
+     */
+    public ExiftoolCounters getCounters() {
+        return pool.getCounters();
+    }
+
+    @Override
+    public void close() {
+        if (pool.getCounters().getRequests() > 0) {
+            log.info("Exiftool: {}", pool.getCounters());
+        }
+        pool.close();
     }
 }
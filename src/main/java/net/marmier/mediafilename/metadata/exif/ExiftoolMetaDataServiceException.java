@@ -8,4 +8,8 @@ public class ExiftoolMetaDataServiceException extends Exception {
     public ExiftoolMetaDataServiceException(String message, Throwable e) {
         super(message, e);
     }
+
+    public ExiftoolMetaDataServiceException(String message) {
+        super(message);
+    }
 }
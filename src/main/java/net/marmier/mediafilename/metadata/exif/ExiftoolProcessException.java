@@ -0,0 +1,24 @@
+package net.marmier.mediafilename.metadata.exif;
+
+import java.io.IOException;
+
+/**
+ * Failure of the Exiftool process itself during a request: it missed the request deadline and was killed,
+ * or it died. The instance cannot be used anymore, unlike after the failure to read a single file.
+ */
+public class ExiftoolProcessException extends IOException {
+
+    private final boolean timeout;
+
+    public ExiftoolProcessException(String message, boolean timeout, Throwable cause) {
+        super(message, cause);
+        this.timeout = timeout;
+    }
+
+    /**
+     * @return true if the process was killed for missing the request deadline
+     */
+    public boolean isTimeout() {
+        return timeout;
+    }
+}
@@ -0,0 +1,33 @@
+package net.marmier.mediafilename.metadata.exif;
+
+import com.thebuzzmedia.exiftool.Tag;
+import com.thebuzzmedia.exiftool.core.StandardTag;
+import net.marmier.mediafilename.metadata.FileType;
+import net.marmier.mediafilename.metadata.MetaData;
+import net.marmier.mediafilename.metadata.PhotoMetaData;
+
+import java.io.File;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * HEIF pictures, like the HEIC files of recent phones, read with Exiftool. Content sniffing also routes
+ * here the HEIF files saved with a JPEG extension.
+ */
+public class HeifProfile extends AbstractExifProfile {
+
+    /* "DateTimeOriginal" */
+    private static final StandardTag dateTimeField = StandardTag.DATE_TIME_ORIGINAL;
+
+    public HeifProfile() {
+        super(FileType.HEIF, Arrays.asList("heic", "heif", "hif"), dateTimeField);
+    }
+
+    @Override
+    public MetaData fromTags(File file, Map<Tag, String> valueMap) {
+        String dateTime = valueMap.get(dateTimeField);
+        return dateTime == null ? null : new PhotoMetaData(LocalDateTime.parse(dateTime, DateTimeFormatter.ofPattern("y:M:d H:m:s")), file.getName());
+    }
+}
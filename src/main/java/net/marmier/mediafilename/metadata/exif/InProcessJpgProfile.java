@@ -0,0 +1,48 @@
+package net.marmier.mediafilename.metadata.exif;
+
+import com.thebuzzmedia.exiftool.Tag;
+import net.marmier.mediafilename.metadata.FileType;
+import net.marmier.mediafilename.metadata.MetaData;
+import net.marmier.mediafilename.metadata.PhotoMetaData;
+import net.marmier.mediafilename.metadata.jpeg.JpegExifReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Fast path for JPEG files, reading "DateTimeOriginal" from the EXIF segment without Exiftool. Registered
+ * ahead of {@link JpgProfile}, which takes over whenever the file cannot be read in process.
+ */
+public class InProcessJpgProfile extends AbstractExifProfile {
+
+    private Logger log = LoggerFactory.getLogger(InProcessJpgProfile.class);
+
+    private final JpegExifReader reader = new JpegExifReader();
+
+    public InProcessJpgProfile() {
+        super(FileType.JPEG, Arrays.asList("jpg", "jpeg"));
+    }
+
+    @Override
+    public MetaData readInProcess(File file) {
+        try {
+            String dateTime = reader.readDateTimeOriginal(file.toPath());
+            return dateTime == null ? null : new PhotoMetaData(LocalDateTime.parse(dateTime, DateTimeFormatter.ofPattern("y:M:d H:m:s")), file.getName());
+        } catch (IOException | DateTimeParseException e) {
+            log.debug("Falling back to Exiftool for {}: {}", file, e.getMessage());
+            return null;
+        }
+    }
+
+    @Override
+    public MetaData fromTags(File file, Map<Tag, String> values) {
+        return null;
+    }
+}
@@ -1,18 +1,16 @@
 package net.marmier.mediafilename.metadata.exif;
 
-import com.thebuzzmedia.exiftool.ExifTool;
 import com.thebuzzmedia.exiftool.Tag;
 import com.thebuzzmedia.exiftool.core.StandardTag;
+import net.marmier.mediafilename.metadata.FileType;
 import net.marmier.mediafilename.metadata.MetaData;
 import net.marmier.mediafilename.metadata.PhotoMetaData;
 
 import java.io.File;
-import java.io.IOException;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.Map;
-import java.util.regex.Pattern;
 
 /**
  * Added by raphael on 25.12.15.
@@ -20,15 +18,14 @@ import java.util.regex.Pattern;
 public class JpgProfile extends AbstractExifProfile {
 
     /* "DateTimeOriginal" */
-    private final StandardTag dateTimeField = StandardTag.DATE_TIME_ORIGINAL;
+    private static final StandardTag dateTimeField = StandardTag.DATE_TIME_ORIGINAL;
 
     public JpgProfile() {
-        super(Pattern.compile(".+\\.(jpg|JPG|jpeg|JPEG)$"));
+        super(FileType.JPEG, Arrays.asList("jpg", "jpeg"), dateTimeField);
     }
 
-    public MetaData extractMeta(File file, ExifTool tool) throws IOException {
-
-        Map<Tag, String> valueMap = tool.getImageMeta(file, Collections.singletonList(dateTimeField));
+    @Override
+    public MetaData fromTags(File file, Map<Tag, String> valueMap) {
         String dateTime = valueMap.get(dateTimeField);
         return dateTime == null ? null : new PhotoMetaData(LocalDateTime.parse(dateTime, DateTimeFormatter.ofPattern("y:M:d H:m:s")), file.getName());
     }
@@ -0,0 +1,57 @@
+package net.marmier.mediafilename.metadata.exif;
+
+import com.thebuzzmedia.exiftool.process.Command;
+import com.thebuzzmedia.exiftool.process.CommandExecutor;
+import com.thebuzzmedia.exiftool.process.CommandProcess;
+import com.thebuzzmedia.exiftool.process.CommandResult;
+import com.thebuzzmedia.exiftool.process.OutputHandler;
+import com.thebuzzmedia.exiftool.process.executor.CommandExecutors;
+import com.thebuzzmedia.exiftool.process.executor.DefaultCommandProcess;
+
+import java.io.IOException;
+
+/**
+ * Command executor keeping hold of the stay-open process it starts, which exiftool-lib does not expose,
+ * so that a hung Exiftool can be detected and killed.
+ */
+class KillableCommandExecutor implements CommandExecutor {
+
+    private final CommandExecutor delegate = CommandExecutors.newExecutor();
+
+    private volatile Process process;
+
+    @Override
+    public CommandResult execute(Command command) throws IOException {
+        return delegate.execute(command);
+    }
+
+    @Override
+    public CommandResult execute(Command command, OutputHandler handler) throws IOException {
+        return delegate.execute(command, handler);
+    }
+
+    @Override
+    public CommandProcess start(Command command) throws IOException {
+        Process started = new ProcessBuilder(command.getArguments()).start();
+        process = started;
+        return new DefaultCommandProcess(started.getInputStream(), started.getOutputStream(), started.getErrorStream());
+    }
+
+    /**
+     * @return true if a process was started and did not exit
+     */
+    boolean isAlive() {
+        Process started = process;
+        return started != null && started.isAlive();
+    }
+
+    /**
+     * Forcibly end the process, if any. A pending read of its output ends with it.
+     */
+    void kill() {
+        Process started = process;
+        if (started != null) {
+            started.destroyForcibly();
+        }
+    }
+}
@@ -1,34 +1,39 @@
 package net.marmier.mediafilename.metadata.exif;
 
-import com.thebuzzmedia.exiftool.ExifTool;
 import com.thebuzzmedia.exiftool.Tag;
 import net.marmier.mediafilename.metadata.MetaData;
 import net.marmier.mediafilename.metadata.PhotoMetaData;
+import net.marmier.mediafilename.metadata.quicktime.QuickTimeTags;
 
 import java.io.File;
-import java.io.IOException;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
-import java.util.Arrays;
-import java.util.List;
+import java.util.Collections;
 import java.util.Map;
-import java.util.regex.Pattern;
 
 /**
  * Added by raphael on 13.05.2016.
  */
-public class MovProfile extends AbstractExifProfile {
+public class MovProfile extends QuickTimeProfile {
 
     /* "CreationDate" */
-    private final ExtendedTags mediaCreateDate = ExtendedTags.MEDIA_CREATE_DATE;
+    private static final ExtendedTags mediaCreateDate = ExtendedTags.MEDIA_CREATE_DATE;
 
     public MovProfile() {
-        super(Pattern.compile(".+\\.(mov|MOV)$"));
+        super(Collections.singletonList("mov"), mediaCreateDate);
     }
 
-    public MetaData extractMeta(File file, ExifTool tool) throws IOException {
-        List<Tag> tags = Arrays.asList(new ExtendedTags[] { mediaCreateDate });
-        Map<Tag, String> valueMap = tool.getImageMeta(file, tags);
+    /**
+     * Take the media header's creation time, Exiftool's "MediaCreateDate", from the tags read in process.
+     */
+    @Override
+    public MetaData fromQuickTimeTags(File file, QuickTimeTags tags) {
+        LocalDateTime dateTime = tags.getMediaCreateDate();
+        return dateTime == null ? null : new PhotoMetaData(dateTime, file.getName());
+    }
+
+    @Override
+    public MetaData fromTags(File file, Map<Tag, String> valueMap) {
         String dateTime = valueMap.get(mediaCreateDate);
         return dateTime == null ?
             null :
@@ -0,0 +1,283 @@
+package net.marmier.mediafilename.metadata.exif;
+
+import com.thebuzzmedia.exiftool.ExecutionStrategy;
+import com.thebuzzmedia.exiftool.ExifTool;
+import com.thebuzzmedia.exiftool.ExifToolBuilder;
+import com.thebuzzmedia.exiftool.Tag;
+import com.thebuzzmedia.exiftool.core.StandardFormat;
+import com.thebuzzmedia.exiftool.core.schedulers.DefaultScheduler;
+import com.thebuzzmedia.exiftool.core.strategies.StayOpenStrategy;
+import com.thebuzzmedia.exiftool.exceptions.UnreadableFileException;
+import com.thebuzzmedia.exiftool.process.OutputHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A stay-open Exiftool process, as lent by the {@link ExifToolPool}. It can query many files in a single
+ * request to the process. A process missing the deadline of a request is killed, and the instance must
+ * then be discarded.
+ */
+public class PooledExifTool implements AutoCloseable {
+
+    /**
+     * System property read by exiftool-lib for the idle time after which a stay-open process is stopped.
+     */
+    private static final String CLEANUP_DELAY_PROPERTY = "exiftool.processCleanupDelay";
+
+    private static final long DEFAULT_CLEANUP_DELAY = 600000L;
+
+    /**
+     * System property to override the default deadline of a request, in milliseconds.
+     */
+    public static final String TIMEOUT_PROPERTY = "mediafilename.exiftool.timeout";
+
+    private static final long DEFAULT_TIMEOUT = 60000L;
+
+    // Kills the processes missing their deadline, shared by all instances
+    private static final ScheduledExecutorService WATCHDOG = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "exiftool-watchdog");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private Logger log = LoggerFactory.getLogger(PooledExifTool.class);
+
+    private final String path;
+
+    private final KillableCommandExecutor executor;
+
+    private final ExecutionStrategy strategy;
+
+    private final ExifTool tool;
+
+    private final long timeout;
+
+    private volatile boolean broken;
+
+    /**
+     * Prepare a stay-open Exiftool, with the request deadline of the {@link #TIMEOUT_PROPERTY} system
+     * property. The process itself is only started by the first query.
+     * @param path path of the exiftool executable
+     */
+    public PooledExifTool(String path) {
+        this(path, Long.getLong(TIMEOUT_PROPERTY, DEFAULT_TIMEOUT));
+    }
+
+    /**
+     * Prepare a stay-open Exiftool. The process itself is only started by the first query.
+     * @param path path of the exiftool executable
+     * @param timeout the deadline of a request in milliseconds, after which the process is killed
+     */
+    public PooledExifTool(String path, long timeout) {
+        this.path = path;
+        this.timeout = timeout;
+        this.executor = new KillableCommandExecutor();
+        this.strategy = new StayOpenStrategy(new DefaultScheduler(Long.getLong(CLEANUP_DELAY_PROPERTY, DEFAULT_CLEANUP_DELAY)));
+        this.tool = new ExifToolBuilder()
+            .withPath(path)
+            .withExecutor(executor)
+            .withStrategy(strategy)
+            .build();
+    }
+
+    /**
+     * Query the given tags for a single file.
+     * @param file the file to read
+     * @param tags the tags to query
+     * @return the values found, by tag
+     * @throws ExiftoolProcessException if the process misses the deadline or dies
+     * @throws IOException if the file cannot be read
+     */
+    public Map<Tag, String> getImageMeta(File file, Collection<Tag> tags) throws IOException {
+        if (!file.canRead()) {
+            throw new UnreadableFileException(file, String.format("File %s is unreadable.", file.getAbsolutePath()));
+        }
+        return execute(Collections.singletonList(file), tags).get(file);
+    }
+
+    /**
+     * Query the given tags for all the given files, in a single request to the Exiftool process. Files which
+     * cannot be read are not part of the request and get an empty map.
+     * @param files the files to read
+     * @param tags the tags to query
+     * @return the values found by tag, for each file in the order given
+     * @throws ExiftoolProcessException if the process misses the deadline or dies
+     */
+    public Map<File, Map<Tag, String>> getImageMeta(List<File> files, Collection<Tag> tags) throws IOException {
+        Map<File, Map<Tag, String>> results = new LinkedHashMap<>();
+        List<File> readable = new ArrayList<>(files.size());
+        for (File file : files) {
+            results.put(file, Collections.emptyMap());
+            if (file.canRead()) {
+                readable.add(file);
+            } else {
+                log.warn("Skipping unreadable file: {}", file);
+            }
+        }
+        if (!readable.isEmpty()) {
+            results.putAll(execute(readable, tags));
+        }
+        return results;
+    }
+
+    /**
+     * @return true if the underlying process is running
+     */
+    public boolean isRunning() {
+        return tool.isRunning();
+    }
+
+    /**
+     * @return false if the instance failed a request or its process died, in which case it must be discarded
+     */
+    public boolean isHealthy() {
+        return !broken && !(tool.isRunning() && !executor.isAlive());
+    }
+
+    /**
+     * Forcibly end the process, making the instance unusable.
+     */
+    public void kill() {
+        broken = true;
+        executor.kill();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            tool.close();
+        } catch (IOException e) {
+            // A killed process cannot be asked to stop anymore
+            if (!broken) {
+                throw e;
+            }
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(String.format("Failed to stop Exiftool: %s", e.getMessage()), e);
+        }
+    }
+
+    /**
+     * Send a request for the given files, killing the process if it misses the deadline.
+     */
+    private Map<File, Map<Tag, String>> execute(List<File> files, Collection<Tag> tags) throws IOException {
+        List<String> args = new ArrayList<>(StandardFormat.NUMERIC.getArgs());
+        args.add("-S");
+        for (Tag tag : tags) {
+            args.add("-" + tag.getName());
+        }
+        for (File file : files) {
+            args.add(file.getAbsolutePath());
+        }
+        args.add("-execute");
+
+        BatchTagHandler handler = new BatchTagHandler(files, tags);
+        AtomicBoolean timedOut = new AtomicBoolean();
+        ScheduledFuture<?> watchdog = WATCHDOG.schedule(() -> {
+            timedOut.set(true);
+            log.warn("Killing Exiftool, missed the deadline of {} ms", timeout);
+            kill();
+        }, timeout, TimeUnit.MILLISECONDS);
+        IOException cause = null;
+        try {
+            strategy.execute(executor, path, args, handler);
+        } catch (IOException e) {
+            cause = e;
+        } finally {
+            watchdog.cancel(false);
+        }
+        // The output of a dead process just ends, without the ready line
+        if (timedOut.get() || cause != null || !handler.isReady()) {
+            kill();
+            throw new ExiftoolProcessException(timedOut.get() ?
+                String.format("Exiftool missed the deadline of %d ms.", timeout) :
+                "Exiftool died.", timedOut.get(), cause);
+        }
+        return handler.getResults();
+    }
+
+    /**
+     * Reads the output of a multi-file request. Exiftool precedes the tags of each file with a header line
+     * holding the path of the file, unless the request holds a single file.
+     */
+    static class BatchTagHandler implements OutputHandler {
+
+        private static final String FILE_HEADER = "======== ";
+
+        private static final String TAG_SEPARATOR = ": ";
+
+        private static final String READY = "{ready}";
+
+        private final Map<String, File> filesByPath = new HashMap<>();
+
+        private final Map<String, Tag> tagsByName = new HashMap<>();
+
+        private final Map<File, Map<Tag, String>> results = new LinkedHashMap<>();
+
+        private Map<Tag, String> current;
+
+        private boolean ready;
+
+        BatchTagHandler(List<File> files, Collection<Tag> tags) {
+            for (File file : files) {
+                filesByPath.put(file.getAbsolutePath(), file);
+                results.put(file, new HashMap<>());
+            }
+            for (Tag tag : tags) {
+                tagsByName.put(tag.getName(), tag);
+            }
+            current = files.size() == 1 ? results.get(files.get(0)) : null;
+        }
+
+        @Override
+        public boolean readLine(String line) {
+            if (line == null) {
+                return false;
+            }
+            if (READY.equals(line)) {
+                ready = true;
+                return false;
+            }
+            if (line.startsWith(FILE_HEADER)) {
+                File file = filesByPath.get(line.substring(FILE_HEADER.length()));
+                current = file == null ? null : results.get(file);
+                return true;
+            }
+            int separator = line.indexOf(TAG_SEPARATOR);
+            if (current != null && separator > 0) {
+                Tag tag = tagsByName.get(line.substring(0, separator));
+                if (tag != null) {
+                    current.put(tag, line.substring(separator + TAG_SEPARATOR.length()));
+                }
+            }
+            return true;
+        }
+
+        /**
+         * @return true if the output was read up to the end of the request
+         */
+        boolean isReady() {
+            return ready;
+        }
+
+        Map<File, Map<Tag, String>> getResults() {
+            return results;
+        }
+    }
+}
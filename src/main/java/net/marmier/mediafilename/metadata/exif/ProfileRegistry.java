@@ -0,0 +1,194 @@
+package net.marmier.mediafilename.metadata.exif;
+
+import net.marmier.mediafilename.metadata.FileType;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.Set;
+
+/**
+ * The profiles of the metadata service, indexed by file name extension. Each extension maps to the chain of
+ * profiles supporting it, in order of registration, so finding the profiles for a file is a hash lookup.
+ * When the type of the file content is known, it narrows the chains to the profiles of that type, or finds the
+ * profiles of files whose extension is unknown or does not match their content.
+ */
+public class ProfileRegistry {
+
+    // Files that are not media of their own, never handled by content: movie thumbnails, scans whose dates are
+    // not capture times, and the sidecar files of editors
+    private static final Set<String> NOT_BY_CONTENT = new HashSet<>(Arrays.asList("thm", "tif", "tiff", "xmp", "aae", "xml", "dop", "pp3"));
+
+    private final List<ExifProfile> profiles;
+
+    private final Map<String, List<ExifProfile>> chains = new HashMap<>();
+
+    // For each file content type, the extension chains narrowed to the type, keyed by chain instance
+    private final Map<FileType, Map<List<ExifProfile>, List<ExifProfile>>> typedChains = new EnumMap<>(FileType.class);
+
+    // Most dots in a registered extension, as in "mov.part"
+    private int maxExtensionDots;
+
+    /**
+     * @param profiles the profiles, in order of precedence
+     */
+    public ProfileRegistry(List<ExifProfile> profiles) {
+        this.profiles = Collections.unmodifiableList(new ArrayList<>(profiles));
+        for (ExifProfile profile : this.profiles) {
+            for (String extension : profile.getExtensions()) {
+                String key = extension.toLowerCase(Locale.ROOT);
+                List<ExifProfile> chain = chains.computeIfAbsent(key, k -> new ArrayList<>());
+                if (!chain.contains(profile)) {
+                    chain.add(profile);
+                }
+                maxExtensionDots = Math.max(maxExtensionDots, dots(key));
+            }
+        }
+        chains.replaceAll((extension, chain) -> Collections.unmodifiableList(chain));
+
+        for (FileType type : FileType.values()) {
+            if (type != FileType.UNKNOWN) {
+                Map<List<ExifProfile>, List<ExifProfile>> narrowed = new IdentityHashMap<>();
+                narrowed.put(Collections.emptyList(), narrow(Collections.emptyList(), type));
+                for (List<ExifProfile> chain : chains.values()) {
+                    narrowed.put(chain, narrow(chain, type));
+                }
+                typedChains.put(type, narrowed);
+            }
+        }
+    }
+
+    /**
+     * Build the registry of the built-in profiles, followed by the profiles contributed through
+     * {@link ServiceLoader}, declared in <code>META-INF/services/net.marmier.mediafilename.metadata.exif.ExifProfile</code>.
+     * @return the registry
+     */
+    public static ProfileRegistry withDefaults() {
+        List<ExifProfile> profiles = new ArrayList<>(Arrays.asList(
+            new InProcessJpgProfile(),
+            new JpgProfile(),
+            new NikonNefProfile(),
+            new TiffRawProfile(),
+            new AppleiPhoneMovProfile(),
+            new MovProfile(),
+            new HeifProfile()));
+        for (ExifProfile profile : ServiceLoader.load(ExifProfile.class)) {
+            profiles.add(profile);
+        }
+        return new ProfileRegistry(profiles);
+    }
+
+    /**
+     * Find the profiles supporting a file. When several extensions of a file name are registered, like
+     * "mov.part" and "part", the longest wins.
+     * @param file the file
+     * @return the profiles, in order of precedence, or an empty list if the file is not supported
+     */
+    public List<ExifProfile> profilesFor(File file) {
+        String name = file.getName();
+        // Position of the dot starting the longest candidate extension, ignoring a leading dot
+        int dot = name.length();
+        for (int i = 0; i <= maxExtensionDots; i++) {
+            int previous = name.lastIndexOf('.', dot - 1);
+            if (previous < 1) {
+                break;
+            }
+            dot = previous;
+        }
+        while (dot < name.length()) {
+            List<ExifProfile> chain = chains.get(name.substring(dot + 1).toLowerCase(Locale.ROOT));
+            if (chain != null) {
+                return chain;
+            }
+            dot = name.indexOf('.', dot + 1);
+            if (dot < 0) {
+                break;
+            }
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * Find the profiles supporting a file of the given content type. The profiles of that type which also
+     * support the file name extension come first, then the other profiles of that type. The extension alone
+     * decides when no profile reads that type, and the files of {@link #handlesByContent(File)} are never
+     * handled by content.
+     * @param file the file
+     * @param type the type of the file content, {@link FileType#UNKNOWN} to rely on the extension only
+     * @return the profiles, in order of precedence, or an empty list if the file is not supported
+     */
+    public List<ExifProfile> profilesFor(File file, FileType type) {
+        List<ExifProfile> byExtension = profilesFor(file);
+        if (type == FileType.UNKNOWN || byExtension.isEmpty() && NOT_BY_CONTENT.contains(extension(file))) {
+            return byExtension;
+        }
+        List<ExifProfile> typed = typedChains.get(type).get(byExtension);
+        return typed.isEmpty() ? byExtension : typed;
+    }
+
+    /**
+     * Tell whether the content type of a file may change the profiles found for it, so that reading its type is
+     * pointless otherwise. Thumbnails, scans and sidecar files, like thm, tif or xmp files, are handled by their
+     * extension only, unless a profile supports it.
+     * @param file the file
+     * @return <code>true</code> if the profiles may depend on the type of the file content
+     */
+    public boolean handlesByContent(File file) {
+        return !NOT_BY_CONTENT.contains(extension(file)) || !profilesFor(file).isEmpty();
+    }
+
+    /**
+     * @return all the profiles, in order of precedence
+     */
+    public List<ExifProfile> getProfiles() {
+        return profiles;
+    }
+
+    private List<ExifProfile> narrow(List<ExifProfile> chain, FileType type) {
+        List<ExifProfile> narrowed = new ArrayList<>();
+        for (ExifProfile profile : chain) {
+            if (reads(profile, type)) {
+                narrowed.add(profile);
+            }
+        }
+        for (ExifProfile profile : profiles) {
+            if (reads(profile, type) && !narrowed.contains(profile)) {
+                narrowed.add(profile);
+            }
+        }
+        return Collections.unmodifiableList(narrowed);
+    }
+
+    /**
+     * @return <code>true</code> if the profile reads files of the type: its own, and MP4 for QuickTime profiles,
+     * the QuickTime reader parsing all ISO base media files
+     */
+    private static boolean reads(ExifProfile profile, FileType type) {
+        return profile.getFileType() == type || type == FileType.MP4 && profile.getFileType() == FileType.QUICKTIME;
+    }
+
+    private static String extension(File file) {
+        String name = file.getName();
+        int dot = name.lastIndexOf('.');
+        return dot < 1 ? "" : name.substring(dot + 1).toLowerCase(Locale.ROOT);
+    }
+
+    private static int dots(String extension) {
+        int count = 0;
+        for (int i = 0; i < extension.length(); i++) {
+            if (extension.charAt(i) == '.') {
+                count++;
+            }
+        }
+        return count;
+    }
+}
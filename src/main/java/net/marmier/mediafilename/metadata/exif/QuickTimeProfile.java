@@ -0,0 +1,56 @@
+package net.marmier.mediafilename.metadata.exif;
+
+import com.thebuzzmedia.exiftool.Tag;
+import net.marmier.mediafilename.metadata.FileType;
+import net.marmier.mediafilename.metadata.MetaData;
+import net.marmier.mediafilename.metadata.quicktime.QuickTimeReader;
+import net.marmier.mediafilename.metadata.quicktime.QuickTimeTags;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Profile of QuickTime files read in process from their movie atom. The metadata service parses the atoms once
+ * for all the QuickTime profiles supporting a file, and gives each of them the same tags.
+ */
+public abstract class QuickTimeProfile extends AbstractExifProfile {
+
+    private Logger log = LoggerFactory.getLogger(QuickTimeProfile.class);
+
+    private final QuickTimeReader reader = new QuickTimeReader();
+
+    public QuickTimeProfile(List<String> extensions, Tag... tags) {
+        super(FileType.QUICKTIME, extensions, tags);
+    }
+
+    @Override
+    public MetaData readInProcess(File file) {
+        QuickTimeTags tags = read(file);
+        return tags == null ? null : fromQuickTimeTags(file, tags);
+    }
+
+    /**
+     * Build the metadata from the tags read from the passed file. By contract, return null if the tags do not
+     * fit the profile, to fall back to Exiftool.
+     *
+     * @param file the file the tags were read from.
+     * @param tags the tags read.
+     * @return the metadata object, or null if the tags do not fit.
+     */
+    public abstract MetaData fromQuickTimeTags(File file, QuickTimeTags tags);
+
+    /**
+     * @return the tags of the file, or null if it cannot be read in process
+     */
+    QuickTimeTags read(File file) {
+        try {
+            return reader.read(file.toPath());
+        } catch (IOException e) {
+            log.debug("Falling back to Exiftool for {}: {}", file, e.getMessage());
+            return null;
+        }
+    }
+}
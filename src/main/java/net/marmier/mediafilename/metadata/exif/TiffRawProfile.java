@@ -0,0 +1,60 @@
+package net.marmier.mediafilename.metadata.exif;
+
+import com.thebuzzmedia.exiftool.Tag;
+import com.thebuzzmedia.exiftool.core.StandardTag;
+import net.marmier.mediafilename.metadata.FileType;
+import net.marmier.mediafilename.metadata.MetaData;
+import net.marmier.mediafilename.metadata.PhotoMetaData;
+import net.marmier.mediafilename.metadata.tiff.TiffReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Profile for TIFF based raw pictures (DNG, ARW, CR2, ORF, RW2, PEF). "DateTimeOriginal" is read in process
+ * from the EXIF sub-IFD, with Exiftool reading the same tag when the file cannot be parsed.
+ */
+public class TiffRawProfile extends AbstractExifProfile {
+
+    private Logger log = LoggerFactory.getLogger(TiffRawProfile.class);
+
+    /* "DateTimeOriginal" */
+    private static final StandardTag dateTimeField = StandardTag.DATE_TIME_ORIGINAL;
+
+    public TiffRawProfile() {
+        this(Arrays.asList("dng", "arw", "cr2", "orf", "rw2", "pef"));
+    }
+
+    protected TiffRawProfile(List<String> extensions) {
+        super(FileType.TIFF, extensions, dateTimeField);
+    }
+
+    @Override
+    public MetaData readInProcess(File file) {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return toMetaData(file, new TiffReader(channel).readDateTimeOriginal());
+        } catch (IOException | DateTimeParseException e) {
+            log.debug("Falling back to Exiftool for {}: {}", file, e.getMessage());
+            return null;
+        }
+    }
+
+    @Override
+    public MetaData fromTags(File file, Map<Tag, String> valueMap) {
+        return toMetaData(file, valueMap.get(dateTimeField));
+    }
+
+    private static MetaData toMetaData(File file, String dateTime) {
+        return dateTime == null ? null : new PhotoMetaData(LocalDateTime.parse(dateTime, DateTimeFormatter.ofPattern("y:M:d H:m:s")), file.getName());
+    }
+}
@@ -0,0 +1,117 @@
+package net.marmier.mediafilename.metadata.jpeg;
+
+import net.marmier.mediafilename.metadata.MetaDataFormatException;
+import net.marmier.mediafilename.metadata.tiff.TiffReader;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * In-process reader for the EXIF data of JPEG files. It walks the markers at the head of the file with small
+ * positional reads, loads the EXIF (APP1) segment only and stops at the start of the image data.
+ */
+public class JpegExifReader {
+
+    private static final int MARKER_PREFIX = 0xff;
+    private static final int SOI = 0xd8;
+    private static final int EOI = 0xd9;
+    private static final int SOS = 0xda;
+    private static final int APP1 = 0xe1;
+
+    // Markers without a length field
+    private static final int TEM = 0x01;
+    private static final int RST0 = 0xd0;
+    private static final int RST7 = 0xd7;
+
+    private static final byte[] EXIF_HEADER = { 'E', 'x', 'i', 'f', 0, 0 };
+
+    /**
+     * Read the "DateTimeOriginal" EXIF tag of a JPEG file.
+     * @param path the JPEG file
+     * @return the value, as in "2015:10:18 16:50:29", or null if the file has no such tag
+     * @throws MetaDataFormatException if the file is not a JPEG file or its EXIF data is corrupt
+     * @throws IOException if the file cannot be read
+     */
+    public String readDateTimeOriginal(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer exif = readExifSegment(channel);
+            if (exif == null) {
+                return null;
+            }
+            return new TiffReader(exif).readDateTimeOriginal();
+        }
+    }
+
+    /**
+     * @return the TIFF data of the EXIF segment, or null if the file has none
+     */
+    ByteBuffer readExifSegment(FileChannel channel) throws IOException {
+        ByteBuffer marker = ByteBuffer.allocate(4);
+        long position = 0;
+
+        readFully(channel, marker, position, 2);
+        if ((marker.get(0) & 0xff) != MARKER_PREFIX || (marker.get(1) & 0xff) != SOI) {
+            throw new MetaDataFormatException("Missing JPEG start of image marker.");
+        }
+        position += 2;
+
+        while (true) {
+            readFully(channel, marker, position, 2);
+            if ((marker.get(0) & 0xff) != MARKER_PREFIX) {
+                throw new MetaDataFormatException(String.format("Expecting a JPEG marker at offset %d.", position));
+            }
+            int type = marker.get(1) & 0xff;
+            if (type == MARKER_PREFIX) {
+                // Fill byte
+                position += 1;
+                continue;
+            }
+            if (type == SOS || type == EOI) {
+                // Image data starts, no EXIF segment in the header
+                return null;
+            }
+            position += 2;
+            if (type == TEM || (type >= RST0 && type <= RST7)) {
+                continue;
+            }
+
+            readFully(channel, marker, position, 2);
+            int length = marker.getShort(0) & 0xffff;
+            if (length < 2) {
+                throw new MetaDataFormatException(String.format("Invalid JPEG segment length at offset %d.", position));
+            }
+            if (type == APP1 && length >= 2 + EXIF_HEADER.length + 8) {
+                ByteBuffer segment = ByteBuffer.allocate(length - 2);
+                readFully(channel, segment, position + 2, segment.capacity());
+                if (startsWithExifHeader(segment)) {
+                    segment.position(EXIF_HEADER.length);
+                    return segment;
+                }
+            }
+            position += length;
+        }
+    }
+
+    private static boolean startsWithExifHeader(ByteBuffer segment) {
+        for (int i = 0; i < EXIF_HEADER.length; i++) {
+            if (segment.get(i) != EXIF_HEADER[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position, int length) throws IOException {
+        buffer.clear();
+        buffer.limit(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new MetaDataFormatException(String.format("Unexpected end of JPEG file at offset %d.", position));
+            }
+        }
+        buffer.flip();
+    }
+}
@@ -0,0 +1,301 @@
+package net.marmier.mediafilename.metadata.quicktime;
+
+import net.marmier.mediafilename.metadata.MetaDataFormatException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * In-process reader for QuickTime (MOV) and ISO base media (MP4) files. It walks the atoms with positional
+ * reads of their headers, seeking over the media data and the sample tables, and only loads the movie and
+ * media headers and the metadata keys and items.
+ */
+public class QuickTimeReader {
+
+    // Times in movie atoms are seconds since midnight, January 1, 1904
+    private static final LocalDateTime EPOCH = LocalDateTime.of(1904, 1, 1, 0, 0);
+
+    // Items larger than this, like cover art, are skipped
+    private static final int MAX_ITEM_SIZE = 4096;
+    private static final int MAX_KEYS_SIZE = 65536;
+
+    private static final int TYPE_UTF8 = 1;
+
+    private static final String USER_DATA_MAKE = "\u00a9mak";
+    private static final String USER_DATA_MODEL = "\u00a9mod";
+
+    /**
+     * An atom: its type and the range of its content, after the header.
+     */
+    private static class Atom {
+
+        final String type;
+        final long start;
+        final long end;
+
+        Atom(String type, long start, long end) {
+            this.type = type;
+            this.start = start;
+            this.end = end;
+        }
+
+        long size() {
+            return end - start;
+        }
+    }
+
+    /**
+     * State of one read.
+     */
+    private static class Walk {
+
+        final FileChannel channel;
+        LocalDateTime createDate;
+        LocalDateTime mediaCreateDate;
+        final Map<Integer, String> keys = new HashMap<>();
+        final Map<Integer, String> values = new HashMap<>();
+        final Map<String, String> userData = new HashMap<>();
+
+        Walk(FileChannel channel) {
+            this.channel = channel;
+        }
+    }
+
+    /**
+     * Read the movie atom of a file.
+     * @param path the QuickTime or MP4 file
+     * @return the values found
+     * @throws MetaDataFormatException if the file is not a QuickTime file, has no movie atom or is corrupt
+     * @throws IOException if the file cannot be read
+     */
+    public QuickTimeTags read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            Walk walk = new Walk(channel);
+            long position = 0;
+            long size = channel.size();
+            while (position < size) {
+                Atom atom = readAtom(walk, position, size);
+                if (position == 0 && !isPrintable(atom.type)) {
+                    throw new MetaDataFormatException("Not a QuickTime file.");
+                }
+                if ("moov".equals(atom.type)) {
+                    readMovie(walk, atom);
+                    // Metadata items take precedence over the older user data
+                    Map<String, String> items = new HashMap<>();
+                    walk.userData.forEach((key, value) -> {
+                        if (value != null) {
+                            items.put(key, value);
+                        }
+                    });
+                    walk.values.forEach((index, value) -> {
+                        String key = walk.keys.get(index);
+                        if (key != null) {
+                            items.put(key, value);
+                        }
+                    });
+                    return new QuickTimeTags(walk.createDate, walk.mediaCreateDate, items);
+                }
+                // Seek over the atom, media data included
+                position = atom.end;
+            }
+            throw new MetaDataFormatException("Missing QuickTime movie atom.");
+        }
+    }
+
+    private void readMovie(Walk walk, Atom moov) throws IOException {
+        for (long position = moov.start; position < moov.end; ) {
+            Atom atom = readAtom(walk, position, moov.end);
+            switch (atom.type) {
+                case "mvhd":
+                    walk.createDate = readCreationTime(walk, atom);
+                    break;
+                case "trak":
+                    // As with Exiftool, the last track wins
+                    Atom mdia = findChild(walk, atom, "mdia");
+                    Atom mdhd = mdia == null ? null : findChild(walk, mdia, "mdhd");
+                    if (mdhd != null) {
+                        walk.mediaCreateDate = readCreationTime(walk, mdhd);
+                    }
+                    break;
+                case "meta":
+                    readMeta(walk, atom);
+                    break;
+                case "udta":
+                    readUserData(walk, atom);
+                    break;
+                default:
+                    break;
+            }
+            position = atom.end;
+        }
+    }
+
+    private void readUserData(Walk walk, Atom udta) throws IOException {
+        for (long position = udta.start; position < udta.end; ) {
+            Atom atom = readAtom(walk, position, udta.end);
+            switch (atom.type) {
+                case "meta":
+                    readMeta(walk, atom);
+                    break;
+                case USER_DATA_MAKE:
+                    walk.userData.put(QuickTimeTags.KEY_MAKE, readUserDataText(walk, atom));
+                    break;
+                case USER_DATA_MODEL:
+                    walk.userData.put(QuickTimeTags.KEY_MODEL, readUserDataText(walk, atom));
+                    break;
+                default:
+                    break;
+            }
+            position = atom.end;
+        }
+    }
+
+    /**
+     * @return the first text of a user data atom, made of a text size, a language code and the text
+     */
+    private String readUserDataText(Walk walk, Atom atom) throws IOException {
+        if (atom.size() < 4 || atom.size() > MAX_ITEM_SIZE) {
+            return null;
+        }
+        ByteBuffer buffer = read(walk, atom.start, (int) atom.size());
+        int length = Math.min(buffer.getShort(0) & 0xffff, buffer.limit() - 4);
+        return new String(buffer.array(), 4, length, StandardCharsets.UTF_8).trim();
+    }
+
+    private void readMeta(Walk walk, Atom meta) throws IOException {
+        long start = meta.start;
+        // In ISO files, but not in QuickTime files, the meta atom starts with a version and flags
+        if (meta.size() >= 4 && read(walk, start, 4).getInt(0) == 0) {
+            start += 4;
+        }
+        for (long position = start; position < meta.end; ) {
+            Atom atom = readAtom(walk, position, meta.end);
+            if ("keys".equals(atom.type)) {
+                readKeys(walk, atom);
+            } else if ("ilst".equals(atom.type)) {
+                readItems(walk, atom);
+            }
+            position = atom.end;
+        }
+    }
+
+    private void readKeys(Walk walk, Atom keys) throws IOException {
+        if (keys.size() < 8 || keys.size() > MAX_KEYS_SIZE) {
+            return;
+        }
+        ByteBuffer buffer = read(walk, keys.start, (int) keys.size());
+        int count = buffer.getInt(4);
+        int position = 8;
+        for (int index = 1; index <= count && position + 8 <= buffer.limit(); index++) {
+            int keySize = buffer.getInt(position);
+            if (keySize < 8 || position + keySize > buffer.limit()) {
+                throw new MetaDataFormatException(String.format("Invalid QuickTime key size at offset %d.", keys.start + position));
+            }
+            byte[] name = new byte[keySize - 8];
+            buffer.position(position + 8);
+            buffer.get(name);
+            walk.keys.put(index, new String(name, StandardCharsets.UTF_8));
+            position += keySize;
+        }
+    }
+
+    private void readItems(Walk walk, Atom ilst) throws IOException {
+        for (long position = ilst.start; position < ilst.end; ) {
+            // Items are typed by the 1-based index of their key
+            Atom item = readAtom(walk, position, ilst.end);
+            int index = read(walk, position + 4, 4).getInt(0);
+            Atom data = findChild(walk, item, "data");
+            if (data != null && data.size() >= 8 && data.size() <= MAX_ITEM_SIZE) {
+                ByteBuffer buffer = read(walk, data.start, (int) data.size());
+                int type = buffer.getInt(0) & 0xffffff;
+                if (type == TYPE_UTF8) {
+                    byte[] value = new byte[buffer.limit() - 8];
+                    buffer.position(8);
+                    buffer.get(value);
+                    walk.values.put(index, new String(value, StandardCharsets.UTF_8));
+                }
+            }
+            position = item.end;
+        }
+    }
+
+    /**
+     * @return the creation time of a movie or media header, or null if unset
+     */
+    private LocalDateTime readCreationTime(Walk walk, Atom header) throws IOException {
+        if (header.size() < 12) {
+            throw new MetaDataFormatException(String.format("Truncated QuickTime %s atom.", header.type));
+        }
+        ByteBuffer buffer = read(walk, header.start, 12);
+        int version = buffer.get(0) & 0xff;
+        long seconds = version == 1 ? buffer.getLong(4) : buffer.getInt(4) & 0xffffffffL;
+        return seconds == 0 ? null : EPOCH.plusSeconds(seconds);
+    }
+
+    private Atom findChild(Walk walk, Atom parent, String type) throws IOException {
+        for (long position = parent.start; position < parent.end; ) {
+            Atom atom = readAtom(walk, position, parent.end);
+            if (type.equals(atom.type)) {
+                return atom;
+            }
+            position = atom.end;
+        }
+        return null;
+    }
+
+    /**
+     * Read the header of the atom at the given position.
+     * @param end the end of the enclosing atom, or of the file
+     */
+    private Atom readAtom(Walk walk, long position, long end) throws IOException {
+        if (end - position < 8) {
+            throw new MetaDataFormatException(String.format("Truncated QuickTime atom at offset %d.", position));
+        }
+        ByteBuffer header = read(walk, position, 8);
+        long size = header.getInt(0) & 0xffffffffL;
+        String type = new String(header.array(), 4, 4, StandardCharsets.ISO_8859_1);
+        long start = position + 8;
+        if (size == 1) {
+            // 64 bit size, following the type
+            if (end - position < 16) {
+                throw new MetaDataFormatException(String.format("Truncated QuickTime atom at offset %d.", position));
+            }
+            size = read(walk, start, 8).getLong(0);
+            start += 8;
+        } else if (size == 0) {
+            // Up to the end of the file
+            size = end - position;
+        }
+        if (size < start - position || size > end - position) {
+            throw new MetaDataFormatException(String.format("Invalid size for QuickTime atom '%s' at offset %d.", type, position));
+        }
+        return new Atom(type, start, position + size);
+    }
+
+    private static ByteBuffer read(Walk walk, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (walk.channel.read(buffer, position + buffer.position()) < 0) {
+                throw new MetaDataFormatException(String.format("Unexpected end of QuickTime file at offset %d.", position));
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static boolean isPrintable(String type) {
+        for (char c : type.toCharArray()) {
+            if (c < 0x20 || c > 0x7e) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,51 @@
+package net.marmier.mediafilename.metadata.quicktime;
+
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * The few values read from the movie atom of a QuickTime or MP4 file.
+ */
+public class QuickTimeTags {
+
+    public static final String KEY_CREATION_DATE = "com.apple.quicktime.creationdate";
+    public static final String KEY_MAKE = "com.apple.quicktime.make";
+    public static final String KEY_MODEL = "com.apple.quicktime.model";
+
+    private final LocalDateTime createDate;
+
+    private final LocalDateTime mediaCreateDate;
+
+    private final Map<String, String> items;
+
+    public QuickTimeTags(LocalDateTime createDate, LocalDateTime mediaCreateDate, Map<String, String> items) {
+        this.createDate = createDate;
+        this.mediaCreateDate = mediaCreateDate;
+        this.items = Collections.unmodifiableMap(items);
+    }
+
+    /**
+     * @return the creation time of the movie header (mvhd), as Exiftool's "CreateDate", or null if unset
+     */
+    public LocalDateTime getCreateDate() {
+        return createDate;
+    }
+
+    /**
+     * @return the creation time of the last track's media header (mdhd), as Exiftool's "MediaCreateDate",
+     * or null if unset
+     */
+    public LocalDateTime getMediaCreateDate() {
+        return mediaCreateDate;
+    }
+
+    /**
+     * @param key a metadata key, like {@link #KEY_CREATION_DATE}
+     * @return the text value of the metadata item (meta/keys/ilst) for the key, or null if absent. Make and model
+     * fall back to the user data (udta) values of older files.
+     */
+    public String getItem(String key) {
+        return items.get(key);
+    }
+}
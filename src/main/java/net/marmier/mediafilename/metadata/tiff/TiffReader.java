@@ -0,0 +1,251 @@
+package net.marmier.mediafilename.metadata.tiff;
+
+import net.marmier.mediafilename.metadata.MetaDataFormatException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Minimal reader for TIFF structured data, as found in the EXIF segment of JPEG files and in TIFF based raw
+ * files (NEF, DNG, ARW, CR2...). It walks the image file directories (IFD) to find single tags with small
+ * positional reads, without decoding anything else.
+ */
+public class TiffReader {
+
+    /**
+     * Pointer from IFD0 to the EXIF sub-IFD.
+     */
+    public static final int TAG_EXIF_IFD_POINTER = 0x8769;
+
+    /**
+     * "DateTimeOriginal", in the EXIF sub-IFD.
+     */
+    public static final int TAG_DATE_TIME_ORIGINAL = 0x9003;
+
+    private static final int TYPE_ASCII = 2;
+    private static final int TYPE_LONG = 4;
+    private static final int TYPE_IFD = 13;
+
+    private static final int TIFF_MAGIC = 42;
+    // TIFF variants of Olympus and Panasonic raw files
+    private static final int ORF_MAGIC = 0x4f52;
+    private static final int ORF_SP_MAGIC = 0x5352;
+    private static final int RW2_MAGIC = 0x55;
+
+    private static final int ENTRY_SIZE = 12;
+    // Sanity limit, real directories hold at most a few hundred entries
+    private static final int MAX_ENTRIES = 4096;
+
+    /**
+     * Positional access to the TIFF data, offsets being relative to the TIFF header.
+     */
+    private interface Source {
+
+        void read(ByteBuffer buffer, long offset) throws IOException;
+
+        long size() throws IOException;
+    }
+
+    private final Source source;
+
+    private final long size;
+
+    private final ByteOrder order;
+
+    private final long firstIfdOffset;
+
+    /**
+     * @param tiff the TIFF data, starting with its header at the buffer's position. Offsets in the data are
+     *             relative to that position.
+     * @throws MetaDataFormatException if the header is invalid
+     */
+    public TiffReader(ByteBuffer tiff) throws IOException {
+        this(bufferSource(tiff.slice()));
+    }
+
+    /**
+     * @param channel a TIFF structured file, read in place
+     * @throws MetaDataFormatException if the header is invalid
+     * @throws IOException if the file cannot be read
+     */
+    public TiffReader(FileChannel channel) throws IOException {
+        this(channelSource(channel));
+    }
+
+    private TiffReader(Source source) throws IOException {
+        this.source = source;
+        this.size = source.size();
+        if (size < 8) {
+            throw new MetaDataFormatException("TIFF header is truncated.");
+        }
+        ByteBuffer header = ByteBuffer.allocate(8);
+        source.read(header, 0);
+        byte first = header.get(0);
+        byte second = header.get(1);
+        if (first == 'I' && second == 'I') {
+            order = ByteOrder.LITTLE_ENDIAN;
+        } else if (first == 'M' && second == 'M') {
+            order = ByteOrder.BIG_ENDIAN;
+        } else {
+            throw new MetaDataFormatException("Unknown TIFF byte order.");
+        }
+        header.order(order);
+        int magic = header.getShort(2) & 0xffff;
+        if (magic != TIFF_MAGIC && magic != ORF_MAGIC && magic != ORF_SP_MAGIC && magic != RW2_MAGIC) {
+            throw new MetaDataFormatException("Missing TIFF magic number.");
+        }
+        firstIfdOffset = header.getInt(4) & 0xffffffffL;
+    }
+
+    /**
+     * @return the "DateTimeOriginal" value of the EXIF sub-IFD, as in "2015:10:18 16:50:29", or null if absent
+     * @throws MetaDataFormatException if the directories are corrupt
+     * @throws IOException if the data cannot be read
+     */
+    public String readDateTimeOriginal() throws IOException {
+        long exifIfd = readLong(firstIfdOffset(), TAG_EXIF_IFD_POINTER);
+        if (exifIfd < 0) {
+            return null;
+        }
+        return readAscii(exifIfd, TAG_DATE_TIME_ORIGINAL);
+    }
+
+    /**
+     * @return the offset of IFD0
+     */
+    public long firstIfdOffset() {
+        return firstIfdOffset;
+    }
+
+    /**
+     * Read an ASCII tag of the directory at the given offset.
+     * @param ifdOffset the directory offset
+     * @param tag the tag to read
+     * @return the value, without its terminating NUL, or null if the tag is absent
+     * @throws MetaDataFormatException if the directory is corrupt or the tag has another type
+     * @throws IOException if the data cannot be read
+     */
+    public String readAscii(long ifdOffset, int tag) throws IOException {
+        ByteBuffer entry = findEntry(ifdOffset, tag);
+        if (entry == null) {
+            return null;
+        }
+        checkType(entry, tag, TYPE_ASCII);
+        int count = (int) Math.min(entry.getInt(4) & 0xffffffffL, Integer.MAX_VALUE);
+        ByteBuffer value;
+        if (count <= 4) {
+            value = entry;
+            value.position(8);
+            value.limit(8 + count);
+            value = value.slice();
+        } else {
+            value = read(entry.getInt(8) & 0xffffffffL, count);
+        }
+        byte[] bytes = new byte[count];
+        value.get(bytes);
+        int length = 0;
+        while (length < count && bytes[length] != 0) {
+            length++;
+        }
+        return new String(bytes, 0, length, StandardCharsets.US_ASCII).trim();
+    }
+
+    /**
+     * Read a LONG tag of the directory at the given offset, like a pointer to a sub-IFD.
+     * @param ifdOffset the directory offset
+     * @param tag the tag to read
+     * @return the value, or -1 if the tag is absent
+     * @throws MetaDataFormatException if the directory is corrupt or the tag has another type
+     * @throws IOException if the data cannot be read
+     */
+    public long readLong(long ifdOffset, int tag) throws IOException {
+        ByteBuffer entry = findEntry(ifdOffset, tag);
+        if (entry == null) {
+            return -1;
+        }
+        int type = entry.getShort(2) & 0xffff;
+        if (type != TYPE_IFD) {
+            checkType(entry, tag, TYPE_LONG);
+        }
+        return entry.getInt(8) & 0xffffffffL;
+    }
+
+    /**
+     * Read the directory at the given offset with one read for its entry count and one for its entries.
+     * @return the entry for the tag, or null if absent
+     */
+    private ByteBuffer findEntry(long ifdOffset, int tag) throws IOException {
+        int count = read(ifdOffset, 2).getShort(0) & 0xffff;
+        if (count > MAX_ENTRIES) {
+            throw new MetaDataFormatException(String.format("Too many entries in TIFF directory at offset %d.", ifdOffset));
+        }
+        ByteBuffer entries = read(ifdOffset + 2, count * ENTRY_SIZE);
+        for (int i = 0; i < count; i++) {
+            int entry = i * ENTRY_SIZE;
+            if ((entries.getShort(entry) & 0xffff) == tag) {
+                entries.position(entry);
+                entries.limit(entry + ENTRY_SIZE);
+                return entries.slice().order(order);
+            }
+        }
+        return null;
+    }
+
+    private void checkType(ByteBuffer entry, int tag, int expectedType) throws MetaDataFormatException {
+        int type = entry.getShort(2) & 0xffff;
+        if (type != expectedType) {
+            throw new MetaDataFormatException(String.format("Unexpected type %d for TIFF tag 0x%04x.", type, tag));
+        }
+    }
+
+    private ByteBuffer read(long offset, int length) throws IOException {
+        if (offset < 0 || length < 0 || offset + length > size) {
+            throw new MetaDataFormatException(String.format("TIFF offset %d out of bounds.", offset));
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(order);
+        source.read(buffer, offset);
+        buffer.flip();
+        return buffer;
+    }
+
+    private static Source bufferSource(ByteBuffer tiff) {
+        return new Source() {
+            @Override
+            public void read(ByteBuffer buffer, long offset) {
+                ByteBuffer view = tiff.duplicate();
+                view.position((int) offset);
+                view.limit((int) offset + buffer.remaining());
+                buffer.put(view);
+            }
+
+            @Override
+            public long size() {
+                return tiff.limit();
+            }
+        };
+    }
+
+    private static Source channelSource(FileChannel channel) {
+        return new Source() {
+            @Override
+            public void read(ByteBuffer buffer, long offset) throws IOException {
+                long position = offset;
+                while (buffer.hasRemaining()) {
+                    int read = channel.read(buffer, position);
+                    if (read < 0) {
+                        throw new MetaDataFormatException(String.format("Unexpected end of TIFF file at offset %d.", position));
+                    }
+                    position += read;
+                }
+            }
+
+            @Override
+            public long size() throws IOException {
+                return channel.size();
+            }
+        };
+    }
+}
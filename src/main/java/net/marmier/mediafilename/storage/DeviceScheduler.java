@@ -0,0 +1,167 @@
+package net.marmier.mediafilename.storage;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Runs tasks reading from storage devices on an executor, with at most the device's limit of tasks running at
+ * once on each device, and at most the overall limit on all devices. Tasks are started in the order given for
+ * each device, while the devices take turns, so a slow device does not hold up the others.
+ */
+public class DeviceScheduler {
+
+    private final Executor executor;
+
+    private final int maxConcurrent;
+
+    /**
+     * @param executor the executor running the tasks, with at least as many threads as the overall limit
+     * @param maxConcurrent the overall limit of tasks running at once
+     */
+    public DeviceScheduler(Executor executor, int maxConcurrent) {
+        if (maxConcurrent < 1) {
+            throw new IllegalArgumentException(String.format("Concurrency must be at least 1: %d", maxConcurrent));
+        }
+        this.executor = executor;
+        this.maxConcurrent = maxConcurrent;
+    }
+
+    /**
+     * A task reading from a device.
+     */
+    public static class DeviceTask<T> {
+
+        private final StorageDevice device;
+
+        private final Callable<T> task;
+
+        public DeviceTask(StorageDevice device, Callable<T> task) {
+            this.device = device;
+            this.task = task;
+        }
+
+        public StorageDevice getDevice() {
+            return device;
+        }
+    }
+
+    /**
+     * Run the given tasks and wait for their completion. After a failure, no further task is started.
+     * @param tasks the tasks to run
+     * @return the result of each task, in the order given
+     * @throws ExecutionException wrapping the first failure of a task
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public <T> List<T> runAll(List<DeviceTask<T>> tasks) throws ExecutionException, InterruptedException {
+        return new Run<>(tasks).await();
+    }
+
+    private class Run<T> {
+
+        private final List<DeviceTask<T>> tasks;
+
+        // Indexes of the tasks not started yet, by device in the order devices are first seen
+        private final Map<StorageDevice, Deque<Integer>> pending = new LinkedHashMap<>();
+
+        private final List<StorageDevice> devices;
+
+        private final Map<StorageDevice, Integer> running = new HashMap<>();
+
+        private final Object[] results;
+
+        private int nextDevice;
+
+        private int runningCount;
+
+        private int remaining;
+
+        private Throwable failure;
+
+        Run(List<DeviceTask<T>> tasks) {
+            this.tasks = tasks;
+            for (int i = 0; i < tasks.size(); i++) {
+                pending.computeIfAbsent(tasks.get(i).device, device -> new ArrayDeque<>()).add(i);
+            }
+            this.devices = new ArrayList<>(pending.keySet());
+            this.results = new Object[tasks.size()];
+            this.remaining = tasks.size();
+        }
+
+        @SuppressWarnings("unchecked")
+        synchronized List<T> await() throws ExecutionException, InterruptedException {
+            dispatch();
+            while (remaining > 0 && failure == null) {
+                wait();
+            }
+            if (failure != null) {
+                throw new ExecutionException(failure);
+            }
+            return (List<T>) Arrays.asList(results);
+        }
+
+        /**
+         * Start tasks while the limits allow it, taking one from each device in turn.
+         */
+        private synchronized void dispatch() {
+            while (failure == null && runningCount < maxConcurrent) {
+                Integer index = nextTask();
+                if (index == null) {
+                    return;
+                }
+                start(index);
+            }
+        }
+
+        private Integer nextTask() {
+            for (int i = 0; i < devices.size(); i++) {
+                StorageDevice device = devices.get((nextDevice + i) % devices.size());
+                Deque<Integer> deviceTasks = pending.get(device);
+                if (!deviceTasks.isEmpty() && running.getOrDefault(device, 0) < device.getLimit()) {
+                    nextDevice = (nextDevice + i + 1) % devices.size();
+                    return deviceTasks.poll();
+                }
+            }
+            return null;
+        }
+
+        private void start(int index) {
+            DeviceTask<T> task = tasks.get(index);
+            running.merge(task.device, 1, Integer::sum);
+            runningCount++;
+            try {
+                executor.execute(() -> {
+                    try {
+                        complete(index, task.task.call(), null);
+                    } catch (Throwable e) {
+                        complete(index, null, e);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                complete(index, null, e);
+            }
+        }
+
+        private synchronized void complete(int index, T result, Throwable error) {
+            StorageDevice device = tasks.get(index).device;
+            running.merge(device, -1, Integer::sum);
+            runningCount--;
+            remaining--;
+            results[index] = result;
+            if (error != null && failure == null) {
+                failure = error;
+            }
+            notifyAll();
+            dispatch();
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package net.marmier.mediafilename.storage;
+
+/**
+ * A storage device holding media files, with the number of files which may be read from it at once.
+ */
+public class StorageDevice {
+
+    /**
+     * No limit of its own, the device is only bound by the overall concurrency.
+     */
+    public static final int UNLIMITED = Integer.MAX_VALUE;
+
+    private final String name;
+
+    private final String type;
+
+    private final int limit;
+
+    public StorageDevice(String name, String type, int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException(String.format("Device limit must be at least 1: %d", limit));
+        }
+        this.name = name;
+        this.type = type;
+        this.limit = limit;
+    }
+
+    /**
+     * @return the name of the device, as in "/dev/sda1"
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the file system type, as in "ext4" or "nfs"
+     */
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * @return the number of files which may be read at once, or {@link #UNLIMITED}
+     */
+    public int getLimit() {
+        return limit;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s (%s, limit %s)", name, type, limit == UNLIMITED ? "none" : String.valueOf(limit));
+    }
+}
@@ -0,0 +1,172 @@
+package net.marmier.mediafilename.storage;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Finds the storage device of files, from their {@link FileStore}, and how many files may be read from it at
+ * once. Spinning disks get a limit of 1, memory cards and network mounts a limit of 2, while other devices,
+ * like SSDs, are not limited. Limits can be overridden by device name or file system type with the
+ * {@link #DEVICE_LIMITS_PROPERTY} system property.
+ */
+public class StorageDevices {
+
+    /**
+     * System property overriding the limits, as in "nfs=4,/dev/sdb1=1": a comma separated list of device names
+     * or file system types, with their limit.
+     */
+    public static final String DEVICE_LIMITS_PROPERTY = "mediafilename.io.deviceLimits";
+
+    static final int SPINNING_DISK_LIMIT = 1;
+
+    static final int MEMORY_CARD_LIMIT = 2;
+
+    static final int NETWORK_LIMIT = 2;
+
+    private static final Set<String> MEMORY_CARD_TYPES = new HashSet<>(Arrays.asList("vfat", "exfat", "msdos", "fat32"));
+
+    private static final Set<String> NETWORK_TYPES = new HashSet<>(Arrays.asList(
+        "nfs", "nfs4", "cifs", "smbfs", "smb3", "afpfs", "webdav", "fuse.sshfs"));
+
+    // Linux exposes whether a block device is a spinning disk
+    private static final Path SYS_BLOCK = Paths.get("/sys/class/block");
+
+    /**
+     * Device of the files whose file store cannot be determined.
+     */
+    static final StorageDevice UNKNOWN = new StorageDevice("unknown", "unknown", StorageDevice.UNLIMITED);
+
+    private Logger log = LoggerFactory.getLogger(StorageDevices.class);
+
+    private final Map<String, Integer> overrides;
+
+    private final Map<FileStore, StorageDevice> byStore = new ConcurrentHashMap<>();
+
+    // Files of a directory are on the same device, so the file store is looked up once per directory
+    private final Map<Path, StorageDevice> byDirectory = new ConcurrentHashMap<>();
+
+    /**
+     * Build with the limit overrides of the {@link #DEVICE_LIMITS_PROPERTY} system property.
+     */
+    public StorageDevices() {
+        this(parseLimits(System.getProperty(DEVICE_LIMITS_PROPERTY, "")));
+    }
+
+    /**
+     * @param overrides limits by device name or file system type, taking precedence over the detected ones
+     */
+    public StorageDevices(Map<String, Integer> overrides) {
+        this.overrides = overrides;
+    }
+
+    /**
+     * @param file a file
+     * @return the device holding the file, or a device without limit if it cannot be determined
+     */
+    public StorageDevice deviceOf(Path file) {
+        Path directory = file.toAbsolutePath().getParent();
+        if (directory == null) {
+            return lookup(file);
+        }
+        return byDirectory.computeIfAbsent(directory, this::lookup);
+    }
+
+    private StorageDevice lookup(Path path) {
+        FileStore store;
+        try {
+            store = Files.getFileStore(path);
+        } catch (IOException e) {
+            log.debug("No file store found for {}: {}", path, e.getMessage());
+            return UNKNOWN;
+        }
+        return byStore.computeIfAbsent(store, this::createDevice);
+    }
+
+    private StorageDevice createDevice(FileStore store) {
+        StorageDevice device = new StorageDevice(store.name(), store.type(), limitOf(store.name(), store.type()));
+        log.info("Storage device: {}", device);
+        return device;
+    }
+
+    /**
+     * @return the limit of a device, from the overrides or else from its kind
+     */
+    int limitOf(String name, String type) {
+        Integer override = overrides.get(name);
+        if (override == null) {
+            override = overrides.get(type);
+        }
+        if (override != null) {
+            return override;
+        }
+        if (NETWORK_TYPES.contains(type)) {
+            return NETWORK_LIMIT;
+        }
+        if (MEMORY_CARD_TYPES.contains(type)) {
+            return MEMORY_CARD_LIMIT;
+        }
+        if (isSpinningDisk(name)) {
+            return SPINNING_DISK_LIMIT;
+        }
+        return StorageDevice.UNLIMITED;
+    }
+
+    private static boolean isSpinningDisk(String name) {
+        if (!name.startsWith("/dev/")) {
+            return false;
+        }
+        Path device = SYS_BLOCK.resolve(Paths.get(name).getFileName().toString());
+        // Partitions have no queue of their own, the disk holding them has
+        for (Path queue : new Path[]{ device.resolve("queue"), device.resolve("../queue") }) {
+            try {
+                List<String> rotational = Files.readAllLines(queue.resolve("rotational"));
+                return !rotational.isEmpty() && "1".equals(rotational.get(0).trim());
+            } catch (IOException e) {
+                // Not there, try the disk
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Parse limits as in "nfs=4,/dev/sdb1=1".
+     * @throws IllegalArgumentException if the limits are not well formed
+     */
+    static Map<String, Integer> parseLimits(String limits) {
+        if (limits.trim().isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<String, Integer> parsed = new HashMap<>();
+        for (String entry : limits.split(",")) {
+            int separator = entry.lastIndexOf('=');
+            int limit = separator < 1 ? 0 : parseLimit(entry.substring(separator + 1).trim());
+            if (limit < 1) {
+                throw new IllegalArgumentException(String.format("Invalid device limit, expecting name=limit: %s", entry));
+            }
+            parsed.put(entry.substring(0, separator).trim(), limit);
+        }
+        return parsed;
+    }
+
+    private static int parseLimit(String limit) {
+        try {
+            return Integer.parseInt(limit);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
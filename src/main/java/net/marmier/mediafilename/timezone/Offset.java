@@ -48,9 +48,12 @@ public enum Offset {
 
     private static Map<String, Offset> map = new HashMap<String, Offset>();
 
+    private static Map<String, Offset> designations = new HashMap<String, Offset>();
+
     static {
         for (Offset offset : Offset.values()) {
             map.put(offset.code, offset);
+            designations.put(offset.toString(), offset);
         }
     }
 
@@ -63,6 +66,20 @@ public enum Offset {
         return offset;
     }
 
+    /**
+     * Find the offset from its representation in filenames, as returned by {@link #toString()}.
+     * @param designation the offset, as in +0100
+     * @return the offset
+     * @throws IllegalArgumentException if no offset has this representation
+     */
+    public static Offset forDesignation(String designation) {
+        Offset offset = designations.get(designation);
+        if (offset == null) {
+            throw new IllegalArgumentException("Unknown offset: " + designation);
+        }
+        return offset;
+    }
+
     public enum OffsetSign {
         POSITIVE, NEGATIVE
     }
@@ -97,6 +114,24 @@ public enum Offset {
         return theDateTime;
     }
 
+    /**
+     * Apply the offset to a datetime in UTC, to get the local time
+     * corresponding to it, according to the offset.
+     * @param dateTime the utc datetime
+     * @return the local datetime
+     */
+    public LocalDateTime apply(LocalDateTime dateTime) {
+        LocalDateTime theDateTime;
+        if (sign == NEGATIVE) {
+            theDateTime = dateTime.minusHours(hourOffset);
+            theDateTime = theDateTime.minusMinutes(minuteOffset);
+        } else {
+            theDateTime = dateTime.plusHours(hourOffset);
+            theDateTime = theDateTime.plusMinutes(minuteOffset);
+        }
+        return theDateTime;
+    }
+
     @Override
     public String toString() {
         return String.format("%s%02d%02d",
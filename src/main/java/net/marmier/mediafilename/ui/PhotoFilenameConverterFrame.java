@@ -1,6 +1,7 @@
 package net.marmier.mediafilename.ui;
 
 import net.marmier.mediafilename.MediaFilename;
+import net.marmier.mediafilename.MediaProcessorImpl;
 import net.marmier.mediafilename.timezone.Offset;
 
 import javax.swing.*;
@@ -27,6 +28,9 @@ public class PhotoFilenameConverterFrame extends javax.swing.JFrame {
     private java.awt.Choice timezoneDropdown;
     private javax.swing.JLabel timezoneLabel;
 
+    private javax.swing.JSpinner workersSpinner;
+    private javax.swing.JLabel workersLabel;
+
     private javax.swing.JButton convertButton;
     private javax.swing.JLabel convertLabel;
 
@@ -49,6 +53,7 @@ public class PhotoFilenameConverterFrame extends javax.swing.JFrame {
         initFilenameField();
         initFilePicker();
         initTimezone();
+        initWorkers();
         initConvertButton();
         initConsoleArea();
         initResultArea();
@@ -81,7 +86,8 @@ public class PhotoFilenameConverterFrame extends javax.swing.JFrame {
                     consoleAppender.println(directoryMessage);
                     String offsetMessage = String.format("Chosen offset is %s", offset.toString());
                     consoleAppender.println(offsetMessage);
-                    MediaFilename.prepareStart(offset, new File(filename), consoleAppender, resultAppender);
+                    int workers = (Integer) workersSpinner.getValue();
+                    MediaFilename.prepareStart(offset, new File(filename), workers, consoleAppender, resultAppender);
                 } catch (IOException e) {
                     String message = String.format("An error occured during processing: %s", e.getMessage());
                     consoleAppender.println(message);
@@ -102,6 +108,8 @@ public class PhotoFilenameConverterFrame extends javax.swing.JFrame {
         JPanel commandPane = new JPanel(new FlowLayout(FlowLayout.LEADING));
         commandPane.add(frame.getPickerButton());
         commandPane.add(frame.getTimezoneDropdown());
+        commandPane.add(frame.getWorkersLabel());
+        commandPane.add(frame.getWorkersSpinner());
         commandPane.add(frame.getConvertButton());
         commandPane.setMinimumSize(new Dimension(600, frame.getTimezoneDropdown().getHeight()));
         contentPane.add(commandPane);
@@ -148,6 +156,13 @@ public class PhotoFilenameConverterFrame extends javax.swing.JFrame {
         Arrays.stream(Offset.values()).forEach(o -> timezoneDropdown.add(o.getCode()));
     }
 
+    private void initWorkers() {
+        workersLabel = new JLabel();
+        workersLabel.setText("Workers");
+        int maxWorkers = Math.max(Runtime.getRuntime().availableProcessors(), MediaProcessorImpl.DEFAULT_WORKERS);
+        workersSpinner = new JSpinner(new SpinnerNumberModel(MediaProcessorImpl.DEFAULT_WORKERS, 1, maxWorkers, 1));
+    }
+
     private void initConvertButton() {
         convertLabel = new JLabel();
         convertLabel.setText("Generate renames");
@@ -239,6 +254,14 @@ public class PhotoFilenameConverterFrame extends javax.swing.JFrame {
         return timezoneLabel;
     }
 
+    public JLabel getWorkersLabel() {
+        return workersLabel;
+    }
+
+    public JSpinner getWorkersSpinner() {
+        return workersSpinner;
+    }
+
     public JButton getConvertButton() {
         return convertButton;
     }
@@ -6,9 +6,10 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.Collections;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
+import java.util.function.Consumer;
 
 /**
  * Utility class for traversing directories and build list of encountered files. If a working directory is
@@ -35,6 +36,21 @@ public class Finder {
      * @return the list of paths
      */
     public List<Path> find(Path path, boolean ignoreErrors, boolean ignoreNullResults) {
+        List<Path> results = new ArrayList<>();
+        find(path, ignoreErrors, ignoreNullResults, results::add);
+        return results;
+    }
+
+    /**
+     * Traverse the directory structure rooted at <code>path</code>, passing each path to the given consumer as
+     * soon as it is found, in the order of {@link #find(Path, boolean, boolean)}. If the path is a not a
+     * directory, it is merely passed on.
+     * @param path the directory to traverse.
+     * @param ignoreErrors if <code>true</code>, continue after an error occurring while operating on a path.
+     * @param ignoreNullResults if <code>true</code>, continue after a null result returned by the processor on a path.
+     * @param consumer the consumer of the paths found
+     */
+    public void find(Path path, boolean ignoreErrors, boolean ignoreNullResults, Consumer<Path> consumer) {
         log.debug("Directory to traverse or path to relativize: {}", path);
         log.debug("Ignore errors mode set to: {}", ignoreErrors);
         log.debug("Ignore null results mode set to: {}", ignoreNullResults);
@@ -42,16 +58,15 @@ public class Finder {
         if (Files.isDirectory(path)) {
             Objects.requireNonNull(path, "No path provided for directory traversal.");
 
-            FinderFileVisitor<Path> visitor = new FinderFileVisitor<>(file -> file, ignoreErrors, ignoreNullResults);
+            FinderFileVisitor<Path> visitor = new FinderFileVisitor<>(file -> file, consumer, ignoreErrors, ignoreNullResults);
             try {
                 Files.walkFileTree(path, visitor);
             } catch (IOException e) {
                 String message = String.format("Error while traversing directory %s", path);
                 throw new FinderException(message, e);
             }
-            return visitor.getResults();
         } else {
-            return Collections.singletonList(path);
+            consumer.accept(path);
         }
     }
 }
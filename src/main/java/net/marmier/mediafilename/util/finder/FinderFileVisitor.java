@@ -9,7 +9,9 @@ import java.nio.file.FileVisitor;
 import java.nio.file.Path;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.function.Consumer;
 import java.util.function.Function;
 
 /**
@@ -24,6 +26,7 @@ public class FinderFileVisitor<T> implements FileVisitor<Path> {
 
     private final List<T> results;
     private final Function<Path, T> processor;
+    private final Consumer<T> consumer;
     private boolean ignoreErrors;
     private boolean tolerateNullResults;
 
@@ -44,6 +47,23 @@ public class FinderFileVisitor<T> implements FileVisitor<Path> {
     public FinderFileVisitor(Function<Path, T> processor, boolean ignoreErrors, boolean tolerateNullResults) {
         this.results = new ArrayList<>();
         this.processor = processor;
+        this.consumer = results::add;
+        this.ignoreErrors = ignoreErrors;
+        this.tolerateNullResults = tolerateNullResults;
+    }
+
+    /**
+     * Initialise a new instance passing each result to the given consumer as it goes, instead of collecting
+     * them. Exceptions thrown by the consumer end the traversal.
+     * @param processor the processor to use on each visited file
+     * @param consumer the consumer of the results
+     * @param ignoreErrors if <code>true</code> continue after a processing error (default <code>false</code>)
+     * @param tolerateNullResults if <code>true</code> continue when the processing return <code>null</code> (default <code>false</code>)
+     */
+    public FinderFileVisitor(Function<Path, T> processor, Consumer<T> consumer, boolean ignoreErrors, boolean tolerateNullResults) {
+        this.results = Collections.emptyList();
+        this.processor = processor;
+        this.consumer = consumer;
         this.ignoreErrors = ignoreErrors;
         this.tolerateNullResults = tolerateNullResults;
     }
@@ -69,7 +89,7 @@ public class FinderFileVisitor<T> implements FileVisitor<Path> {
             }
         }
         if (result != null) {
-            results.add(result);
+            consumer.accept(result);
         }
         else {
             if (tolerateNullResults) {
@@ -99,7 +119,7 @@ public class FinderFileVisitor<T> implements FileVisitor<Path> {
     }
 
     /**
-     * @return the results of each file's processing
+     * @return the results of each file's processing, empty when they are passed to a consumer
      */
     public List<T> getResults() {
         return results;
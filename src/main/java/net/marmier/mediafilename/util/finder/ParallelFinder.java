@@ -0,0 +1,284 @@
+package net.marmier.mediafilename.util.finder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Consumer;
+
+/**
+ * Finder traversing the directories in parallel on a fork/join pool, with a task per directory, so the latency
+ * of listing directories on network file systems is paid concurrently. It finds the same paths as the
+ * {@link Finder}, and handles errors the same way through a {@link FinderFileVisitor}.
+ * <p>
+ * In ordered mode, the paths are passed on in the order of {@link java.nio.file.Files#walkFileTree}, on the
+ * calling thread, directory after directory as soon as its listing and those before it are complete. The
+ * directories next in that order are listed ahead, a few per thread of the pool at most, so a slow consumer holds
+ * back the traversal. Otherwise the paths are passed on as soon as they are found, in no particular order, one
+ * at a time.
+ */
+public class ParallelFinder extends Finder implements AutoCloseable {
+
+    // Directories listed ahead of the consumer in ordered mode, per thread of the pool
+    private static final int LISTINGS_AHEAD_PER_THREAD = 4;
+
+    private Logger log = LoggerFactory.getLogger(ParallelFinder.class);
+
+    private final ForkJoinPool pool;
+
+    private final boolean ordered;
+
+    // The pool is shut down along with the finder when the finder created it
+    private final boolean ownPool;
+
+    /**
+     * Build an ordered finder on a new pool with the given parallelism, shut down when the finder is closed.
+     * @param parallelism the number of directories listed at once
+     */
+    public ParallelFinder(int parallelism) {
+        this(new ForkJoinPool(parallelism), true, true);
+    }
+
+    /**
+     * @param pool the pool running the traversal, left to the caller to shut down
+     * @param ordered if <code>true</code>, pass on the paths in the order of a sequential traversal
+     */
+    public ParallelFinder(ForkJoinPool pool, boolean ordered) {
+        this(pool, ordered, false);
+    }
+
+    private ParallelFinder(ForkJoinPool pool, boolean ordered, boolean ownPool) {
+        this.pool = pool;
+        this.ordered = ordered;
+        this.ownPool = ownPool;
+    }
+
+    @Override
+    public void find(Path path, boolean ignoreErrors, boolean ignoreNullResults, Consumer<Path> consumer) {
+        log.debug("Directory to traverse in parallel: {}", path);
+        log.debug("Ignore errors mode set to: {}", ignoreErrors);
+        log.debug("Ignore null results mode set to: {}", ignoreNullResults);
+
+        if (!Files.isDirectory(path)) {
+            consumer.accept(path);
+        } else if (ordered) {
+            new OrderedTraversal(ignoreErrors, ignoreNullResults).run(path, consumer);
+        } else {
+            Consumer<Path> serialized = file -> {
+                synchronized (this) {
+                    consumer.accept(file);
+                }
+            };
+            pool.invoke(new DirectoryTask(path, serialized, ignoreErrors, ignoreNullResults));
+        }
+    }
+
+    /**
+     * Shut down the pool of the finder, if it created it.
+     */
+    @Override
+    public void close() {
+        if (ownPool) {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * List a directory, passing its files to the visitor and its subdirectories to the given consumer, in the
+     * order of the listing.
+     */
+    private static void list(Path directory, FinderFileVisitor<Path> visitor, Consumer<Path> subdirectories) {
+        try {
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+                for (Path entry : entries) {
+                    BasicFileAttributes attributes;
+                    try {
+                        attributes = Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    } catch (IOException e) {
+                        visitor.visitFileFailed(entry, e);
+                        continue;
+                    }
+                    if (attributes.isDirectory()) {
+                        subdirectories.accept(entry);
+                    } else {
+                        visitor.visitFile(entry, attributes);
+                    }
+                }
+            } catch (DirectoryIteratorException e) {
+                visitor.postVisitDirectory(directory, e.getCause());
+            } catch (IOException e) {
+                // Failing to open the directory, reported as Files.walkFileTree does
+                visitor.visitFileFailed(directory, e);
+            }
+        } catch (IOException e) {
+            throw new FinderException(String.format("Error while traversing directory %s", directory), e);
+        }
+    }
+
+    /**
+     * Lists a directory, visits its files and forks a task for each of its subdirectories.
+     */
+    private static class DirectoryTask extends RecursiveAction {
+
+        private final Path directory;
+
+        private final Consumer<Path> consumer;
+
+        private final boolean ignoreErrors;
+
+        private final boolean ignoreNullResults;
+
+        DirectoryTask(Path directory, Consumer<Path> consumer, boolean ignoreErrors, boolean ignoreNullResults) {
+            this.directory = directory;
+            this.consumer = consumer;
+            this.ignoreErrors = ignoreErrors;
+            this.ignoreNullResults = ignoreNullResults;
+        }
+
+        @Override
+        protected void compute() {
+            List<DirectoryTask> subdirectories = new ArrayList<>();
+            try {
+                list(directory, new FinderFileVisitor<>(file -> file, consumer, ignoreErrors, ignoreNullResults), subdirectory -> {
+                    DirectoryTask task = new DirectoryTask(subdirectory, consumer, ignoreErrors, ignoreNullResults);
+                    task.fork();
+                    subdirectories.add(task);
+                });
+            } catch (RuntimeException e) {
+                subdirectories.forEach(task -> task.cancel(true));
+                throw e;
+            }
+            subdirectories.forEach(DirectoryTask::join);
+        }
+    }
+
+    /**
+     * The entries of a directory in the order of the listing, files and subdirectories.
+     */
+    private static class Listing {
+
+        private final List<Path> entries = new ArrayList<>();
+
+        private final BitSet subdirectories = new BitSet();
+
+        // Entries handed over in ordered mode
+        private int handedOver;
+    }
+
+    /**
+     * Lists a single directory.
+     */
+    private static class ListingTask extends RecursiveTask<Listing> {
+
+        private final Path directory;
+
+        private final boolean ignoreErrors;
+
+        private final boolean ignoreNullResults;
+
+        ListingTask(Path directory, boolean ignoreErrors, boolean ignoreNullResults) {
+            this.directory = directory;
+            this.ignoreErrors = ignoreErrors;
+            this.ignoreNullResults = ignoreNullResults;
+        }
+
+        @Override
+        protected Listing compute() {
+            Listing listing = new Listing();
+            list(directory, new FinderFileVisitor<>(file -> file, listing.entries::add, ignoreErrors, ignoreNullResults), subdirectory -> {
+                listing.subdirectories.set(listing.entries.size());
+                listing.entries.add(subdirectory);
+            });
+            return listing;
+        }
+    }
+
+    /**
+     * Hands the listings over to the consumer in the order of a sequential traversal, depth first, while the
+     * directories next in that order are listed on the pool.
+     */
+    private class OrderedTraversal {
+
+        private final boolean ignoreErrors;
+
+        private final boolean ignoreNullResults;
+
+        private final int ahead = pool.getParallelism() * LISTINGS_AHEAD_PER_THREAD;
+
+        // The directories in the order of the traversal, not listed yet
+        private final Deque<Path> next = new ArrayDeque<>();
+
+        // The directories being listed ahead of the consumer
+        private final Map<Path, ListingTask> listings = new HashMap<>();
+
+        OrderedTraversal(boolean ignoreErrors, boolean ignoreNullResults) {
+            this.ignoreErrors = ignoreErrors;
+            this.ignoreNullResults = ignoreNullResults;
+        }
+
+        void run(Path root, Consumer<Path> consumer) {
+            // The listings being handed over, innermost first
+            Deque<Listing> stack = new ArrayDeque<>();
+            try {
+                stack.push(take(root));
+                while (!stack.isEmpty()) {
+                    Listing listing = stack.peek();
+                    int position = listing.handedOver++;
+                    if (position == listing.entries.size()) {
+                        stack.pop();
+                    } else if (listing.subdirectories.get(position)) {
+                        stack.push(take(listing.entries.get(position)));
+                    } else {
+                        consumer.accept(listing.entries.get(position));
+                    }
+                }
+            } finally {
+                listings.values().forEach(task -> task.cancel(true));
+            }
+        }
+
+        /**
+         * Wait for the listing of the directory, next in the order of the traversal, then list the next ones ahead.
+         */
+        private Listing take(Path directory) {
+            ListingTask task = listings.remove(directory);
+            if (task == null) {
+                next.removeFirstOccurrence(directory);
+                task = submit(directory);
+            }
+            Listing listing = task.join();
+
+            // Its subdirectories come first among the directories left
+            for (int i = listing.subdirectories.previousSetBit(listing.entries.size() - 1); i >= 0; i = listing.subdirectories.previousSetBit(i - 1)) {
+                next.addFirst(listing.entries.get(i));
+            }
+            while (listings.size() < ahead && !next.isEmpty()) {
+                Path following = next.poll();
+                listings.put(following, submit(following));
+            }
+            return listing;
+        }
+
+        private ListingTask submit(Path directory) {
+            ListingTask task = new ListingTask(directory, ignoreErrors, ignoreNullResults);
+            pool.execute(task);
+            return task;
+        }
+    }
+}
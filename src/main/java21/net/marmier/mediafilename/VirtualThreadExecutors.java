@@ -0,0 +1,21 @@
+package net.marmier.mediafilename;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Executors on virtual threads, only compiled by the java21 build profile. The rest of the code reaches it
+ * through {@link VirtualThreads}, so it still builds for Java 8.
+ */
+final class VirtualThreadExecutors {
+
+    private VirtualThreadExecutors() {
+    }
+
+    /**
+     * @return an executor starting a new virtual thread for each task
+     */
+    static ExecutorService newPerTaskExecutor() {
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("media-virtual-", 1).factory());
+    }
+}
@@ -0,0 +1,200 @@
+package net.marmier.mediafilename;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+public class DropFolderWatcherTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final BlockingQueue<MediaProcessor.Result> results = new LinkedBlockingQueue<>();
+
+    private Path root;
+
+    private DropFolderWatcher watcher;
+
+    private Thread watching;
+
+    // Files whose processing fails once, and the prefix of the new filenames given from then on
+    private final Set<String> failing = ConcurrentHashMap.newKeySet();
+
+    private volatile String prefix = "new_";
+
+    @Before
+    public void setUp() throws Exception {
+        root = folder.newFolder("drop").toPath();
+        Files.createFile(root.resolve("DSC_0000.JPG"));
+        MediaProcessor processor = new FakeMediaProcessor() {
+            @Override
+            public List<Result> process(List<Path> files) {
+                for (Path file : files) {
+                    if (failing.remove(file.getFileName().toString())) {
+                        throw new MediaProcessorException("Failing on " + file);
+                    }
+                }
+                return super.process(files);
+            }
+
+            @Override
+            public String generateFilename(File mediaFile) {
+                String name = super.generateFilename(mediaFile);
+                return name == null ? null : prefix + mediaFile.getName();
+            }
+        };
+        watcher = new DropFolderWatcher(processor, root, results::add, 100, 1500);
+        watching = new Thread(() -> {
+            try {
+                watcher.run();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        watching.start();
+        // Leave time to register the directories
+        Thread.sleep(200);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        watcher.stop();
+        watching.join(5000);
+        Assert.assertFalse(watching.isAlive());
+    }
+
+    @Test
+    public void arrivingFilesAreProcessed() throws Exception {
+        Files.write(root.resolve("DSC_0001.JPG"), new byte[]{ 1 });
+        Path subdirectory = Files.createDirectory(root.resolve("card"));
+        Files.write(subdirectory.resolve("DSC_0002.JPG"), new byte[]{ 2 });
+
+        List<String> processed = new ArrayList<>();
+        processed.add(next().getOriginalPath().getFileName().toString());
+        processed.add(next().getOriginalPath().getFileName().toString());
+        processed.sort(null);
+
+        Assert.assertEquals("[DSC_0001.JPG, DSC_0002.JPG]", processed.toString());
+        // The file present before the watch is left alone
+        Assert.assertNull(results.poll(500, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void companionArrivingFirstGetsNameOfMaster() throws Exception {
+        Files.write(root.resolve("DSC_0003.xmp"), new byte[]{ 3 });
+        Thread.sleep(500);
+        Files.write(root.resolve("DSC_0003.JPG"), new byte[]{ 3 });
+
+        MediaProcessor.Result master = next();
+        MediaProcessor.Result companion = next();
+
+        Assert.assertEquals(root.resolve("DSC_0003.JPG"), master.getOriginalPath());
+        Assert.assertEquals(root.resolve("DSC_0003.xmp"), companion.getOriginalPath());
+        Assert.assertEquals("new_DSC_0003.xmp", companion.getNewFilename());
+    }
+
+    @Test
+    public void companionWithoutMasterInTimeIsGivenUp() throws Exception {
+        Files.write(root.resolve("DSC_0006.xmp"), new byte[]{ 6 });
+        Thread.sleep(2500);
+        Files.write(root.resolve("DSC_0006.JPG"), new byte[]{ 6 });
+
+        Assert.assertEquals(root.resolve("DSC_0006.JPG"), next().getOriginalPath());
+        Assert.assertNull(results.poll(500, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void onlyCompanionFilesWaitForTheirMaster() throws Exception {
+        Files.write(root.resolve("DSC_0007.txt"), new byte[]{ 7 });
+        Thread.sleep(500);
+        Files.write(root.resolve("DSC_0007.JPG"), new byte[]{ 7 });
+
+        Assert.assertEquals(root.resolve("DSC_0007.JPG"), next().getOriginalPath());
+        Assert.assertNull(results.poll(500, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void fileArrivingAgainAfterItLeftIsProcessedAgain() throws Exception {
+        Path file = root.resolve("DSC_0008.JPG");
+        Files.write(file, new byte[]{ 8 });
+        Assert.assertEquals(file, next().getOriginalPath());
+
+        Files.move(file, root.resolve("2015-12-03_074904utc_tz+0100_DSC_0008.JPG"));
+        Thread.sleep(500);
+        Files.write(file, new byte[]{ 8 });
+        Assert.assertEquals(file, next().getOriginalPath());
+    }
+
+    @Test
+    public void companionGetsTheNameOfTheMasterArrivingAfterAnotherLeft() throws Exception {
+        Path master = root.resolve("DSC_0009.JPG");
+        Files.write(master, new byte[]{ 9 });
+        Assert.assertEquals("new_DSC_0009.JPG", next().getNewFilename());
+
+        // The next card reuses the filename once the first file was renamed
+        Files.move(master, root.resolve("2015-12-03_074904utc_tz+0100_DSC_0009.JPG"));
+        Thread.sleep(500);
+        prefix = "newer_";
+        Files.write(root.resolve("DSC_0009.xmp"), new byte[]{ 9 });
+        Files.write(master, new byte[]{ 9 });
+
+        Assert.assertEquals("newer_DSC_0009.JPG", next().getNewFilename());
+        Assert.assertEquals("newer_DSC_0009.xmp", next().getNewFilename());
+    }
+
+    @Test
+    public void failingFilesAreProcessedOnceChanged() throws Exception {
+        Path file = root.resolve("DSC_0010.JPG");
+        failing.add("DSC_0010.JPG");
+        Files.write(file, new byte[]{ 10 });
+        Thread.sleep(500);
+
+        // Still watching
+        Files.write(root.resolve("DSC_0011.JPG"), new byte[]{ 11 });
+        Assert.assertEquals(root.resolve("DSC_0011.JPG"), next().getOriginalPath());
+        Files.write(file, new byte[]{ 10 }, StandardOpenOption.APPEND);
+        Assert.assertEquals(file, next().getOriginalPath());
+    }
+
+    @Test
+    public void growingFileWaitsUntilItSettles() throws Exception {
+        Path file = root.resolve("DSC_0004.JPG");
+        Files.write(file, new byte[]{ 4 });
+        for (int i = 0; i < 5; i++) {
+            Thread.sleep(60);
+            Files.write(file, new byte[]{ 4 }, StandardOpenOption.APPEND);
+            Assert.assertNull(results.poll());
+        }
+
+        Assert.assertEquals(file, next().getOriginalPath());
+    }
+
+    @Test
+    public void renamedFilesAreIgnored() throws Exception {
+        Files.write(root.resolve("2015-12-03_074904utc_tz+0100_DSC_0005.JPG"), new byte[]{ 5 });
+
+        Assert.assertNull(results.poll(500, TimeUnit.MILLISECONDS));
+    }
+
+    private MediaProcessor.Result next() throws InterruptedException {
+        MediaProcessor.Result result = results.poll(10, TimeUnit.SECONDS);
+        Assert.assertNotNull("A result is expected.", result);
+        return result;
+    }
+}
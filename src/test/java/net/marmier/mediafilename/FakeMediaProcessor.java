@@ -0,0 +1,43 @@
+package net.marmier.mediafilename;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Processes the JPG files only, naming them "new_" followed by their filename.
+ */
+class FakeMediaProcessor implements MediaProcessor {
+
+    final AtomicInteger processed = new AtomicInteger();
+
+    @Override
+    public List<Result> process(List<Path> files) {
+        List<Result> results = new ArrayList<>();
+        for (Path file : files) {
+            Result result = processFile(file);
+            if (result != null) {
+                results.add(result);
+            }
+        }
+        return results;
+    }
+
+    @Override
+    public Result processFile(Path file) {
+        processed.incrementAndGet();
+        String name = generateFilename(file.toFile());
+        return name == null ? null : new MediaProcessorImpl.ResultImpl(file, name);
+    }
+
+    @Override
+    public String generateFilename(File mediaFile) {
+        return mediaFile.getName().endsWith(".JPG") ? "new_" + mediaFile.getName() : null;
+    }
+
+    @Override
+    public void close() {
+    }
+}
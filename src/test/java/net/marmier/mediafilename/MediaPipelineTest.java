@@ -0,0 +1,181 @@
+package net.marmier.mediafilename;
+
+import net.marmier.mediafilename.util.finder.Finder;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+public class MediaPipelineTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    // Out of the tree traversed
+    @Rule
+    public TemporaryFolder journalFolder = new TemporaryFolder();
+
+    private Path root;
+
+    @Before
+    public void setUp() throws Exception {
+        for (int directory = 0; directory < 5; directory++) {
+            File parent = folder.newFolder("directory" + directory);
+            for (int i = 0; i < 40; i++) {
+                String extension = i % 4 == 0 ? "xmp" : "JPG";
+                new File(parent, String.format("DSC_%d%02d.%s", directory, i, extension)).createNewFile();
+            }
+        }
+        root = folder.getRoot().toPath();
+    }
+
+    @Test
+    public void filesAreProcessedInTraversalOrder() {
+        List<Path> all = new Finder().find(root, false, false);
+
+        MediaPipeline.Outcome outcome = new MediaPipeline(new FakeMediaProcessor(), new Finder(), 8).run(root);
+
+        List<Path> expectedResults = all.stream().filter(path -> path.toString().endsWith(".JPG")).collect(Collectors.toList());
+        List<Path> expectedUnprocessed = all.stream().filter(path -> path.toString().endsWith(".xmp")).collect(Collectors.toList());
+        Assert.assertEquals(expectedResults, outcome.getResults().stream().map(MediaProcessor.Result::getOriginalPath).collect(Collectors.toList()));
+        Assert.assertEquals(expectedUnprocessed, outcome.getUnprocessedFiles());
+    }
+
+    @Test
+    public void traversalWaitsForProcessing() {
+        AtomicInteger found = new AtomicInteger();
+        AtomicInteger maxWaiting = new AtomicInteger();
+        FakeMediaProcessor processor = new FakeMediaProcessor() {
+            @Override
+            public List<Result> process(List<Path> files) {
+                sleep();
+                maxWaiting.accumulateAndGet(found.get() - processed.get(), Math::max);
+                return super.process(files);
+            }
+        };
+        Finder countingFinder = new Finder() {
+            @Override
+            public void find(Path path, boolean ignoreErrors, boolean ignoreNullResults, Consumer<Path> consumer) {
+                super.find(path, ignoreErrors, ignoreNullResults, file -> {
+                    found.incrementAndGet();
+                    consumer.accept(file);
+                });
+            }
+        };
+
+        new MediaPipeline(processor, countingFinder, 8).run(root);
+
+        Assert.assertEquals(200, processor.processed.get());
+        // The queue, the chunk being processed and the path waiting to enter the queue
+        Assert.assertTrue("Waiting files: " + maxWaiting.get(), maxWaiting.get() <= 8 + 2 + 1);
+    }
+
+    @Test
+    public void processingErrorStopsTraversal() {
+        FakeMediaProcessor processor = new FakeMediaProcessor() {
+            @Override
+            public List<Result> process(List<Path> files) {
+                throw new MediaProcessorException("Failing");
+            }
+        };
+        try {
+            new MediaPipeline(processor, new Finder(), 4).run(root);
+            Assert.fail("A " + MediaProcessorException.class.getName() + " is expected.");
+        } catch (MediaProcessorException e) {
+            Assert.assertEquals("Failing", e.getMessage());
+        }
+    }
+
+    @Test
+    public void singleFileIsProcessed() {
+        Path file = root.resolve("directory0/DSC_001.JPG");
+
+        MediaPipeline.Outcome outcome = new MediaPipeline(new FakeMediaProcessor(), new Finder(), 8).run(file);
+
+        Assert.assertEquals(1, outcome.getResults().size());
+        Assert.assertEquals(file, outcome.getResults().get(0).getOriginalPath());
+        Assert.assertTrue(outcome.getUnprocessedFiles().isEmpty());
+    }
+
+    @Test
+    public void companionFilesGetNameOfMaster() throws Exception {
+        File pairs = folder.newFolder("pairs");
+        for (String name : new String[]{ "DSC_0001.xmp", "DSC_0001.JPG", "DSC_0001.THM", "DSC_0002.xmp" }) {
+            new File(pairs, name).createNewFile();
+        }
+        // Same root in another directory
+        new File(folder.newFolder("pairs", "card2"), "DSC_0001.xmp").createNewFile();
+
+        for (int queueSize : new int[]{ 4, 64 }) {
+            FakeMediaProcessor processor = new FakeMediaProcessor();
+            MediaPipeline.Outcome outcome = new MediaPipeline(processor, new Finder(), queueSize).run(pairs.toPath());
+
+            List<String> names = outcome.getResults().stream()
+                .map(result -> result.getOriginalPath().getFileName() + " " + result.getNewFilename())
+                .sorted().collect(Collectors.toList());
+            Assert.assertEquals("[DSC_0001.JPG new_DSC_0001.JPG, DSC_0001.THM new_DSC_0001.THM, DSC_0001.xmp new_DSC_0001.xmp]", names.toString());
+            List<Path> unprocessed = outcome.getUnprocessedFiles().stream().sorted().collect(Collectors.toList());
+            Assert.assertEquals(Arrays.asList(pairs.toPath().resolve("DSC_0002.xmp"), pairs.toPath().resolve("card2/DSC_0001.xmp")), unprocessed);
+            if (queueSize == 64) {
+                // In a single chunk, only the master file of the group is extracted
+                Assert.assertEquals(3, processor.processed.get());
+            }
+        }
+    }
+
+    @Test
+    public void resumedRunSkipsRecordedFiles() throws Exception {
+        List<Path> all = new Finder().find(root, false, false);
+        Path journalFile = journalFolder.getRoot().toPath().resolve("run.journal");
+        MediaPipeline.Outcome complete = new MediaPipeline(new FakeMediaProcessor(), new Finder(), 8).run(root);
+
+        // A run failing after a few chunks
+        FakeMediaProcessor failing = new FakeMediaProcessor() {
+            @Override
+            public List<Result> process(List<Path> files) {
+                if (processed.get() >= 50) {
+                    throw new MediaProcessorException("Crash");
+                }
+                return super.process(files);
+            }
+        };
+        try (ResultJournal journal = ResultJournal.open(journalFile)) {
+            new MediaPipeline(failing, new Finder(), 8, journal).run(root);
+            Assert.fail("A " + MediaProcessorException.class.getName() + " is expected.");
+        } catch (MediaProcessorException e) {
+            Assert.assertEquals("Crash", e.getMessage());
+        }
+
+        FakeMediaProcessor resuming = new FakeMediaProcessor();
+        MediaPipeline.Outcome resumed;
+        try (ResultJournal journal = ResultJournal.open(journalFile)) {
+            Assert.assertEquals(failing.processed.get(), journal.getReplayedCount());
+            resumed = new MediaPipeline(resuming, new Finder(), 8, journal).run(root);
+        }
+
+        Assert.assertEquals(all.size() - failing.processed.get(), resuming.processed.get());
+        Assert.assertEquals(names(complete), names(resumed));
+        Assert.assertEquals(complete.getUnprocessedFiles(), resumed.getUnprocessedFiles());
+    }
+
+    private static List<String> names(MediaPipeline.Outcome outcome) {
+        return outcome.getResults().stream().map(result -> result.getOriginalPath() + " " + result.getNewFilename()).collect(Collectors.toList());
+    }
+
+    private static void sleep() {
+        try {
+            Thread.sleep(1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package net.marmier.mediafilename;
+
+import net.marmier.mediafilename.metadata.MetaData;
+import net.marmier.mediafilename.metadata.MetaDataService;
+import net.marmier.mediafilename.metadata.PhotoMetaData;
+import net.marmier.mediafilename.timezone.Offset;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to process a directory of files whose metadata extraction blocks for a millisecond, as an Exiftool
+ * round-trip or a cold disk read would, with platform thread workers compared to a virtual thread per file,
+ * both limited to the same number of files at once.
+ * <p>
+ * The virtual thread mode requires a build with the java21 profile, run on Java 21 or later. Run from the
+ * project directory after <code>mvn test-compile</code>, with the test classpath.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MediaProcessorBenchmark {
+
+    private static final Path WORKING_DIRECTORY = Paths.get("/media");
+
+    private static final int FILES = 500;
+
+    @Param({"platform", "virtual"})
+    public String threads;
+
+    @Param({"4", "16"})
+    public int workers;
+
+    private List<Path> files;
+
+    private MediaProcessor processor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        files = new ArrayList<>(FILES);
+        for (int i = 0; i < FILES; i++) {
+            files.add(WORKING_DIRECTORY.resolve(String.format("DSC_%04d.JPG", i)));
+        }
+        Offset offset = Offset.forCode("UTC+1");
+        if ("virtual".equals(threads)) {
+            processor = new MediaProcessorImpl(offset, WORKING_DIRECTORY, new BlockingMetaDataService(), VirtualThreads.newPerTaskExecutor(), workers);
+        } else {
+            processor = new MediaProcessorImpl(offset, WORKING_DIRECTORY, BlockingMetaDataService::new, workers);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        processor.close();
+    }
+
+    @Benchmark
+    public List<MediaProcessor.Result> process() {
+        return processor.process(files);
+    }
+
+    /**
+     * Blocks for a millisecond per file. Can be shared by concurrent tasks.
+     */
+    private static class BlockingMetaDataService implements MetaDataService {
+
+        @Override
+        public MetaData metadataFromFile(File file) {
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return new PhotoMetaData(LocalDateTime.of(2016, 1, 1, 0, 0), file.getName());
+        }
+
+        @Override
+        public List<MetaData> metadataFromFiles(List<File> files) {
+            List<MetaData> results = new ArrayList<>(files.size());
+            for (File file : files) {
+                results.add(metadataFromFile(file));
+            }
+            return results;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(MediaProcessorBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,385 @@
+package net.marmier.mediafilename;
+
+import net.marmier.mediafilename.metadata.GeneratedFilenameMetaDataService;
+import net.marmier.mediafilename.metadata.MetaData;
+import net.marmier.mediafilename.metadata.MetaDataService;
+import net.marmier.mediafilename.metadata.PhotoMetaData;
+import net.marmier.mediafilename.timezone.Offset;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+public class MediaProcessorImplTest {
+
+    private static final Path WORKING_DIRECTORY = Paths.get("/media");
+
+    @Test
+    public void parallelResultsKeepSequentialOrder() {
+        List<Path> files = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            files.add(WORKING_DIRECTORY.resolve(String.format("dir%d/DSC_%04d.%s", i % 3, i, i % 7 == 0 ? "txt" : "JPG")));
+        }
+
+        List<String> sequential = process(files, 1);
+        List<String> parallel = process(files, 4);
+
+        Assert.assertEquals(200 - 29, sequential.size());
+        Assert.assertEquals(sequential, parallel);
+    }
+
+    @Test
+    public void servicesAreClosedWithTheProcessor() {
+        List<FakeMetaDataService> services = new ArrayList<>();
+        MediaProcessorImpl processor = new MediaProcessorImpl(Offset.forCode("UTC"), WORKING_DIRECTORY, () -> {
+            FakeMetaDataService service = new FakeMetaDataService();
+            services.add(service);
+            return service;
+        }, 3);
+        Assert.assertEquals(3, processor.getWorkers());
+        processor.close();
+
+        Assert.assertEquals(3, services.size());
+        services.forEach(service -> Assert.assertTrue(service.closed));
+    }
+
+    @Test
+    public void perFileTasksAreBoundedByPermits() {
+        List<Path> files = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            files.add(WORKING_DIRECTORY.resolve(String.format("DSC_%04d.%s", i, i % 7 == 0 ? "txt" : "JPG")));
+        }
+        FakeMetaDataService shared = new FakeMetaDataService();
+
+        List<String> perFile;
+        try (MediaProcessor processor = new MediaProcessorImpl(Offset.forCode("UTC+1"), WORKING_DIRECTORY, shared, Executors.newCachedThreadPool(), 3)) {
+            perFile = processor.process(files).stream()
+                .map(result -> result.getOriginalPath() + " " + result.getNewFilename())
+                .collect(Collectors.toList());
+        }
+
+        Assert.assertEquals(process(files, 1), perFile);
+        Assert.assertTrue(shared.maxConcurrent.get() <= 3);
+        Assert.assertTrue(shared.closed);
+    }
+
+    @Test
+    public void perFileTasksOnVirtualThreads() {
+        // Run by the java21 build on Java 21 only
+        Assume.assumeTrue(VirtualThreads.isAvailable());
+        List<Path> files = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            files.add(WORKING_DIRECTORY.resolve(String.format("DSC_%04d.%s", i, i % 7 == 0 ? "txt" : "JPG")));
+        }
+        FakeMetaDataService shared = new FakeMetaDataService();
+
+        List<String> perFile;
+        try (MediaProcessor processor = new MediaProcessorImpl(Offset.forCode("UTC+1"), WORKING_DIRECTORY, shared, VirtualThreads.newPerTaskExecutor(), 3)) {
+            perFile = processor.process(files).stream()
+                .map(result -> result.getOriginalPath() + " " + result.getNewFilename())
+                .collect(Collectors.toList());
+        }
+
+        Assert.assertEquals(process(files, 1), perFile);
+        Assert.assertTrue(shared.maxConcurrent.get() <= 3);
+        Assert.assertTrue(shared.virtualThreads.get() > 0);
+    }
+
+    @Test
+    public void virtualThreadsNeedJava21Build() {
+        try {
+            MediaProcessorImpl.withVirtualThreads(Offset.forCode("UTC"), WORKING_DIRECTORY, 2).close();
+            Assert.assertTrue(VirtualThreads.isAvailable());
+        } catch (UnsupportedOperationException e) {
+            Assert.assertFalse(VirtualThreads.isAvailable());
+        }
+    }
+
+    @Test
+    public void asyncFilesCompleteWithTheirResults() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try (MediaProcessor processor = new MediaProcessorImpl(Offset.forCode("UTC+1"), WORKING_DIRECTORY, FakeMetaDataService::new, 2)) {
+            Path jpg = WORKING_DIRECTORY.resolve("DSC_0001.JPG");
+            Path txt = WORKING_DIRECTORY.resolve("DSC_0002.txt");
+
+            CompletableFuture<String> name = processor.processFileAsync(jpg, executor).thenApply(MediaProcessor.Result::getNewFilename);
+            Assert.assertEquals(processor.processFile(jpg).getNewFilename(), name.get());
+            Assert.assertNull(processor.processFileAsync(txt, executor).get());
+
+            CompletableFuture<MediaProcessor.Result> relative = processor.processFileAsync(Paths.get("DSC_0003.JPG"), executor);
+            try {
+                relative.get();
+                Assert.fail("An " + ExecutionException.class.getName() + " is expected for a relative path.");
+            } catch (ExecutionException e) {
+                Assert.assertTrue(e.getCause() instanceof MediaProcessorException);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void asyncBatchPassesAllResultsToConsumer() throws Exception {
+        List<Path> files = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            files.add(WORKING_DIRECTORY.resolve(String.format("DSC_%04d.%s", i, i % 7 == 0 ? "txt" : "JPG")));
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try (MediaProcessor processor = new MediaProcessorImpl(Offset.forCode("UTC+1"), WORKING_DIRECTORY, FakeMetaDataService::new, 2)) {
+            List<String> consumed = new ArrayList<>();
+            processor.processAsync(files, executor, result -> consumed.add(result.getOriginalPath() + " " + result.getNewFilename()))
+                .get(10, TimeUnit.SECONDS);
+
+            List<String> sequential = process(files, 1);
+            Assert.assertEquals(sequential.size(), consumed.size());
+            Assert.assertEquals(new HashSet<>(sequential), new HashSet<>(consumed));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void asyncBatchSubmitsNoMoreFilesThanWorkers() throws Exception {
+        List<Path> files = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            files.add(WORKING_DIRECTORY.resolve(String.format("DSC_%04d.JPG", i)));
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        AtomicInteger submitted = new AtomicInteger();
+        AtomicInteger consumed = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        try (MediaProcessor processor = new MediaProcessorImpl(Offset.forCode("UTC+1"), WORKING_DIRECTORY, FakeMetaDataService::new, 2)) {
+            processor.processAsync(files, task -> {
+                maxInFlight.accumulateAndGet(submitted.incrementAndGet() - consumed.get(), Math::max);
+                executor.execute(task);
+            }, result -> consumed.incrementAndGet()).get(10, TimeUnit.SECONDS);
+
+            Assert.assertEquals(50, consumed.get());
+            Assert.assertEquals(2, maxInFlight.get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void asyncFuturesSubmitNoMoreFilesThanWorkers() throws Exception {
+        List<Path> files = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            files.add(WORKING_DIRECTORY.resolve(String.format("DSC_%04d.JPG", i)));
+        }
+        // Failing before its metadata is read, it comes last not to be counted in flight
+        files.set(49, Paths.get("DSC_0049.JPG"));
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        AtomicInteger submitted = new AtomicInteger();
+        AtomicInteger extracted = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        try (MediaProcessor processor = new MediaProcessorImpl(Offset.forCode("UTC+1"), WORKING_DIRECTORY, () -> new FakeMetaDataService() {
+            @Override
+            public MetaData metadataFromFile(File file) {
+                try {
+                    return super.metadataFromFile(file);
+                } finally {
+                    extracted.incrementAndGet();
+                }
+            }
+        }, 2)) {
+            List<CompletableFuture<MediaProcessor.Result>> futures = processor.processAsync(files, task -> {
+                maxInFlight.accumulateAndGet(submitted.incrementAndGet() - extracted.get(), Math::max);
+                executor.execute(task);
+            });
+
+            // The relative path fails on its own
+            for (int i = 0; i < files.size(); i++) {
+                try {
+                    Assert.assertEquals(files.get(i), futures.get(i).get(10, TimeUnit.SECONDS).getOriginalPath());
+                    Assert.assertNotEquals(49, i);
+                } catch (ExecutionException e) {
+                    Assert.assertEquals(49, i);
+                    Assert.assertTrue(e.getCause() instanceof MediaProcessorException);
+                }
+            }
+            Assert.assertEquals(49, extracted.get());
+            Assert.assertEquals(2, maxInFlight.get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void asyncBatchFailsWithTheFirstFailure() throws Exception {
+        CountDownLatch slow = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try (MediaProcessor processor = new MediaProcessorImpl(Offset.forCode("UTC+1"), WORKING_DIRECTORY, () -> new FakeMetaDataService() {
+            @Override
+            public MetaData metadataFromFile(File file) {
+                try {
+                    slow.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.metadataFromFile(file);
+            }
+        }, 2)) {
+            // The relative path fails while the other file is still being extracted
+            List<Path> files = Arrays.asList(WORKING_DIRECTORY.resolve("DSC_0001.JPG"), Paths.get("DSC_0002.JPG"));
+            try {
+                processor.processAsync(files, executor, result -> { }).get(10, TimeUnit.SECONDS);
+                Assert.fail("An " + ExecutionException.class.getName() + " is expected for the relative path.");
+            } catch (ExecutionException e) {
+                Assert.assertTrue(e.getCause() instanceof MediaProcessorException);
+            }
+        } finally {
+            slow.countDown();
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void renamedFilesAreSkippedOrRenamedAgain() {
+        FakeMetaDataService extracting = new FakeMetaDataService();
+        Path renamed = WORKING_DIRECTORY.resolve("2016-01-01_000700utc_tz+0000_DSC_0007.JPG");
+        Path notRenamed = WORKING_DIRECTORY.resolve("DSC_0008.JPG");
+        List<Path> files = Arrays.asList(renamed, notRenamed);
+
+        try (MediaProcessor processor = new MediaProcessorImpl(Offset.forCode("UTC"), WORKING_DIRECTORY, new GeneratedFilenameMetaDataService(extracting))) {
+            List<MediaProcessor.Result> results = processor.process(files);
+            Assert.assertEquals(1, results.size());
+            Assert.assertEquals(notRenamed, results.get(0).getOriginalPath());
+        }
+        try (MediaProcessor processor = new MediaProcessorImpl(Offset.forCode("UTC+1"), WORKING_DIRECTORY, new GeneratedFilenameMetaDataService(extracting))) {
+            Assert.assertEquals("/2015-12-31_230700utc_tz+0100_DSC_0007.JPG", processor.processFile(renamed).getNewFilename());
+        }
+        Assert.assertEquals(1, extracting.extracted.get());
+    }
+
+    @Test
+    public void filesRenamedWithWrongOffsetAreRenamedAgain() {
+        Path wrong = WORKING_DIRECTORY.resolve("trip/2016-01-01_000700utc_tz+0100_DSC_0007.JPG");
+        Path companion = WORKING_DIRECTORY.resolve("trip/2016-01-01_000700utc_tz+0100_DSC_0007.xmp");
+        Path otherOffset = WORKING_DIRECTORY.resolve("trip/2016-01-01_000800utc_tz+0200_DSC_0008.JPG");
+        Path notRenamed = WORKING_DIRECTORY.resolve("trip/DSC_0009.JPG");
+
+        try (MediaProcessor processor = new MediaProcessorImpl(Offset.forCode("UTC+2"), WORKING_DIRECTORY,
+            GeneratedFilenameMetaDataService.generatedWith(Offset.forCode("UTC+1")))) {
+            List<String> renamed = processor.process(Arrays.asList(wrong, companion, otherOffset, notRenamed)).stream()
+                .map(MediaProcessor.Result::getNewFilename)
+                .collect(Collectors.toList());
+
+            // Taken at 01:07 local time, so 23:07 the day before in UTC
+            Assert.assertEquals(Arrays.asList("trip/2015-12-31_230700utc_tz+0200_DSC_0007.JPG", "trip/2015-12-31_230700utc_tz+0200_DSC_0007.xmp"), renamed);
+        }
+    }
+
+    @Test
+    public void companionResults() {
+        MediaProcessor.Result master = new MediaProcessorImpl.ResultImpl(Paths.get("/media/DSC_0001.NEF"), "2015-12-03_074904utc_tz+0100_DSC_0001.NEF");
+
+        Assert.assertEquals("2015-12-03_074904utc_tz+0100_DSC_0001.xmp",
+            MediaProcessorImpl.ResultImpl.companion(master, Paths.get("/media/DSC_0001.xmp")).getNewFilename());
+        // Matched by a companion rule
+        Assert.assertEquals("2015-12-03_074904utc_tz+0100_DSC_0001.NEF.xmp",
+            MediaProcessorImpl.ResultImpl.companion(master, Paths.get("/media/DSC_0001.NEF.xmp")).getNewFilename());
+        Assert.assertEquals("2015-12-03_074904utc_tz+0100_DSC_0001 (Edited).jpg",
+            MediaProcessorImpl.ResultImpl.companion(master, Paths.get("/media/DSC_0001 (Edited).jpg")).getNewFilename());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void workersMustBePositive() {
+        new MediaProcessorImpl(Offset.forCode("UTC"), WORKING_DIRECTORY, FakeMetaDataService::new, 0);
+    }
+
+    private static List<String> process(List<Path> files, int workers) {
+        try (MediaProcessor processor = new MediaProcessorImpl(Offset.forCode("UTC+1"), WORKING_DIRECTORY, FakeMetaDataService::new, workers)) {
+            return processor.process(files).stream()
+                .map(result -> result.getOriginalPath() + " " + result.getNewFilename())
+                .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Derives the capture time from the file number, taking longer for some files. Fails if a batch is
+     * requested by two workers at once, and keeps track of the single files extracted at once.
+     */
+    private static class FakeMetaDataService implements MetaDataService {
+
+        private final AtomicBoolean inUse = new AtomicBoolean();
+
+        private final AtomicInteger concurrent = new AtomicInteger();
+
+        private final AtomicInteger maxConcurrent = new AtomicInteger();
+
+        private final AtomicInteger extracted = new AtomicInteger();
+
+        // Files extracted on a virtual thread, told by its name as the Java 8 API cannot
+        private final AtomicInteger virtualThreads = new AtomicInteger();
+
+        private boolean closed;
+
+        @Override
+        public MetaData metadataFromFile(File file) {
+            maxConcurrent.accumulateAndGet(concurrent.incrementAndGet(), Math::max);
+            try {
+                return extract(file);
+            } finally {
+                concurrent.decrementAndGet();
+            }
+        }
+
+        private MetaData extract(File file) {
+            extracted.incrementAndGet();
+            if (Thread.currentThread().toString().startsWith("VirtualThread")) {
+                virtualThreads.incrementAndGet();
+            }
+            if (file.getName().endsWith(".txt")) {
+                return null;
+            }
+            if (file.getName().hashCode() % 5 == 0) {
+                try {
+                    Thread.sleep(2);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            int number = Integer.parseInt(file.getName().substring(4, 8));
+            return new PhotoMetaData(LocalDateTime.of(2016, 1, 1, 0, 0).plusMinutes(number), file.getName());
+        }
+
+        @Override
+        public List<MetaData> metadataFromFiles(List<File> files) {
+            if (!inUse.compareAndSet(false, true)) {
+                throw new IllegalStateException("Service used by two workers at once.");
+            }
+            try {
+                List<MetaData> results = new ArrayList<>(files.size());
+                for (File file : files) {
+                    results.add(extract(file));
+                }
+                return results;
+            } finally {
+                inUse.set(false);
+            }
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+}
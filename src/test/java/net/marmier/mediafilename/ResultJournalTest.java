@@ -0,0 +1,77 @@
+package net.marmier.mediafilename;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+public class ResultJournalTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void recordsAreReplayed() throws Exception {
+        Path journalFile = folder.getRoot().toPath().resolve("run.journal");
+        Path jpg = Paths.get("/media/trip/DSC_0001.JPG");
+        Path odd = Paths.get("/media/trip/odd\tname\\with\nbreaks.JPG");
+        Path xmp = Paths.get("/media/trip/DSC_0001.xmp");
+
+        try (ResultJournal journal = ResultJournal.open(journalFile)) {
+            Assert.assertEquals(0, journal.getReplayedCount());
+            journal.record(jpg, new MediaProcessorImpl.ResultImpl(jpg, "trip/2016-01-01_000100utc_tz+0000_DSC_0001.JPG"));
+            journal.record(odd, new MediaProcessorImpl.ResultImpl(odd, "trip/new\tname.JPG"));
+            journal.record(xmp, null);
+            journal.flush();
+        }
+
+        try (ResultJournal journal = ResultJournal.open(journalFile)) {
+            Assert.assertEquals(3, journal.getReplayedCount());
+            Assert.assertEquals("trip/2016-01-01_000100utc_tz+0000_DSC_0001.JPG", journal.getReplayed(jpg).getNewFilename());
+            Assert.assertEquals(odd, journal.getReplayed(odd).getOriginalPath());
+            Assert.assertEquals("trip/new\tname.JPG", journal.getReplayed(odd).getNewFilename());
+            Assert.assertTrue(journal.isReplayed(xmp));
+            Assert.assertNull(journal.getReplayed(xmp));
+            Assert.assertFalse(journal.isReplayed(Paths.get("/media/trip/DSC_0002.JPG")));
+        }
+    }
+
+    @Test
+    public void recordCutShortIsDropped() throws Exception {
+        Path journalFile = folder.getRoot().toPath().resolve("run.journal");
+        Files.write(journalFile, "R\t/media/DSC_0001.JPG\tnew_DSC_0001.JPG\nR\t/media/DSC_00".getBytes(StandardCharsets.UTF_8));
+
+        try (ResultJournal journal = ResultJournal.open(journalFile)) {
+            Assert.assertEquals(1, journal.getReplayedCount());
+            journal.record(Paths.get("/media/DSC_0002.JPG"), null);
+            journal.flush();
+        }
+
+        try (ResultJournal journal = ResultJournal.open(journalFile)) {
+            Assert.assertEquals(2, journal.getReplayedCount());
+            Assert.assertTrue(journal.isReplayed(Paths.get("/media/DSC_0002.JPG")));
+        }
+    }
+
+    @Test
+    public void recordsAreWrittenOnFlush() throws Exception {
+        Path journalFile = folder.getRoot().toPath().resolve("run.journal");
+        try (ResultJournal journal = ResultJournal.open(journalFile)) {
+            journal.record(Paths.get("/media/DSC_0001.JPG"), null);
+            Assert.assertEquals(0, Files.size(journalFile));
+            journal.flush();
+            Assert.assertEquals("U\t/media/DSC_0001.JPG\n", new String(Files.readAllBytes(journalFile), StandardCharsets.UTF_8));
+        }
+        Files.write(journalFile, "garbage\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        try (ResultJournal journal = ResultJournal.open(journalFile)) {
+            Assert.assertEquals(1, journal.getReplayedCount());
+        }
+    }
+}
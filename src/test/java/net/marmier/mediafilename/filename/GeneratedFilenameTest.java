@@ -0,0 +1,44 @@
+package net.marmier.mediafilename.filename;
+
+import net.marmier.mediafilename.metadata.PhotoMetaData;
+import net.marmier.mediafilename.timezone.Offset;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.time.LocalDateTime;
+
+public class GeneratedFilenameTest {
+
+    @Test
+    public void generatedFilenameIsReadBack() {
+        LocalDateTime capture = LocalDateTime.of(2015, 12, 3, 8, 49, 4);
+        for (Offset offset : Offset.values()) {
+            String filename = new FilenameGenerator(offset).createUtcTimeZoneFilename(new PhotoMetaData(capture, "DSC_5926.JPG"));
+
+            GeneratedFilename generated = GeneratedFilename.parse(filename);
+
+            Assert.assertNotNull(filename, generated);
+            Assert.assertEquals(offset, generated.getOffset());
+            Assert.assertEquals(capture, generated.getCaptureDateTime());
+            Assert.assertEquals(offset.reverse(capture), generated.getUtcDateTime());
+            Assert.assertEquals("DSC_5926.JPG", generated.getOriginalFilename());
+        }
+    }
+
+    @Test
+    public void otherFilenamesAreNotRead() {
+        Assert.assertNull(GeneratedFilename.parse("DSC_5926.JPG"));
+        Assert.assertNull(GeneratedFilename.parse("2015-12-03_074904utc_tz+0100_"));
+        Assert.assertNull(GeneratedFilename.parse("2015-12-03_074904_tz+0100_DSC_5926.JPG"));
+        // No such date or offset
+        Assert.assertNull(GeneratedFilename.parse("2015-13-03_074904utc_tz+0100_DSC_5926.JPG"));
+        Assert.assertNull(GeneratedFilename.parse("2015-12-03_074904utc_tz+0115_DSC_5926.JPG"));
+    }
+
+    @Test
+    public void filenameGeneratedTwiceIsReadOnce() {
+        GeneratedFilename generated = GeneratedFilename.parse("2015-12-03_074904utc_tz+0100_2015-12-03_074904utc_tz+0100_DSC_5926.JPG");
+
+        Assert.assertEquals("2015-12-03_074904utc_tz+0100_DSC_5926.JPG", generated.getOriginalFilename());
+    }
+}
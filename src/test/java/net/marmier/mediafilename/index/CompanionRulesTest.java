@@ -0,0 +1,55 @@
+package net.marmier.mediafilename.index;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+public class CompanionRulesTest {
+
+    private final CompanionRules rules = CompanionRules.parse(Arrays.asList(
+        "# Comment",
+        "",
+        "extension nef JPG",
+        "suffix \" (Edited)\"",
+        "suffix -edited",
+        "suffix -2-edited",
+        "prefix IMG_E IMG_",
+        "prefix IMG_EX IMG_X"));
+
+    @Test
+    public void masterRoot() {
+        Assert.assertEquals("DSC_0001", rules.masterRoot("DSC_0001"));
+        Assert.assertEquals("DSC_0001", rules.masterRoot("DSC_0001.NEF"));
+        Assert.assertEquals("DSC_0001", rules.masterRoot("DSC_0001.jpg"));
+        Assert.assertEquals("IMG.1234", rules.masterRoot("IMG.1234"));
+        Assert.assertEquals("IMG_0001", rules.masterRoot("IMG_0001 (Edited)"));
+        Assert.assertEquals("IMG_0001", rules.masterRoot("IMG_E0001"));
+        Assert.assertEquals("IMG_0001", rules.masterRoot("IMG_E0001.JPG"));
+        Assert.assertEquals("IMG_0001 (edited)", rules.masterRoot("IMG_0001 (edited)"));
+    }
+
+    @Test
+    public void longestRuleWins() {
+        Assert.assertEquals("DSC", rules.masterRoot("DSC-2-edited"));
+        Assert.assertEquals("IMG_X01", rules.masterRoot("IMG_EX01"));
+        // A rule does not leave an empty root
+        Assert.assertEquals("-edited", rules.masterRoot("-edited"));
+        Assert.assertEquals("IMG_E", rules.masterRoot("IMG_E"));
+    }
+
+    @Test
+    public void defaultRules() {
+        CompanionRules defaults = CompanionRules.defaults();
+        Assert.assertEquals("DSC_0001", defaults.masterRoot("DSC_0001.NEF"));
+        Assert.assertEquals("IMG_0001", defaults.masterRoot("IMG_0001 (Edited)"));
+        Assert.assertEquals("IMG_0001", defaults.masterRoot("IMG_E0001"));
+        Assert.assertEquals("DSC_0001", CompanionRules.NONE.masterRoot("DSC_0001"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidRule() {
+        CompanionRules.parse(Collections.singletonList("prefix IMG_E"));
+    }
+}
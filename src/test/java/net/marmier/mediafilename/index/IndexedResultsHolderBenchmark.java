@@ -0,0 +1,106 @@
+package net.marmier.mediafilename.index;
+
+import net.marmier.mediafilename.MediaProcessor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to index a million results, and to match a million companion files to them, with the names of a large
+ * import: camera counters wrap after 9999 and restart on each card, so each filename root is found in many folders.
+ * The companion files named after the whole master filename are matched with the default companion rules, along
+ * with a number of extra rules, to show their cost does not grow with the rules.
+ * <p>
+ * Run from the project directory after <code>mvn test-compile</code>, with the test classpath.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgs = "-Xmx4g")
+@State(Scope.Benchmark)
+public class IndexedResultsHolderBenchmark {
+
+    private static final int RESULTS = 1_000_000;
+
+    // Files per camera folder, as in 100NIKON, 101NIKON...
+    private static final int FILES_PER_FOLDER = 2000;
+
+    private List<MediaProcessor.Result> results;
+
+    private List<Path> companions;
+
+    private List<Path> ruleCompanions;
+
+    private IndexedResultsHolder holder;
+
+    @Param({"0", "1000"})
+    public int extraRules;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        results = new ArrayList<>(RESULTS);
+        companions = new ArrayList<>(RESULTS);
+        ruleCompanions = new ArrayList<>(RESULTS);
+        for (int i = 0; i < RESULTS; i++) {
+            int folder = i / FILES_PER_FOLDER;
+            String directory = String.format("/import/card%02d/DCIM/%03dNIKON", folder / 10, 100 + folder % 10);
+            String root = String.format("DSC_%04d", i % 10000);
+            Path original = Paths.get(directory, root + ".NEF");
+            results.add(new IndexedResultsHolderTest.MockResult(original, "new_" + i + ".NEF", "new_" + i));
+            companions.add(Paths.get(directory, root + ".xmp"));
+            ruleCompanions.add(Paths.get(directory, root + ".NEF.xmp"));
+        }
+        List<String> rules = new ArrayList<>();
+        rules.add("extension jpg nef cr2 arw dng");
+        rules.add("suffix \" (Edited)\"");
+        rules.add("prefix IMG_E IMG_");
+        for (int i = 0; i < extraRules; i++) {
+            rules.add(String.format("suffix -variant%d", i));
+            rules.add(String.format("prefix DSC%d_ DSC_", i));
+        }
+        holder = new IndexedResultsHolder(results, CompanionRules.parse(rules));
+    }
+
+    @Benchmark
+    public IndexedResultsHolder index() {
+        return new IndexedResultsHolder(results);
+    }
+
+    @Benchmark
+    public void matchCompanions(Blackhole blackhole) {
+        for (Path companion : companions) {
+            blackhole.consume(holder.getResultMatchingRoot(companion));
+        }
+    }
+
+    @Benchmark
+    public void matchRuleCompanions(Blackhole blackhole) {
+        for (Path companion : ruleCompanions) {
+            blackhole.consume(holder.getResultMatchingRoot(companion));
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(IndexedResultsHolderBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -7,7 +7,9 @@ import org.junit.Test;
 
 import java.io.File;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -29,6 +31,64 @@ public class IndexedResultsHolderTest {
         Assert.assertSame(MOCK_RESULTS.get(0), resultMatchingPath);
     }
 
+    @Test
+    public void getResultMatchingPathAmongFilesOfTheSameRoot() {
+        MockResult jpg = new MockResult(new File("/import/DSC_0001.JPG").toPath(), "a.JPG", "a");
+        MockResult nef = new MockResult(new File("/import/DSC_0001.NEF").toPath(), "a.NEF", "a");
+        MockResult xmp = new MockResult(new File("/import/DSC_0001.xmp").toPath(), "a.xmp", "a");
+        IndexedResultsHolder holder = new IndexedResultsHolder(Arrays.asList(jpg, nef, xmp));
+
+        Assert.assertSame(jpg, holder.getResultMatchingPath(jpg.originalPath));
+        Assert.assertSame(nef, holder.getResultMatchingPath(nef.originalPath));
+        Assert.assertSame(xmp, holder.getResultMatchingPath(xmp.originalPath));
+        Assert.assertNull(holder.getResultMatchingPath(new File("/import/DSC_0001.AAE").toPath()));
+        Assert.assertNull(holder.getResultMatchingPath(new File("/other/DSC_0001.JPG").toPath()));
+    }
+
+    @Test
+    public void removedAndReplacedResultsAreNotMatched() {
+        MockResult first = new MockResult(new File("/ingest/100NIKON/DSC_0001.NEF").toPath(), "2015_DSC_0001.NEF", "2015_DSC_0001");
+        MockResult second = new MockResult(new File("/ingest/100NIKON/DSC_0001.NEF").toPath(), "2016_DSC_0001.NEF", "2016_DSC_0001");
+        MockResult other = new MockResult(new File("/ingest/100NIKON/DSC_0002.NEF").toPath(), "2015_DSC_0002.NEF", "2015_DSC_0002");
+        Path xmp = new File("/ingest/100NIKON/DSC_0001.xmp").toPath();
+        IndexedResultsHolder holder = new IndexedResultsHolder(Arrays.asList(first, other));
+
+        Assert.assertEquals(Collections.singletonList(first), holder.replaceResult(second));
+        Assert.assertSame(second, holder.getResultMatchingRoot(xmp));
+
+        Assert.assertTrue(holder.removeResult(second.originalPath));
+        Assert.assertFalse(holder.removeResult(second.originalPath));
+        Assert.assertNull(holder.getResultMatchingRoot(xmp));
+        Assert.assertNull(holder.getResultMatchingPath(second.originalPath));
+        Assert.assertSame(other, holder.getResultMatchingRoot(new File("/ingest/100NIKON/DSC_0002.xmp").toPath()));
+        Assert.assertEquals(Collections.singletonList(other), holder.getResults());
+    }
+
+    @Test
+    public void removingResultsKeepsTheOthersFound() {
+        // Roots of several directories in the root index, two in three removed, so it is compacted on the way
+        List<MediaProcessor.Result> results = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            results.add(new MockResult(new File(String.format("/import/%02d/DSC_%04d.NEF", i % 7, i)).toPath(), "new_" + i + ".NEF", "new_" + i));
+        }
+        IndexedResultsHolder holder = new IndexedResultsHolder(results);
+        for (int i = 0; i < results.size(); i++) {
+            if (i % 3 != 0) {
+                Assert.assertTrue(holder.removeResult(results.get(i).getOriginalPath()));
+            }
+        }
+        for (int i = 0; i < results.size(); i++) {
+            Path xmp = new File(String.format("/import/%02d/DSC_%04d.xmp", i % 7, i)).toPath();
+            MediaProcessor.Result found = holder.getResultMatchingRoot(xmp);
+            if (i % 3 != 0) {
+                Assert.assertNull(found);
+            } else {
+                Assert.assertEquals("new_" + i, found.getNewFilenameRoot());
+            }
+        }
+        Assert.assertEquals(667, holder.getResults().size());
+    }
+
     @Test
     public void getResultMatchingRoot() {
         MediaProcessor.Result resultMatchingPath = holder.getResultMatchingRoot(MOCK_RESULTS.get(0).getOriginalPath());
@@ -44,6 +104,118 @@ public class IndexedResultsHolderTest {
         Assert.assertEquals(newMock.newFilenameRoot, holder.getResultMatchingPath(newMock.originalPath).getNewFilenameRoot());
     }
 
+    @Test
+    public void getResultMatchingRootInSameDirectoryOnly() {
+        MockResult card1 = new MockResult(new File("/import/card1/DSC_0001.NEF").toPath(), "card1/a.NEF", "card1/a");
+        MockResult card2 = new MockResult(new File("/import/card2/DSC_0001.NEF").toPath(), "card2/b.NEF", "card2/b");
+        IndexedResultsHolder cards = new IndexedResultsHolder(Arrays.asList(card1, card2));
+
+        Assert.assertSame(card1, cards.getResultMatchingRoot(new File("/import/card1/DSC_0001.xmp").toPath()));
+        Assert.assertSame(card2, cards.getResultMatchingRoot(new File("/import/card2/DSC_0001.xmp").toPath()));
+        Assert.assertNull(cards.getResultMatchingRoot(new File("/import/card3/DSC_0001.xmp").toPath()));
+        Assert.assertNull(cards.getResultMatchingRoot(new File("/import/card1/DSC_0002.xmp").toPath()));
+    }
+
+    @Test
+    public void getResultMatchingRootWithDots() {
+        MockResult dotted = new MockResult(new File("/import/IMG.1234.JPG").toPath(), "a.JPG", "a");
+        MockResult hidden = new MockResult(new File("/import/.hidden").toPath(), "b", "b");
+        IndexedResultsHolder holder = new IndexedResultsHolder(Arrays.asList(dotted, hidden));
+
+        Assert.assertSame(dotted, holder.getResultMatchingRoot(new File("/import/IMG.1234.xmp").toPath()));
+        Assert.assertNull(holder.getResultMatchingRoot(new File("/import/IMG.xmp").toPath()));
+        Assert.assertSame(hidden, holder.getResultMatchingRoot(new File("/import/.hidden.xmp").toPath()));
+    }
+
+    @Test
+    public void waitingCompanionsAndGroups() {
+        Path xmp = new File("/import/card1/DSC_0001.xmp").toPath();
+        Path aae = new File("/import/card1/DSC_0001.AAE").toPath();
+        Path other = new File("/import/card2/DSC_0001.xmp").toPath();
+        IndexedResultsHolder holder = new IndexedResultsHolder(Collections.emptyList());
+        holder.addWaitingCompanion(xmp);
+        holder.addWaitingCompanion(other);
+        holder.addWaitingCompanion(aae);
+
+        Assert.assertEquals(Arrays.asList(xmp, aae), holder.takeWaitingCompanions(new File("/import/card1/DSC_0001.JPG").toPath()));
+        Assert.assertTrue(holder.takeWaitingCompanions(new File("/import/card1/DSC_0001.JPG").toPath()).isEmpty());
+        Assert.assertEquals(Collections.singletonList(other), holder.getWaitingCompanions());
+
+        // Waiting again once taken, and kept without root
+        Path later = new File("/import/card1/DSC_0001.dop").toPath();
+        Path hidden = new File("/import/card1/DSC..0001").toPath();
+        Assert.assertTrue(holder.addWaitingCompanion(later));
+        Assert.assertFalse(holder.addWaitingCompanion(hidden));
+        Assert.assertEquals(Arrays.asList(other, later, hidden), holder.getWaitingCompanions());
+        Assert.assertEquals(Collections.singletonList(later), holder.takeWaitingCompanions(new File("/import/card1/DSC_0001.NEF").toPath()));
+        Assert.assertEquals(Arrays.asList(other, hidden), holder.getWaitingCompanions());
+
+        Path jpg = new File("/import/card1/DSC_0001.JPG").toPath();
+        Assert.assertEquals("[[/import/card1/DSC_0001.xmp, /import/card1/DSC_0001.JPG], [/import/card2/DSC_0001.xmp]]",
+            IndexedResultsHolder.groupByRoot(Arrays.asList(xmp, other, jpg)).toString());
+    }
+
+    @Test
+    public void removedWaitingCompanionsAreNotTaken() {
+        Path xmp = new File("/import/DSC_0001.xmp").toPath();
+        Path aae = new File("/import/DSC_0001.AAE").toPath();
+        Path dop = new File("/import/DSC_0001.dop").toPath();
+        Path broken = new File("/import/DSC..0001").toPath();
+        IndexedResultsHolder holder = new IndexedResultsHolder(Collections.emptyList());
+        holder.addWaitingCompanion(xmp);
+        holder.addWaitingCompanion(aae);
+        holder.addWaitingCompanion(dop);
+        holder.addWaitingCompanion(broken);
+
+        Assert.assertTrue(holder.removeWaitingCompanion(xmp));
+        Assert.assertTrue(holder.removeWaitingCompanion(dop));
+        Assert.assertTrue(holder.removeWaitingCompanion(broken));
+        Assert.assertFalse(holder.removeWaitingCompanion(xmp));
+        Assert.assertEquals(Collections.singletonList(aae), holder.takeWaitingCompanions(new File("/import/DSC_0001.JPG").toPath()));
+
+        // None left, so they start over
+        Assert.assertTrue(holder.getWaitingCompanions().isEmpty());
+        Assert.assertFalse(holder.removeWaitingCompanion(aae));
+        holder.addWaitingCompanion(xmp);
+        Assert.assertEquals(Collections.singletonList(xmp), holder.takeWaitingCompanions(new File("/import/DSC_0001.NEF").toPath()));
+    }
+
+    @Test
+    public void getResultMatchingRootWithRules() {
+        MockResult nef = new MockResult(new File("/import/DSC_0001.NEF").toPath(), "a.NEF", "a");
+        MockResult heic = new MockResult(new File("/import/IMG_0001.HEIC").toPath(), "b.HEIC", "b");
+        CompanionRules rules = CompanionRules.parse(Arrays.asList("extension nef", "suffix \" (Edited)\"", "prefix IMG_E IMG_"));
+        IndexedResultsHolder holder = new IndexedResultsHolder(Arrays.asList(nef, heic), rules);
+
+        Assert.assertSame(nef, holder.getResultMatchingRoot(new File("/import/DSC_0001.NEF.xmp").toPath()));
+        Assert.assertSame(heic, holder.getResultMatchingRoot(new File("/import/IMG_0001 (Edited).jpg").toPath()));
+        Assert.assertSame(heic, holder.getResultMatchingRoot(new File("/import/IMG_E0001.JPG").toPath()));
+        Assert.assertNull(new IndexedResultsHolder(Arrays.asList(nef, heic), CompanionRules.NONE)
+            .getResultMatchingRoot(new File("/import/IMG_E0001.JPG").toPath()));
+
+        // Waiting for the master file given by the rules
+        IndexedResultsHolder waiting = new IndexedResultsHolder(Collections.emptyList(), rules);
+        Path edited = new File("/import/IMG_E0002.JPG").toPath();
+        waiting.addWaitingCompanion(edited);
+        Assert.assertEquals(Collections.singletonList(edited), waiting.takeWaitingCompanions(new File("/import/IMG_0002.HEIC").toPath()));
+    }
+
+    @Test
+    public void getResultMatchingRootWithWrappingCounters() {
+        // Counters wrap after 9999, so each root is found in several folders
+        List<MediaProcessor.Result> results = new ArrayList<>();
+        for (int i = 0; i < 30000; i++) {
+            Path original = new File(String.format("/import/%03dNIKON/DSC_%04d.NEF", i / 700, i % 10000)).toPath();
+            results.add(new MockResult(original, "new_" + i + ".NEF", "new_" + i));
+        }
+        IndexedResultsHolder wrapping = new IndexedResultsHolder(results);
+
+        for (MediaProcessor.Result result : results) {
+            String companion = result.getOriginalPath().toString().replace(".NEF", ".xmp");
+            Assert.assertSame(result, wrapping.getResultMatchingRoot(new File(companion).toPath()));
+        }
+    }
+
     static class MockResult implements MediaProcessor.Result {
         private final Path originalPath;
         private final String newFilename;
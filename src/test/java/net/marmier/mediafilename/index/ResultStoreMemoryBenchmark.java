@@ -0,0 +1,95 @@
+package net.marmier.mediafilename.index;
+
+import net.marmier.mediafilename.MediaProcessor;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Heap retained by the results of a large import, with the names of the files of cameras: held as objects and
+ * indexed by path and by directory and root, as before the {@link ResultStore}, and held by an
+ * {@link IndexedResultsHolder}. The number of results is the first argument, a million by default.
+ * <p>
+ * Run from the project directory after <code>mvn test-compile</code>, with the test classpath and a heap large
+ * enough for the objects, as in <code>-Xmx4g</code>.
+ */
+public class ResultStoreMemoryBenchmark {
+
+    // Files per camera folder, as in 100NIKON, 101NIKON...
+    private static final int FILES_PER_FOLDER = 2000;
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+
+        // Both kept reachable, each measured as the growth of the heap it causes
+        long start = usedHeap();
+        IndexedResultsHolder holder = new IndexedResultsHolder(new ArrayList<>(), CompanionRules.NONE);
+        for (int i = 0; i < count; i++) {
+            holder.addResult(result(i));
+        }
+        long afterHolder = usedHeap();
+
+        List<MediaProcessor.Result> results = new ArrayList<>();
+        Map<String, MediaProcessor.Result> byPath = new LinkedHashMap<>();
+        Map<Map.Entry<Path, String>, MediaProcessor.Result> byRoot = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            MediaProcessor.Result result = result(i);
+            results.add(result);
+            byPath.putIfAbsent(result.getOriginalPath().toString(), result);
+            String filename = result.getOriginalPath().getFileName().toString();
+            byRoot.putIfAbsent(new AbstractMap.SimpleImmutableEntry<>(result.getOriginalPath().getParent(),
+                filename.substring(0, filename.lastIndexOf('.'))), result);
+        }
+        long afterObjects = usedHeap();
+
+        long packed = afterHolder - start;
+        long objects = afterObjects - afterHolder;
+        if (holder.getResults().size() + results.size() + byPath.size() + byRoot.size() == 0) {
+            throw new IllegalStateException("No results");
+        }
+
+        System.out.printf("%d results%n", count);
+        System.out.printf("Objects and maps:      %,d bytes, %d per result%n", objects, objects / count);
+        System.out.printf("IndexedResultsHolder:  %,d bytes, %d per result%n", packed, packed / count);
+        System.out.printf("Ten million results:   %,d MB instead of %,d MB%n", packed * 10_000_000 / count >> 20,
+            objects * 10_000_000 / count >> 20);
+    }
+
+    private static MediaProcessor.Result result(int i) {
+        int folder = i / FILES_PER_FOLDER;
+        String directory = String.format("import/card%03d/DCIM/%03dNIKON", folder / 10, 100 + folder % 10);
+        String filename = String.format("DSC_%04d.NEF", i % 10000);
+        String newFilename = String.format("%s/2015-12-03_%02d%02d%02dutc_tz+0100_%s", directory, i / 3600 % 24, i / 60 % 60, i % 60, filename);
+        Path original = Paths.get("/media", directory, filename);
+        return new MediaProcessor.Result() {
+            @Override
+            public Path getOriginalPath() {
+                return original;
+            }
+
+            @Override
+            public String getNewFilename() {
+                return newFilename;
+            }
+
+            @Override
+            public String getNewFilenameRoot() {
+                return newFilename.substring(0, newFilename.lastIndexOf('.'));
+            }
+        };
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
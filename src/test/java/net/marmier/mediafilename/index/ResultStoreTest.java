@@ -0,0 +1,66 @@
+package net.marmier.mediafilename.index;
+
+import net.marmier.mediafilename.MediaProcessor;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+public class ResultStoreTest {
+
+    @Test
+    public void generatedFilenamesAreRebuilt() {
+        ResultStore store = new ResultStore();
+        List<MediaProcessor.Result> added = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            Path original = new File(String.format("/import/%03dNIKON/DSC_%04d.NEF", i / 300, i)).toPath();
+            String newFilename = String.format("import/%03dNIKON/2015-12-03_07%02d%02dutc_tz+0100_DSC_%04d.NEF", i / 300, i / 60 % 60, i % 60, i);
+            MediaProcessor.Result result = new IndexedResultsHolderTest.MockResult(original, newFilename, newFilename.replace(".NEF", ""));
+            added.add(result);
+            store.add(result);
+        }
+
+        Assert.assertEquals(1000, store.size());
+        for (int i = 0; i < added.size(); i++) {
+            MediaProcessor.Result stored = store.get(i);
+            Assert.assertNotSame(added.get(i), stored);
+            Assert.assertEquals(added.get(i).getOriginalPath(), stored.getOriginalPath());
+            Assert.assertEquals(added.get(i).getNewFilename(), stored.getNewFilename());
+            Assert.assertEquals(added.get(i).getNewFilenameRoot(), stored.getNewFilenameRoot());
+        }
+    }
+
+    @Test
+    public void otherFilenamesAreKeptAsGiven() {
+        ResultStore store = new ResultStore();
+        MediaProcessor.Result packed = new IndexedResultsHolderTest.MockResult(new File("/import/IMG 1 (Edited).jpg").toPath(),
+            "import/2015-12-03_074904utc_tz-0300_IMG 1 (Edited).jpg", "import/2015-12-03_074904utc_tz-0300_IMG 1 (Edited)");
+        MediaProcessor.Result other = new IndexedResultsHolderTest.MockResult(new File("/import/DSC_0001.JPG").toPath(),
+            "import/new_DSC_0001.JPG", "import/new_DSC_0001");
+        // Not the directory of the new filenames of its directory
+        MediaProcessor.Result moved = new IndexedResultsHolderTest.MockResult(new File("/import/DSC_0002.JPG").toPath(),
+            "elsewhere/2015-12-03_074904utc_tz+0100_DSC_0002.JPG", "elsewhere/2015-12-03_074904utc_tz+0100_DSC_0002");
+        // Not named after the original file
+        MediaProcessor.Result renamed = new IndexedResultsHolderTest.MockResult(new File("/import/DSC_0003.JPG").toPath(),
+            "import/2015-12-03_074904utc_tz+0100_DSC_9999.JPG", "import/2015-12-03_074904utc_tz+0100_DSC_9999");
+        store.add(packed);
+        store.add(other);
+        store.add(moved);
+        store.add(renamed);
+
+        Assert.assertNotSame(packed, store.get(0));
+        Assert.assertEquals(packed.getOriginalPath(), store.get(0).getOriginalPath());
+        Assert.assertEquals(packed.getNewFilename(), store.get(0).getNewFilename());
+        Assert.assertSame(other, store.get(1));
+        Assert.assertSame(moved, store.get(2));
+        Assert.assertSame(renamed, store.get(3));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void indexOutOfBounds() {
+        new ResultStore().get(0);
+    }
+}
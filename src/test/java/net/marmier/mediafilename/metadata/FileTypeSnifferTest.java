@@ -0,0 +1,61 @@
+package net.marmier.mediafilename.metadata;
+
+import net.marmier.mediafilename.metadata.jpeg.JpegSamples;
+import net.marmier.mediafilename.metadata.quicktime.QuickTimeSamples;
+import net.marmier.mediafilename.metadata.tiff.TiffSamples;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+
+public class FileTypeSnifferTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final FileTypeSniffer sniffer = new FileTypeSniffer();
+
+    @Test
+    public void sniffsPictures() {
+        Assert.assertEquals(FileType.JPEG, sniff(JpegSamples.jpeg(null)));
+        Assert.assertEquals(FileType.TIFF, sniff(TiffSamples.withoutExif(ByteOrder.LITTLE_ENDIAN)));
+        Assert.assertEquals(FileType.TIFF, sniff(TiffSamples.withoutExif(ByteOrder.BIG_ENDIAN)));
+        Assert.assertEquals(FileType.PNG, sniff(new byte[] { (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n' }));
+        Assert.assertEquals(FileType.HEIF, sniff(fileType("heic")));
+    }
+
+    @Test
+    public void sniffsMovies() throws Exception {
+        Assert.assertEquals(FileType.QUICKTIME, sniff(QuickTimeSamples.movie(LocalDateTime.of(2016, 7, 7, 21, 20, 55), null, null, null, 10)));
+        Assert.assertEquals(FileType.MP4, sniff(fileType("isom")));
+        Assert.assertEquals(FileType.QUICKTIME, sniffer.sniff(Paths.get("src/test/resources/nikon/DSCN7778.MOV")));
+        Assert.assertEquals(FileType.QUICKTIME, sniffer.sniff(Paths.get("src/test/resources/apple/qt_samples/sample_iTunes.mov")));
+        Assert.assertEquals(FileType.MP4, sniffer.sniff(Paths.get("src/test/resources/apple/qt_samples/sample_iPod.m4v")));
+    }
+
+    @Test
+    public void unrecognizedContentIsUnknown() throws Exception {
+        Assert.assertEquals(FileType.UNKNOWN, sniff("Some notes".getBytes(StandardCharsets.US_ASCII)));
+        Assert.assertEquals(FileType.UNKNOWN, sniff(new byte[] { (byte) 0xff, (byte) 0xd8 }));
+        Assert.assertEquals(FileType.UNKNOWN, sniffer.sniff(Paths.get("src/test/resources/apple/qt_samples/sample_mpeg2.m2v")));
+
+        Path empty = folder.newFile("empty.JPG").toPath();
+        Assert.assertEquals(FileType.UNKNOWN, sniffer.sniff(empty));
+    }
+
+    private FileType sniff(byte[] content) {
+        return sniffer.sniff(ByteBuffer.wrap(content));
+    }
+
+    private static byte[] fileType(String brand) {
+        return ByteBuffer.allocate(24).putInt(24).put("ftyp".getBytes(StandardCharsets.US_ASCII))
+            .put(brand.getBytes(StandardCharsets.US_ASCII)).array();
+    }
+}
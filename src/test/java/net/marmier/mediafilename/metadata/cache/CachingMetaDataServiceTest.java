@@ -0,0 +1,83 @@
+package net.marmier.mediafilename.metadata.cache;
+
+import net.marmier.mediafilename.metadata.MetaData;
+import net.marmier.mediafilename.metadata.MetaDataService;
+import net.marmier.mediafilename.metadata.PhotoMetaData;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class CachingMetaDataServiceTest {
+
+    private static final LocalDateTime CAPTURE = LocalDateTime.of(2015, 12, 3, 8, 49, 4);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void cachedFilesAreNotExtractedAgain() throws Exception {
+        List<File> files = Arrays.asList(folder.newFile("DSC_0001.JPG"), folder.newFile("DSC_0002.xmp"), folder.newFile("DSC_0003.JPG"));
+        for (File file : files) {
+            // Distinct contents, so the files are not taken for one another
+            Files.write(file.toPath(), file.getName().getBytes("UTF-8"));
+        }
+        MetaDataCache cache = MetaDataCache.open(folder.getRoot().toPath().resolve("metadata.cache"));
+        RecordingMetaDataService delegate = new RecordingMetaDataService();
+        CachingMetaDataService service = new CachingMetaDataService(delegate, cache);
+
+        List<MetaData> first = service.metadataFromFiles(files);
+        List<MetaData> second = service.metadataFromFiles(files);
+
+        // The file without metadata is requested again, the others come from the cache
+        Assert.assertEquals(Arrays.asList("DSC_0001.JPG", "DSC_0002.xmp", "DSC_0003.JPG", "DSC_0002.xmp"), delegate.requested);
+        Assert.assertEquals(names(first), names(second));
+        Assert.assertEquals(CAPTURE, second.get(0).getCaptureDateTime());
+        Assert.assertNull(second.get(1));
+        Assert.assertEquals(2, cache.getHits());
+
+        Assert.assertEquals(CAPTURE, service.metadataFromFile(files.get(2)).getCaptureDateTime());
+        Assert.assertEquals(4, delegate.requested.size());
+
+        service.close();
+        Assert.assertTrue(delegate.closed);
+    }
+
+    private static List<String> names(List<MetaData> metaData) {
+        return metaData.stream().map(meta -> meta == null ? null : meta.getFileName()).collect(Collectors.toList());
+    }
+
+    /**
+     * Gives metadata to the JPG files only, recording the files requested.
+     */
+    private static class RecordingMetaDataService implements MetaDataService {
+
+        final List<String> requested = new ArrayList<>();
+
+        boolean closed;
+
+        @Override
+        public MetaData metadataFromFile(File file) {
+            requested.add(file.getName());
+            return file.getName().endsWith(".JPG") ? new PhotoMetaData(CAPTURE, file.getName()) : null;
+        }
+
+        @Override
+        public List<MetaData> metadataFromFiles(List<File> files) {
+            return files.stream().map(this::metadataFromFile).collect(Collectors.toList());
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+}
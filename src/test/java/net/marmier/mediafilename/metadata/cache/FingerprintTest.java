@@ -0,0 +1,67 @@
+package net.marmier.mediafilename.metadata.cache;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class FingerprintTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void sameContentGivesSameFingerprint() throws Exception {
+        byte[] content = content(3 * Fingerprint.SAMPLE_SIZE);
+        Path first = write("first.JPG", content);
+        Path second = write("second.JPG", content);
+
+        Assert.assertEquals(Fingerprint.of(first), Fingerprint.of(second));
+    }
+
+    @Test
+    public void headTailAndSizeAreSampled() throws Exception {
+        byte[] content = content(3 * Fingerprint.SAMPLE_SIZE);
+        String fingerprint = Fingerprint.of(write("original.JPG", content));
+
+        byte[] head = content.clone();
+        head[10]++;
+        byte[] tail = content.clone();
+        tail[tail.length - 1]++;
+        byte[] longer = new byte[content.length + 1];
+        System.arraycopy(content, 0, longer, 0, content.length);
+
+        Assert.assertNotEquals(fingerprint, Fingerprint.of(write("head.JPG", head)));
+        Assert.assertNotEquals(fingerprint, Fingerprint.of(write("tail.JPG", tail)));
+        Assert.assertNotEquals(fingerprint, Fingerprint.of(write("longer.JPG", longer)));
+    }
+
+    @Test
+    public void middleIsNotRead() throws Exception {
+        byte[] content = content(3 * Fingerprint.SAMPLE_SIZE);
+        byte[] middle = content.clone();
+        middle[content.length / 2]++;
+
+        Assert.assertEquals(Fingerprint.of(write("original.JPG", content)), Fingerprint.of(write("middle.JPG", middle)));
+    }
+
+    @Test
+    public void smallFilesAreFingerprinted() throws Exception {
+        Assert.assertNotEquals(Fingerprint.of(write("empty.JPG", new byte[0])), Fingerprint.of(write("one.JPG", new byte[]{ 0 })));
+    }
+
+    private Path write(String name, byte[] content) throws Exception {
+        return Files.write(folder.getRoot().toPath().resolve(name), content);
+    }
+
+    private static byte[] content(int size) {
+        byte[] content = new byte[size];
+        for (int i = 0; i < size; i++) {
+            content[i] = (byte) (i * 31);
+        }
+        return content;
+    }
+}
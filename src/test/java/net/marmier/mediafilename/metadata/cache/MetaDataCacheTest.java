@@ -0,0 +1,168 @@
+package net.marmier.mediafilename.metadata.cache;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+public class MetaDataCacheTest {
+
+    private static final LocalDateTime CAPTURE = LocalDateTime.of(2015, 12, 3, 8, 49, 4, 120_000_000);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void entriesSurviveReopening() throws Exception {
+        Path cacheFile = folder.getRoot().toPath().resolve("cache/metadata.cache");
+        Path media = folder.newFile("DSC_5926.JPG").toPath();
+
+        try (MetaDataCache cache = MetaDataCache.open(cacheFile)) {
+            Assert.assertNull(cache.get(media));
+            cache.put(media, CAPTURE);
+        }
+        Assert.assertTrue(Files.exists(cacheFile));
+
+        try (MetaDataCache cache = MetaDataCache.open(cacheFile)) {
+            Assert.assertEquals(CAPTURE, cache.get(media));
+            Assert.assertEquals(1, cache.getHits());
+            Assert.assertEquals(0, cache.getMisses());
+        }
+    }
+
+    @Test
+    public void changedFileIsMissed() throws Exception {
+        File media = folder.newFile("DSC_5926.JPG");
+        MetaDataCache cache = MetaDataCache.open(folder.getRoot().toPath().resolve("metadata.cache"));
+        cache.put(media.toPath(), CAPTURE);
+
+        Files.write(media.toPath(), new byte[]{ 1, 2, 3 });
+        Assert.assertNull(cache.get(media.toPath()));
+
+        Assert.assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void touchedFileIsFoundByContent() throws Exception {
+        File media = folder.newFile("DSC_5926.JPG");
+        MetaDataCache cache = MetaDataCache.open(folder.getRoot().toPath().resolve("metadata.cache"));
+        cache.put(media.toPath(), CAPTURE);
+
+        Files.setLastModifiedTime(media.toPath(), FileTime.fromMillis(media.lastModified() - 60_000));
+
+        Assert.assertEquals(CAPTURE, cache.get(media.toPath()));
+        Assert.assertEquals(1, cache.getFingerprintHits());
+    }
+
+    @Test
+    public void renamedFileIsFoundByContent() throws Exception {
+        Path cacheFile = folder.getRoot().toPath().resolve("metadata.cache");
+        Path media = folder.newFile("DSC_5926.JPG").toPath();
+        Files.write(media, new byte[]{ 1, 2, 3 });
+        Path other = folder.newFile("DSC_5927.JPG").toPath();
+        Files.write(other, new byte[]{ 4, 5, 6 });
+        try (MetaDataCache cache = MetaDataCache.open(cacheFile)) {
+            cache.put(media, CAPTURE);
+            cache.put(other, CAPTURE.plusSeconds(1));
+        }
+
+        Path renamed = Files.move(media, folder.newFolder("archive").toPath().resolve("2015-12-03_074904utc_tz+0100_DSC_5926.JPG"));
+
+        try (MetaDataCache cache = MetaDataCache.open(cacheFile)) {
+            Assert.assertEquals(CAPTURE, cache.get(renamed));
+            Assert.assertEquals(1, cache.getFingerprintHits());
+        }
+        // The entry followed the file
+        try (MetaDataCache cache = MetaDataCache.open(cacheFile)) {
+            Assert.assertEquals(2, cache.size());
+            Assert.assertEquals(CAPTURE, cache.get(renamed));
+            Assert.assertEquals(0, cache.getFingerprintHits());
+        }
+    }
+
+    @Test
+    public void replacedContentIsNotFoundByItsFormerFingerprint() throws Exception {
+        MetaDataCache cache = MetaDataCache.open(folder.getRoot().toPath().resolve("metadata.cache"));
+        Path media = folder.newFile("DSC_5926.JPG").toPath();
+        Files.write(media, new byte[]{ 1, 2, 3 });
+        Path copy = Files.copy(media, folder.getRoot().toPath().resolve("copy.JPG"));
+        cache.put(media, CAPTURE);
+
+        Files.write(media, new byte[]{ 4, 5, 6 });
+        cache.put(media, CAPTURE.plusSeconds(1));
+
+        Assert.assertNull(cache.get(copy));
+    }
+
+    @Test
+    public void invalidateDropsAllEntries() throws Exception {
+        Path cacheFile = folder.getRoot().toPath().resolve("metadata.cache");
+        Path media = folder.newFile("DSC_5926.JPG").toPath();
+        try (MetaDataCache cache = MetaDataCache.open(cacheFile)) {
+            cache.put(media, CAPTURE);
+        }
+
+        try (MetaDataCache cache = MetaDataCache.open(cacheFile)) {
+            cache.invalidate();
+            Assert.assertNull(cache.get(media));
+        }
+        Assert.assertEquals(0, MetaDataCache.open(cacheFile).size());
+    }
+
+    @Test
+    public void putAfterLookupKeepsWhatTheLookupRead() throws Exception {
+        Path media = folder.newFile("DSC_5926.JPG").toPath();
+        Files.write(media, "content".getBytes("UTF-8"));
+        MetaDataCache cache = MetaDataCache.open(folder.getRoot().toPath().resolve("metadata.cache"));
+        MetaDataCache.Lookup lookup = cache.lookup(media);
+        Assert.assertNull(lookup.getCapture());
+
+        // Changed while extracted, so the capture time cached is not taken for the one of the new content
+        Files.write(media, "another content".getBytes("UTF-8"));
+        cache.put(lookup, CAPTURE);
+        Assert.assertEquals(1, cache.size());
+        Assert.assertNull(cache.get(media));
+    }
+
+    @Test
+    public void entriesNotSeenAreDroppedAfterTheRetentionPeriod() throws Exception {
+        Path cacheFile = folder.getRoot().toPath().resolve("metadata.cache");
+        Path seen = folder.newFile("DSC_0001.JPG").toPath();
+        Path deleted = folder.newFile("DSC_0002.JPG").toPath();
+        Files.write(deleted, "deleted".getBytes("UTF-8"));
+        Instant day = Instant.parse("2018-10-01T10:00:00Z");
+        try (MetaDataCache cache = MetaDataCache.open(cacheFile, 30, Clock.fixed(day, ZoneOffset.UTC))) {
+            cache.put(seen, CAPTURE);
+            cache.put(deleted, CAPTURE);
+        }
+        Files.delete(deleted);
+
+        try (MetaDataCache cache = MetaDataCache.open(cacheFile, 30, Clock.fixed(day.plus(Duration.ofDays(20)), ZoneOffset.UTC))) {
+            Assert.assertEquals(CAPTURE, cache.get(seen));
+        }
+        try (MetaDataCache cache = MetaDataCache.open(cacheFile, 30, Clock.fixed(day.plus(Duration.ofDays(40)), ZoneOffset.UTC))) {
+            Assert.assertEquals(2, cache.size());
+            cache.save();
+            Assert.assertEquals(1, cache.size());
+            Assert.assertEquals(CAPTURE, cache.get(seen));
+        }
+    }
+
+    @Test
+    public void unreadableFileGivesEmptyCache() throws Exception {
+        Path cacheFile = folder.newFile("metadata.cache").toPath();
+        Files.write(cacheFile, "not a cache".getBytes("UTF-8"));
+
+        Assert.assertEquals(0, MetaDataCache.open(cacheFile).size());
+    }
+}
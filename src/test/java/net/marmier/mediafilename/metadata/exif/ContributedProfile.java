@@ -0,0 +1,24 @@
+package net.marmier.mediafilename.metadata.exif;
+
+import com.thebuzzmedia.exiftool.Tag;
+import net.marmier.mediafilename.metadata.FileType;
+import net.marmier.mediafilename.metadata.MetaData;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Profile contributed through the service loader, for tests.
+ */
+public class ContributedProfile extends AbstractExifProfile {
+
+    public ContributedProfile() {
+        super(FileType.UNKNOWN, Collections.singletonList("contributed"));
+    }
+
+    @Override
+    public MetaData fromTags(File file, Map<Tag, String> values) {
+        return null;
+    }
+}
@@ -0,0 +1,83 @@
+package net.marmier.mediafilename.metadata.exif;
+
+import com.thebuzzmedia.exiftool.ExifTool;
+import com.thebuzzmedia.exiftool.ExifToolBuilder;
+import com.thebuzzmedia.exiftool.Tag;
+import com.thebuzzmedia.exiftool.core.StandardTag;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-file overhead of reading one tag with a new Exiftool instance for each file, as the service
+ * used to do, compared to a pooled stay-open instance. Runs against the stand-in exiftool script, so
+ * it measures process handling only, not the real tool's parsing.
+ * <p>
+ * Run from the project directory after <code>mvn test-compile</code>, with the test classpath.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ExifToolPoolBenchmark {
+
+    private static final File FILE = new File("src/test/resources/util/finder/testfile10.txt");
+
+    private static final List<Tag> TAGS = Collections.singletonList(StandardTag.DATE_TIME_ORIGINAL);
+
+    private ExifToolPool pool;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        pool = new ExifToolPool(1, ExifToolPoolBenchmark::stayOpenTool);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.close();
+    }
+
+    @Benchmark
+    public Map<Tag, String> newInstancePerFile() throws Exception {
+        ExifTool tool = new ExifToolBuilder().withPath(ExifToolPoolTest.STANDIN_EXIFTOOL).build();
+        try {
+            return tool.getImageMeta(FILE, TAGS);
+        } finally {
+            tool.close();
+        }
+    }
+
+    @Benchmark
+    public Map<Tag, String> pooledStayOpenInstance() throws ExiftoolMetaDataServiceException, IOException {
+        return pool.apply(tool -> tool.getImageMeta(FILE, TAGS));
+    }
+
+    private static PooledExifTool stayOpenTool() {
+        return new PooledExifTool(ExifToolPoolTest.STANDIN_EXIFTOOL);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(ExifToolPoolBenchmark.class.getSimpleName()).build()).run();
+    }
+}
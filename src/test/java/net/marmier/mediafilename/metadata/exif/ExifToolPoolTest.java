@@ -0,0 +1,115 @@
+package net.marmier.mediafilename.metadata.exif;
+
+import com.thebuzzmedia.exiftool.Tag;
+import com.thebuzzmedia.exiftool.core.StandardTag;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Map;
+
+public class ExifToolPoolTest {
+
+    static final String STANDIN_EXIFTOOL = "src/test/resources/exiftool/exiftool-standin.pl";
+
+    private static final File ANY_FILE = new File("src/test/resources/util/finder/testfile10.txt");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ExifToolPool pool;
+
+    @Before
+    public void setUp() {
+        pool = new ExifToolPool(2, () -> new PooledExifTool(STANDIN_EXIFTOOL));
+    }
+
+    @After
+    public void tearDown() {
+        pool.close();
+    }
+
+    @Test
+    public void instancesAreCreatedLazily() throws Exception {
+        Assert.assertEquals(0, pool.getCreatedCount());
+        PooledExifTool tool = pool.borrow();
+        Assert.assertEquals(1, pool.getCreatedCount());
+        pool.release(tool);
+    }
+
+    @Test
+    public void releasedInstanceIsReused() throws Exception {
+        PooledExifTool first = pool.borrow();
+        pool.release(first);
+        PooledExifTool second = pool.borrow();
+        Assert.assertSame(first, second);
+        Assert.assertEquals(1, pool.getCreatedCount());
+        pool.release(second);
+    }
+
+    @Test
+    public void poolGrowsUpToItsSize() throws Exception {
+        PooledExifTool first = pool.borrow();
+        PooledExifTool second = pool.borrow();
+        Assert.assertNotSame(first, second);
+        Assert.assertEquals(2, pool.getCreatedCount());
+        pool.release(first);
+        pool.release(second);
+    }
+
+    @Test
+    public void applyReadsMetadataWithStayOpenInstance() throws Exception {
+        Map<Tag, String> values = pool.apply(tool -> tool.getImageMeta(ANY_FILE, Collections.singletonList(StandardTag.DATE_TIME_ORIGINAL)));
+        Assert.assertEquals("2015:10:18 16:50:29", values.get(StandardTag.DATE_TIME_ORIGINAL));
+
+        PooledExifTool tool = pool.borrow();
+        Assert.assertTrue(tool.isRunning());
+        pool.release(tool);
+    }
+
+    @Test
+    public void failedInstanceIsReplaced() throws Exception {
+        File hang = folder.newFile("hang.JPG");
+        ExifToolPool watchedPool = new ExifToolPool(1, () -> new PooledExifTool(STANDIN_EXIFTOOL, 300));
+        try {
+            PooledExifTool tool = watchedPool.borrow();
+            watchedPool.release(tool);
+            try {
+                watchedPool.apply(t -> t.getImageMeta(hang, Collections.singletonList(StandardTag.MAKE)));
+                Assert.fail("A " + ExiftoolProcessException.class.getName() + " is expected when the deadline is missed.");
+            } catch (ExiftoolProcessException e) {
+                Assert.assertEquals(0, watchedPool.getCreatedCount());
+                Assert.assertEquals(1, watchedPool.getCounters().getRestarts());
+            }
+
+            Map<Tag, String> values = watchedPool.apply(t -> t.getImageMeta(ANY_FILE, Collections.singletonList(StandardTag.MAKE)));
+            Assert.assertEquals("Apple", values.get(StandardTag.MAKE));
+            PooledExifTool fresh = watchedPool.borrow();
+            Assert.assertNotSame(tool, fresh);
+            watchedPool.release(fresh);
+        } finally {
+            watchedPool.close();
+        }
+    }
+
+    @Test
+    public void closedPoolRefusesToLend() {
+        pool.close();
+        try {
+            pool.borrow();
+            Assert.fail("A " + ExiftoolMetaDataServiceException.class.getName() + " is expected when the pool is closed.");
+        } catch (ExiftoolMetaDataServiceException e) {
+            Assert.assertEquals("Exiftool pool is closed.", e.getMessage());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void sizeMustBePositive() {
+        new ExifToolPool(0);
+    }
+}
@@ -1,15 +1,37 @@
 package net.marmier.mediafilename.metadata.exif;
 
+import com.thebuzzmedia.exiftool.Tag;
+import com.thebuzzmedia.exiftool.core.StandardTag;
 import net.marmier.mediafilename.MediaProcessor;
 import net.marmier.mediafilename.MediaProcessorImpl;
 import net.marmier.mediafilename.metadata.MetaData;
 import net.marmier.mediafilename.metadata.MetaDataService;
+import net.marmier.mediafilename.metadata.jpeg.JpegSamples;
+import net.marmier.mediafilename.metadata.quicktime.QuickTimeSamples;
+import net.marmier.mediafilename.metadata.quicktime.QuickTimeTags;
+import net.marmier.mediafilename.metadata.tiff.TiffSamples;
 import net.marmier.mediafilename.timezone.Offset;
 import org.junit.Assert;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Added by raphael on 12.12.15.
@@ -18,6 +40,9 @@ public class ExiftoolMetaDataServiceTest {
 
     MetaDataService service = new ExiftoolMetaDataService();
 
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     @Before
     public void setUp() throws Exception {
 
@@ -92,4 +117,199 @@ public class ExiftoolMetaDataServiceTest {
             Assert.assertEquals(expected, filename);
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testMetadataFromFilesInBatches() throws Exception {
+        File jpg = folder.newFile("DSC_0001.JPG");
+        File text = folder.newFile("notes.txt");
+        File nef = folder.newFile("DSC_0002.NEF");
+        File mov = folder.newFile("IMG_0003.MOV");
+        File otherJpg = folder.newFile("DSC_0004.JPG");
+
+        ExifToolPool pool = new ExifToolPool(1, () -> new PooledExifTool(ExifToolPoolTest.STANDIN_EXIFTOOL));
+        try (MetaDataService standinService = new ExiftoolMetaDataService(pool, 1)) {
+            List<MetaData> results = standinService.metadataFromFiles(Arrays.asList(jpg, text, nef, mov, otherJpg));
+
+            Assert.assertEquals(5, results.size());
+            Assert.assertEquals("DSC_0001.JPG", results.get(0).getFileName());
+            Assert.assertEquals("2015-10-18T16:50:29", results.get(0).getCaptureDateTime().toString());
+            Assert.assertNull(results.get(1));
+            Assert.assertEquals("DSC_0002.NEF", results.get(2).getFileName());
+            Assert.assertEquals("2015-10-18T16:50:29", results.get(2).getCaptureDateTime().toString());
+            // The stand-in answers Apple iPhone, so the iPhone profile's CreationDate wins
+            Assert.assertEquals("IMG_0003.MOV", results.get(3).getFileName());
+            Assert.assertEquals("2016-05-03T20:15:26", results.get(3).getCaptureDateTime().toString());
+            Assert.assertEquals("DSC_0004.JPG", results.get(4).getFileName());
+        }
+    }
+
+    @Test
+    public void testSingleReadForAllMatchingProfiles() throws Exception {
+        File mov = folder.newFile("DSCN0001.MOV");
+        List<Collection<Tag>> requests = new ArrayList<>();
+
+        ExifToolPool pool = new ExifToolPool(1, () -> new PooledExifTool(ExifToolPoolTest.STANDIN_EXIFTOOL) {
+            @Override
+            public Map<Tag, String> getImageMeta(File file, Collection<Tag> tags) {
+                requests.add(tags);
+                Map<Tag, String> values = new HashMap<>();
+                values.put(StandardTag.MAKE, "NIKON");
+                values.put(ExtendedTags.MEDIA_CREATE_DATE, "2016:07:07 21:20:55");
+                return values;
+            }
+        });
+        try (MetaDataService recordingService = new ExiftoolMetaDataService(pool)) {
+            MetaData mdata = recordingService.metadataFromFile(mov);
+
+            // Not an iPhone, so the generic MOV profile decides, from the same read
+            Assert.assertEquals("2016-07-07T21:20:55", mdata.getCaptureDateTime().toString());
+            Assert.assertEquals(1, requests.size());
+            Assert.assertEquals(
+                new HashSet<>(Arrays.asList(StandardTag.CREATION_DATE, StandardTag.MODEL, StandardTag.MAKE, ExtendedTags.MEDIA_CREATE_DATE)),
+                new HashSet<>(requests.get(0)));
+
+            Assert.assertNull(recordingService.metadataFromFile(folder.newFile("notes.txt")));
+            Assert.assertEquals(1, requests.size());
+        }
+    }
+
+    @Test
+    public void testJpegReadInProcess() throws Exception {
+        File jpg = folder.newFile("DSC_0001.JPG");
+        Files.write(jpg.toPath(), JpegSamples.jpeg(TiffSamples.exifWithDateTimeOriginal(ByteOrder.LITTLE_ENDIAN, "2014:03:02 11:22:33")));
+        File withoutExif = folder.newFile("DSC_0002.JPG");
+        Files.write(withoutExif.toPath(), JpegSamples.jpeg(null));
+        List<File> requests = new ArrayList<>();
+
+        ExifToolPool pool = new ExifToolPool(1, () -> new PooledExifTool(ExifToolPoolTest.STANDIN_EXIFTOOL) {
+            @Override
+            public Map<File, Map<Tag, String>> getImageMeta(List<File> files, Collection<Tag> tags) throws IOException {
+                requests.addAll(files);
+                return super.getImageMeta(files, tags);
+            }
+        });
+        try (MetaDataService standinService = new ExiftoolMetaDataService(pool)) {
+            List<MetaData> results = standinService.metadataFromFiles(Arrays.asList(jpg, withoutExif));
+
+            Assert.assertEquals("2014-03-02T11:22:33", results.get(0).getCaptureDateTime().toString());
+            // No EXIF segment: Exiftool takes over
+            Assert.assertEquals("2015-10-18T16:50:29", results.get(1).getCaptureDateTime().toString());
+            Assert.assertEquals(Collections.singletonList(withoutExif), requests);
+        }
+    }
+
+    @Test
+    public void testRawReadInProcess() throws Exception {
+        File nef = folder.newFile("DSC_5303.NEF");
+        Files.write(nef.toPath(), TiffSamples.exifWithDateTimeOriginal(ByteOrder.BIG_ENDIAN, "2015:10:27 13:08:16"));
+        File dng = folder.newFile("IMG_0001.DNG");
+        Files.write(dng.toPath(), TiffSamples.exifWithDateTimeOriginal(ByteOrder.LITTLE_ENDIAN, "2016:01:02 03:04:05"));
+
+        ExifToolPool pool = new ExifToolPool(1, () -> {
+            throw new AssertionError("Raw files are expected to be read in process.");
+        });
+        try (MetaDataService inProcessService = new ExiftoolMetaDataService(pool)) {
+            Assert.assertEquals("2015-10-27T13:08:16", inProcessService.metadataFromFile(nef).getCaptureDateTime().toString());
+            Assert.assertEquals("2016-01-02T03:04:05", inProcessService.metadataFromFile(dng).getCaptureDateTime().toString());
+        }
+    }
+
+    @Test
+    public void testMovReadInProcess() throws Exception {
+        File iPhone = folder.newFile("IMG_0001.MOV");
+        Files.write(iPhone.toPath(), QuickTimeSamples.movie(LocalDateTime.of(2016, 5, 3, 18, 15, 26), "Apple", "iPhone 6", "2016-05-03T20:15:26+0200", 1000));
+        File other = folder.newFile("DSCN0001.MOV");
+        Files.write(other.toPath(), QuickTimeSamples.movie(LocalDateTime.of(2016, 7, 7, 21, 20, 55), "NIKON", "E5200", null, 1000));
+
+        ExifToolPool pool = new ExifToolPool(1, () -> {
+            throw new AssertionError("Movies are expected to be read in process.");
+        });
+        try (MetaDataService inProcessService = new ExiftoolMetaDataService(pool)) {
+            // Local time of the creation date item for iPhones, media header otherwise
+            Assert.assertEquals("2016-05-03T20:15:26", inProcessService.metadataFromFile(iPhone).getCaptureDateTime().toString());
+            Assert.assertEquals("2016-07-07T21:20:55", inProcessService.metadataFromFile(other).getCaptureDateTime().toString());
+        }
+    }
+
+    @Test
+    public void testMovParsedOnceForAllProfiles() throws Exception {
+        File other = folder.newFile("DSCN0001.MOV");
+        Files.write(other.toPath(), QuickTimeSamples.movie(LocalDateTime.of(2016, 7, 7, 21, 20, 55), "NIKON", "E5200", null, 1000));
+
+        AtomicInteger parsed = new AtomicInteger();
+        ProfileRegistry registry = new ProfileRegistry(Arrays.asList(new AppleiPhoneMovProfile() {
+            @Override
+            QuickTimeTags read(File file) {
+                parsed.incrementAndGet();
+                return super.read(file);
+            }
+        }, new MovProfile() {
+            @Override
+            QuickTimeTags read(File file) {
+                parsed.incrementAndGet();
+                return super.read(file);
+            }
+        }));
+        ExifToolPool pool = new ExifToolPool(1, () -> {
+            throw new AssertionError("Movies are expected to be read in process.");
+        });
+        try (MetaDataService inProcessService = new ExiftoolMetaDataService(pool, 1, registry)) {
+            // Not an iPhone movie, so both profiles are tried
+            Assert.assertEquals("2016-07-07T21:20:55", inProcessService.metadataFromFile(other).getCaptureDateTime().toString());
+            Assert.assertEquals(1, parsed.get());
+        }
+    }
+
+    @Test
+    public void testProfilesFromFileContent() throws Exception {
+        File clip = folder.newFile("CLIP0001.dat");
+        Files.write(clip.toPath(), QuickTimeSamples.movie(LocalDateTime.of(2016, 7, 7, 21, 20, 55), null, null, null, 1000));
+        File png = folder.newFile("DSC_0001.png");
+        Files.write(png.toPath(), new byte[] { (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n' });
+        // An MP4 with the extension of a QuickTime movie, as saved by many cameras
+        File mp4 = folder.newFile("CLIP0002.MOV");
+        Files.copy(new File("src/test/resources/apple/qt_samples/sample_mpeg4.mp4").toPath(), mp4.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+        ExifToolPool pool = new ExifToolPool(1, () -> {
+            throw new AssertionError("No Exiftool read is expected.");
+        });
+        try (MetaDataService inProcessService = new ExiftoolMetaDataService(pool)) {
+            List<MetaData> results = inProcessService.metadataFromFiles(Arrays.asList(clip, png, mp4));
+
+            Assert.assertEquals("2016-07-07T21:20:55", results.get(0).getCaptureDateTime().toString());
+            // No profile handles PNG content
+            Assert.assertNull(results.get(1));
+            Assert.assertNotNull(results.get(2));
+            Assert.assertEquals(results.get(2).getCaptureDateTime(), inProcessService.metadataFromFile(mp4).getCaptureDateTime());
+        }
+    }
+
+    @Test
+    public void testFailingFilesAreQuarantined() throws Exception {
+        File first = folder.newFile("DSC_0001.JPG");
+        File hang = folder.newFile("hang_0002.JPG");
+        File third = folder.newFile("DSC_0003.JPG");
+        File crash = folder.newFile("crash_0004.JPG");
+
+        ExifToolPool pool = new ExifToolPool(1, () -> new PooledExifTool(ExifToolPoolTest.STANDIN_EXIFTOOL, 300));
+        try (ExiftoolMetaDataService standinService = new ExiftoolMetaDataService(pool)) {
+            List<MetaData> results = standinService.metadataFromFiles(Arrays.asList(first, hang, third, crash));
+
+            Assert.assertEquals("2015-10-18T16:50:29", results.get(0).getCaptureDateTime().toString());
+            Assert.assertNull(results.get(1));
+            Assert.assertEquals("2015-10-18T16:50:29", results.get(2).getCaptureDateTime().toString());
+            Assert.assertNull(results.get(3));
+
+            ExiftoolCounters counters = standinService.getCounters();
+            Assert.assertEquals(2, counters.getQuarantined());
+            Assert.assertTrue(counters.getTimeouts() >= 2);
+            Assert.assertTrue(counters.getCrashes() >= 2);
+            Assert.assertEquals(counters.getTimeouts() + counters.getCrashes(), counters.getRestarts());
+
+            // Quarantined files are not sent to Exiftool anymore
+            long requests = counters.getRequests();
+            Assert.assertNull(standinService.metadataFromFile(hang));
+            Assert.assertEquals(requests, counters.getRequests());
+        }
+    }
+}
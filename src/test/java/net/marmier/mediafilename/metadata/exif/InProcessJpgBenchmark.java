@@ -0,0 +1,108 @@
+package net.marmier.mediafilename.metadata.exif;
+
+import com.thebuzzmedia.exiftool.Tag;
+import com.thebuzzmedia.exiftool.core.StandardTag;
+import net.marmier.mediafilename.metadata.MetaData;
+import net.marmier.mediafilename.metadata.jpeg.JpegSamples;
+import net.marmier.mediafilename.metadata.tiff.TiffSamples;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Reading "DateTimeOriginal" from a synthetic corpus of JPEG files in process, compared to a batched read
+ * with a stay-open Exiftool. Each file carries padding after its EXIF segment, standing for the image data.
+ * Exiftool is the stand-in script unless the <code>exiftool.path</code> system property points to another one.
+ * <p>
+ * Run from the project directory after <code>mvn test-compile</code>, with the test classpath.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class InProcessJpgBenchmark {
+
+    private static final List<Tag> TAGS = Collections.singletonList(StandardTag.DATE_TIME_ORIGINAL);
+
+    @Param({ "100" })
+    private int fileCount;
+
+    @Param({ "4000000" })
+    private int imageDataSize;
+
+    private Path corpus;
+
+    private List<File> files;
+
+    private InProcessJpgProfile profile;
+
+    private PooledExifTool exiftool;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        corpus = Files.createTempDirectory("jpg-corpus");
+        byte[] header = JpegSamples.jpeg(TiffSamples.exifWithDateTimeOriginal(ByteOrder.LITTLE_ENDIAN, "2015:10:18 16:50:29"));
+        byte[] content = new byte[header.length + imageDataSize];
+        System.arraycopy(header, 0, content, 0, header.length);
+        files = new ArrayList<>(fileCount);
+        for (int i = 0; i < fileCount; i++) {
+            files.add(Files.write(corpus.resolve(String.format("DSC_%04d.JPG", i)), content).toFile());
+        }
+        profile = new InProcessJpgProfile();
+        exiftool = new PooledExifTool(System.getProperty("exiftool.path", ExifToolPoolTest.STANDIN_EXIFTOOL));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        exiftool.close();
+        try (Stream<Path> paths = Files.walk(corpus)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    @Benchmark
+    public List<MetaData> inProcess() {
+        List<MetaData> results = new ArrayList<>(files.size());
+        for (File file : files) {
+            results.add(profile.readInProcess(file));
+        }
+        return results;
+    }
+
+    @Benchmark
+    public Map<File, Map<Tag, String>> exiftoolBatch() throws IOException {
+        return exiftool.getImageMeta(files, TAGS);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(InProcessJpgBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,119 @@
+package net.marmier.mediafilename.metadata.exif;
+
+import com.thebuzzmedia.exiftool.Tag;
+import com.thebuzzmedia.exiftool.core.StandardTag;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+public class PooledExifToolTest {
+
+    private static final List<Tag> TAGS = Arrays.asList(StandardTag.DATE_TIME_ORIGINAL, StandardTag.MAKE);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private PooledExifTool tool;
+
+    @Before
+    public void setUp() {
+        tool = new PooledExifTool(ExifToolPoolTest.STANDIN_EXIFTOOL);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        tool.close();
+    }
+
+    @Test
+    public void batchReadsAllFilesInOneRequest() throws Exception {
+        File first = folder.newFile("DSC_0001.JPG");
+        File second = folder.newFile("DSC_0002.JPG");
+
+        Map<File, Map<Tag, String>> results = tool.getImageMeta(Arrays.asList(first, second), TAGS);
+
+        Assert.assertEquals(Arrays.asList(first, second), Arrays.asList(results.keySet().toArray()));
+        for (File file : Arrays.asList(first, second)) {
+            Assert.assertEquals("2015:10:18 16:50:29", results.get(file).get(StandardTag.DATE_TIME_ORIGINAL));
+            Assert.assertEquals("Apple", results.get(file).get(StandardTag.MAKE));
+        }
+    }
+
+    @Test
+    public void batchOfOneFileHasNoHeader() throws Exception {
+        File only = folder.newFile("DSC_0001.JPG");
+
+        Map<File, Map<Tag, String>> results = tool.getImageMeta(Collections.singletonList(only), TAGS);
+
+        Assert.assertEquals("2015:10:18 16:50:29", results.get(only).get(StandardTag.DATE_TIME_ORIGINAL));
+    }
+
+    @Test
+    public void unreadableFileGetsEmptyValues() throws Exception {
+        File existing = folder.newFile("DSC_0001.JPG");
+        File missing = new File(folder.getRoot(), "DSC_0002.JPG");
+
+        Map<File, Map<Tag, String>> results = tool.getImageMeta(Arrays.asList(missing, existing), TAGS);
+
+        Assert.assertTrue(results.get(missing).isEmpty());
+        Assert.assertEquals("2015:10:18 16:50:29", results.get(existing).get(StandardTag.DATE_TIME_ORIGINAL));
+    }
+
+    @Test
+    public void hungProcessIsKilledAtDeadline() throws Exception {
+        PooledExifTool watched = new PooledExifTool(ExifToolPoolTest.STANDIN_EXIFTOOL, 300);
+        try {
+            watched.getImageMeta(folder.newFile("hang.JPG"), TAGS);
+            Assert.fail("A " + ExiftoolProcessException.class.getName() + " is expected when the deadline is missed.");
+        } catch (ExiftoolProcessException e) {
+            Assert.assertTrue(e.isTimeout());
+            Assert.assertFalse(watched.isHealthy());
+        } finally {
+            watched.close();
+        }
+    }
+
+    @Test
+    public void deadProcessIsDetected() throws Exception {
+        File first = folder.newFile("DSC_0001.JPG");
+        File crash = folder.newFile("crash.JPG");
+        try {
+            tool.getImageMeta(Arrays.asList(first, crash), TAGS);
+            Assert.fail("A " + ExiftoolProcessException.class.getName() + " is expected when the process dies.");
+        } catch (ExiftoolProcessException e) {
+            Assert.assertFalse(e.isTimeout());
+            Assert.assertFalse(tool.isHealthy());
+        }
+    }
+
+    @Test
+    public void handlerDispatchesTagsByFileHeader() {
+        File first = new File("/media/first.JPG");
+        File second = new File("/media/second.JPG");
+        PooledExifTool.BatchTagHandler handler = new PooledExifTool.BatchTagHandler(Arrays.asList(first, second), TAGS);
+
+        Assert.assertTrue(handler.readLine("======== /media/second.JPG"));
+        Assert.assertTrue(handler.readLine("DateTimeOriginal: 2016:01:02 03:04:05"));
+        Assert.assertTrue(handler.readLine("======== /media/first.JPG"));
+        Assert.assertTrue(handler.readLine("Make: NIKON CORPORATION"));
+        Assert.assertTrue(handler.readLine("Unknown: value"));
+        Assert.assertTrue(handler.readLine("    2 image files read"));
+        Assert.assertFalse(handler.isReady());
+        Assert.assertFalse(handler.readLine("{ready}"));
+        Assert.assertTrue(handler.isReady());
+
+        Assert.assertEquals("2016:01:02 03:04:05", handler.getResults().get(second).get(StandardTag.DATE_TIME_ORIGINAL));
+        Assert.assertNull(handler.getResults().get(second).get(StandardTag.MAKE));
+        Assert.assertEquals("NIKON CORPORATION", handler.getResults().get(first).get(StandardTag.MAKE));
+        Assert.assertEquals(1, handler.getResults().get(first).size());
+    }
+}
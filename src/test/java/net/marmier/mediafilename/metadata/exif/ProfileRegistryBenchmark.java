@@ -0,0 +1,92 @@
+package net.marmier.mediafilename.metadata.exif;
+
+import com.thebuzzmedia.exiftool.Tag;
+import net.marmier.mediafilename.metadata.FileType;
+import net.marmier.mediafilename.metadata.MetaData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Finding the profiles of a file among many registered profiles: a regular expression matched against the
+ * full path for each profile, as the service used to do, compared to the registry's extension lookup.
+ * <p>
+ * Run from the project directory after <code>mvn test-compile</code>, with the test classpath.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ProfileRegistryBenchmark {
+
+    @Param({ "6", "40" })
+    private int profileCount;
+
+    private final List<Pattern> patterns = new ArrayList<>();
+
+    private ProfileRegistry registry;
+
+    private final List<File> files = new ArrayList<>();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        List<ExifProfile> profiles = new ArrayList<>();
+        for (int i = 0; i < profileCount; i++) {
+            String extension = "ext" + i;
+            patterns.add(Pattern.compile(".+\\.(" + extension + "|" + extension.toUpperCase() + ")$"));
+            profiles.add(new AbstractExifProfile(FileType.UNKNOWN, Collections.singletonList(extension)) {
+                @Override
+                public MetaData fromTags(File file, Map<Tag, String> values) {
+                    return null;
+                }
+            });
+        }
+        registry = new ProfileRegistry(profiles);
+        for (int i = 0; i < 1000; i++) {
+            files.add(new File(String.format("/Volumes/Photos/2016/2016-07-07 Holidays/Day %d/DSC_%04d.EXT%d", i % 10, i, i % profileCount)));
+        }
+    }
+
+    @Benchmark
+    public void regexPerProfile(Blackhole blackhole) {
+        for (File file : files) {
+            for (Pattern pattern : patterns) {
+                blackhole.consume(pattern.matcher(file.toString()).matches());
+            }
+        }
+    }
+
+    @Benchmark
+    public void registryLookup(Blackhole blackhole) {
+        for (File file : files) {
+            blackhole.consume(registry.profilesFor(file));
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(ProfileRegistryBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,123 @@
+package net.marmier.mediafilename.metadata.exif;
+
+import com.thebuzzmedia.exiftool.Tag;
+import net.marmier.mediafilename.metadata.FileType;
+import net.marmier.mediafilename.metadata.MetaData;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+public class ProfileRegistryTest {
+
+    private final ExifProfile jpg = new TestProfile(FileType.JPEG, "jpg", "jpeg");
+    private final ExifProfile otherJpg = new TestProfile(FileType.JPEG, "JPG");
+    private final ExifProfile partial = new TestProfile(FileType.QUICKTIME, "mov.part");
+    private final ExifProfile part = new TestProfile(FileType.UNKNOWN, "part");
+    private final ExifProfile heif = new TestProfile(FileType.HEIF, "heic");
+
+    private final ProfileRegistry registry = new ProfileRegistry(Arrays.asList(jpg, otherJpg, partial, part, heif));
+
+    @Test
+    public void extensionsMapToChainsInOrder() {
+        Assert.assertEquals(Arrays.asList(jpg, otherJpg), registry.profilesFor(new File("/media/DSC_0001.JPG")));
+        Assert.assertEquals(Arrays.asList(jpg, otherJpg), registry.profilesFor(new File("DSC_0001.jpg")));
+        Assert.assertEquals(Collections.singletonList(jpg), registry.profilesFor(new File("DSC_0001.Jpeg")));
+    }
+
+    @Test
+    public void longestExtensionWins() {
+        Assert.assertEquals(Collections.singletonList(partial), registry.profilesFor(new File("IMG_0001.backup.MOV.part")));
+        Assert.assertEquals(Collections.singletonList(part), registry.profilesFor(new File("IMG_0001.part")));
+        Assert.assertEquals(Collections.singletonList(part), registry.profilesFor(new File("IMG_0001.mp4.part")));
+    }
+
+    @Test
+    public void unsupportedFilesHaveNoProfiles() {
+        Assert.assertTrue(registry.profilesFor(new File("notes.txt")).isEmpty());
+        Assert.assertTrue(registry.profilesFor(new File("jpg")).isEmpty());
+        Assert.assertTrue(registry.profilesFor(new File(".jpg")).isEmpty());
+        Assert.assertTrue(registry.profilesFor(new File("DSC_0001.jpg.xmp")).isEmpty());
+    }
+
+    @Test
+    public void contentTypeNarrowsChains() {
+        Assert.assertEquals(Arrays.asList(jpg, otherJpg), registry.profilesFor(new File("DSC_0001.JPG"), FileType.JPEG));
+        Assert.assertEquals(Arrays.asList(jpg, otherJpg), registry.profilesFor(new File("DSC_0001.JPG"), FileType.UNKNOWN));
+        // Wrong or unknown extensions
+        Assert.assertEquals(Collections.singletonList(heif), registry.profilesFor(new File("IMG_0001.JPG"), FileType.HEIF));
+        Assert.assertEquals(Collections.singletonList(partial), registry.profilesFor(new File("CLIP0001.dat"), FileType.QUICKTIME));
+        Assert.assertTrue(registry.profilesFor(new File("CLIP0001.dat"), FileType.UNKNOWN).isEmpty());
+        // No profile reads the type: the extension decides
+        Assert.assertEquals(Arrays.asList(jpg, otherJpg), registry.profilesFor(new File("DSC_0001.JPG"), FileType.PNG));
+        Assert.assertTrue(registry.profilesFor(new File("image.png"), FileType.PNG).isEmpty());
+    }
+
+    @Test
+    public void mp4ContentIsReadByQuickTimeProfiles() {
+        ProfileRegistry defaults = ProfileRegistry.withDefaults();
+
+        List<ExifProfile> mov = defaults.profilesFor(new File("CLIP0001.MOV"), FileType.MP4);
+        Assert.assertEquals(defaults.profilesFor(new File("CLIP0001.MOV")), mov);
+        Assert.assertEquals(mov, defaults.profilesFor(new File("CLIP0001.mp4"), FileType.MP4));
+    }
+
+    @Test
+    public void thumbnailsAndScansAreNotHandledByContent() {
+        ProfileRegistry defaults = ProfileRegistry.withDefaults();
+
+        Assert.assertTrue(defaults.profilesFor(new File("MVI_0001.THM"), FileType.JPEG).isEmpty());
+        Assert.assertTrue(defaults.profilesFor(new File("scan0001.tif"), FileType.TIFF).isEmpty());
+        Assert.assertFalse(defaults.profilesFor(new File("DSC_0001.dat"), FileType.TIFF).isEmpty());
+    }
+
+    @Test
+    public void sidecarFilesAreNotSniffed() {
+        ProfileRegistry defaults = ProfileRegistry.withDefaults();
+
+        Assert.assertFalse(defaults.handlesByContent(new File("DSC_0001.NEF.xmp")));
+        Assert.assertFalse(defaults.handlesByContent(new File("IMG_0001.AAE")));
+        Assert.assertFalse(defaults.handlesByContent(new File("MVI_0001.THM")));
+        Assert.assertTrue(defaults.handlesByContent(new File("IMG_0001.JPG")));
+        Assert.assertTrue(defaults.handlesByContent(new File("CLIP0001.dat")));
+
+        ProfileRegistry withXmp = new ProfileRegistry(Collections.singletonList(new TestProfile(FileType.UNKNOWN, "xmp")));
+        Assert.assertTrue(withXmp.handlesByContent(new File("DSC_0001.xmp")));
+    }
+
+    @Test
+    public void matchingExtensionComesFirst() {
+        ExifProfile anyJpeg = new TestProfile(FileType.JPEG, "jfif");
+        ProfileRegistry withFallback = new ProfileRegistry(Arrays.asList(anyJpeg, jpg));
+
+        Assert.assertEquals(Arrays.asList(jpg, anyJpeg), withFallback.profilesFor(new File("DSC_0001.jpg"), FileType.JPEG));
+    }
+
+    @Test
+    public void defaultsIncludeContributedProfiles() {
+        List<ExifProfile> profiles = ProfileRegistry.withDefaults().getProfiles();
+
+        Assert.assertTrue(profiles.get(0) instanceof InProcessJpgProfile);
+        Assert.assertTrue(profiles.get(profiles.size() - 1) instanceof ContributedProfile);
+        List<ExifProfile> mov = ProfileRegistry.withDefaults().profilesFor(new File("IMG_0001.MOV"));
+        Assert.assertEquals(2, mov.size());
+        Assert.assertTrue(mov.get(0) instanceof AppleiPhoneMovProfile);
+        Assert.assertTrue(mov.get(1) instanceof MovProfile);
+    }
+
+    private static class TestProfile extends AbstractExifProfile {
+
+        TestProfile(FileType type, String... extensions) {
+            super(type, Arrays.asList(extensions));
+        }
+
+        @Override
+        public MetaData fromTags(File file, Map<Tag, String> values) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package net.marmier.mediafilename.metadata.jpeg;
+
+import net.marmier.mediafilename.metadata.MetaDataFormatException;
+import net.marmier.mediafilename.metadata.tiff.TiffSamples;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+public class JpegExifReaderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final JpegExifReader reader = new JpegExifReader();
+
+    @Test
+    public void readsDateTimeOriginal() throws Exception {
+        Path little = write("little.jpg", JpegSamples.jpeg(TiffSamples.exifWithDateTimeOriginal(ByteOrder.LITTLE_ENDIAN, "2015:10:18 16:50:29")));
+        Path big = write("big.jpg", JpegSamples.jpeg(TiffSamples.exifWithDateTimeOriginal(ByteOrder.BIG_ENDIAN, "2015:10:27 13:08:16")));
+
+        Assert.assertEquals("2015:10:18 16:50:29", reader.readDateTimeOriginal(little));
+        Assert.assertEquals("2015:10:27 13:08:16", reader.readDateTimeOriginal(big));
+    }
+
+    @Test
+    public void fileWithoutExifIsNull() throws Exception {
+        Assert.assertNull(reader.readDateTimeOriginal(write("plain.jpg", JpegSamples.jpeg(null))));
+    }
+
+    @Test(expected = MetaDataFormatException.class)
+    public void notAJpegIsRejected() throws Exception {
+        reader.readDateTimeOriginal(write("text.jpg", "not a jpeg".getBytes("US-ASCII")));
+    }
+
+    @Test(expected = MetaDataFormatException.class)
+    public void truncatedFileIsRejected() throws Exception {
+        byte[] jpeg = JpegSamples.jpeg(TiffSamples.exifWithDateTimeOriginal(ByteOrder.LITTLE_ENDIAN, "2015:10:18 16:50:29"));
+        reader.readDateTimeOriginal(write("truncated.jpg", Arrays.copyOf(jpeg, 40)));
+    }
+
+    private Path write(String name, byte[] content) throws Exception {
+        return Files.write(folder.getRoot().toPath().resolve(name), content);
+    }
+}
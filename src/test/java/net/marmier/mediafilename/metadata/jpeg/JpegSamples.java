@@ -0,0 +1,41 @@
+package net.marmier.mediafilename.metadata.jpeg;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Builds minimal JPEG files for tests: a JFIF segment, an optional EXIF segment and some image data.
+ */
+public class JpegSamples {
+
+    public static byte[] jpeg(byte[] tiff) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        marker(out, 0xd8);
+        byte[] jfif = "JFIF\0\1\1\0\0\1\0\1\0\0".getBytes(StandardCharsets.US_ASCII);
+        segment(out, 0xe0, jfif);
+        if (tiff != null) {
+            byte[] exif = new byte[6 + tiff.length];
+            System.arraycopy("Exif\0\0".getBytes(StandardCharsets.US_ASCII), 0, exif, 0, 6);
+            System.arraycopy(tiff, 0, exif, 6, tiff.length);
+            segment(out, 0xe1, exif);
+        }
+        segment(out, 0xda, new byte[] { 1, 1, 0, 0, 0x3f, 0 });
+        // Image data, with a value that would be mistaken for an APP1 marker
+        out.write(new byte[] { 0x12, (byte) 0xff, 0x00, (byte) 0xff, (byte) 0xe1, 0x34 }, 0, 6);
+        marker(out, 0xd9);
+        return out.toByteArray();
+    }
+
+    private static void marker(ByteArrayOutputStream out, int type) {
+        out.write(0xff);
+        out.write(type);
+    }
+
+    private static void segment(ByteArrayOutputStream out, int type, byte[] data) {
+        marker(out, type);
+        int length = data.length + 2;
+        out.write(length >> 8);
+        out.write(length & 0xff);
+        out.write(data, 0, data.length);
+    }
+}
@@ -0,0 +1,75 @@
+package net.marmier.mediafilename.metadata.quicktime;
+
+import net.marmier.mediafilename.metadata.MetaDataFormatException;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+
+public class QuickTimeReaderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final QuickTimeReader reader = new QuickTimeReader();
+
+    @Test
+    public void readsMediaCreateDate() throws Exception {
+        // Nikon E5200 movie, with the values Exiftool gives
+        QuickTimeTags nikon = reader.read(Paths.get("src/test/resources/nikon/DSCN7778.MOV"));
+        Assert.assertEquals("2016-07-07T21:20:55", nikon.getMediaCreateDate().toString());
+
+        // Two tracks: the last one wins
+        QuickTimeTags sample = reader.read(Paths.get("src/test/resources/apple/qt_samples/sample_iTunes.mov"));
+        Assert.assertEquals("2005-10-17T22:54:32", sample.getCreateDate().toString());
+        Assert.assertEquals("2005-10-17T22:54:34", sample.getMediaCreateDate().toString());
+    }
+
+    @Test
+    public void readsIsoMediaFile() throws Exception {
+        QuickTimeTags mp4 = reader.read(Paths.get("src/test/resources/apple/qt_samples/sample_mpeg4.mp4"));
+        Assert.assertEquals("2005-10-28T17:46:46", mp4.getMediaCreateDate().toString());
+    }
+
+    @Test
+    public void readsMetadataItemsAfterMediaData() throws Exception {
+        Path movie = write("IMG_0001.MOV", QuickTimeSamples.movie(LocalDateTime.of(2016, 5, 3, 18, 15, 26),
+            "Apple", "iPhone 6", "2016-05-03T20:15:26+0200", 1000000));
+
+        QuickTimeTags tags = reader.read(movie);
+
+        Assert.assertEquals("2016-05-03T18:15:26", tags.getMediaCreateDate().toString());
+        Assert.assertEquals("Apple", tags.getItem(QuickTimeTags.KEY_MAKE));
+        Assert.assertEquals("iPhone 6", tags.getItem(QuickTimeTags.KEY_MODEL));
+        Assert.assertEquals("2016-05-03T20:15:26+0200", tags.getItem(QuickTimeTags.KEY_CREATION_DATE));
+    }
+
+    @Test
+    public void missingItemsAreNull() throws Exception {
+        Path movie = write("DSCN0001.MOV", QuickTimeSamples.movie(LocalDateTime.of(2016, 7, 7, 21, 20, 55), null, null, null, 10));
+
+        Assert.assertNull(reader.read(movie).getItem(QuickTimeTags.KEY_MAKE));
+    }
+
+    @Test(expected = MetaDataFormatException.class)
+    public void notAMovieIsRejected() throws Exception {
+        reader.read(write("notes.MOV", "\0\0\0\1 not a movie".getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    @Test(expected = MetaDataFormatException.class)
+    public void truncatedMovieIsRejected() throws Exception {
+        byte[] movie = QuickTimeSamples.movie(LocalDateTime.of(2016, 7, 7, 21, 20, 55), null, null, null, 10);
+        reader.read(write("DSCN0001.MOV", Arrays.copyOf(movie, movie.length - 20)));
+    }
+
+    private Path write(String name, byte[] content) throws Exception {
+        return Files.write(folder.getRoot().toPath().resolve(name), content);
+    }
+}
@@ -0,0 +1,73 @@
+package net.marmier.mediafilename.metadata.quicktime;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+/**
+ * Builds minimal QuickTime files for tests, laid out like iPhone movies: media data first, then a movie atom
+ * with a movie header, one track and Apple metadata items.
+ */
+public class QuickTimeSamples {
+
+    private static final LocalDateTime EPOCH = LocalDateTime.of(1904, 1, 1, 0, 0);
+
+    /**
+     * @param utc the movie and media creation time
+     * @param make the "com.apple.quicktime.make" item, or null
+     * @param model the "com.apple.quicktime.model" item, or null
+     * @param creationDate the "com.apple.quicktime.creationdate" item, or null
+     * @param mediaDataSize the size of the media data preceding the movie atom
+     * @return the movie file
+     */
+    public static byte[] movie(LocalDateTime utc, String make, String model, String creationDate, int mediaDataSize) {
+        ByteArrayOutputStream keys = new ByteArrayOutputStream();
+        ByteArrayOutputStream items = new ByteArrayOutputStream();
+        int count = 0;
+        String[][] entries = { { QuickTimeTags.KEY_MAKE, make }, { QuickTimeTags.KEY_MODEL, model }, { QuickTimeTags.KEY_CREATION_DATE, creationDate } };
+        for (String[] entry : entries) {
+            if (entry[1] != null) {
+                count++;
+                byte[] key = entry[0].getBytes(StandardCharsets.UTF_8);
+                write(keys, ByteBuffer.allocate(8 + key.length).putInt(8 + key.length).put("mdta".getBytes(StandardCharsets.US_ASCII)).put(key).array());
+                byte[] value = entry[1].getBytes(StandardCharsets.UTF_8);
+                byte[] data = atom("data", ByteBuffer.allocate(8 + value.length).putInt(1).putInt(0).put(value).array());
+                write(items, atom(ByteBuffer.allocate(4).putInt(count).array(), data));
+            }
+        }
+        byte[] keysAtom = atom("keys", concat(ByteBuffer.allocate(8).putInt(0).putInt(count).array(), keys.toByteArray()));
+        byte[] hdlr = atom("hdlr", concat(new byte[8], "mdta".getBytes(StandardCharsets.US_ASCII), new byte[13]));
+        byte[] meta = atom("meta", concat(hdlr, keysAtom, atom("ilst", items.toByteArray())));
+
+        long seconds = Duration.between(EPOCH, utc).getSeconds();
+        byte[] header = ByteBuffer.allocate(100).putInt(0).putInt((int) seconds).putInt((int) seconds).putInt(600).array();
+        byte[] mdhd = atom("mdhd", ByteBuffer.allocate(24).putInt(0).putInt((int) seconds).putInt((int) seconds).putInt(600).array());
+        byte[] trak = atom("trak", concat(atom("tkhd", new byte[84]), atom("mdia", concat(mdhd, atom("minf", new byte[64])))));
+        byte[] moov = atom("moov", concat(atom("mvhd", header), trak, meta));
+
+        byte[] ftyp = atom("ftyp", "qt  \0\0\0\0qt  ".getBytes(StandardCharsets.US_ASCII));
+        return concat(ftyp, atom("mdat", new byte[mediaDataSize]), moov);
+    }
+
+    static byte[] atom(String type, byte[] content) {
+        return atom(type.getBytes(StandardCharsets.ISO_8859_1), content);
+    }
+
+    private static byte[] atom(byte[] type, byte[] content) {
+        return ByteBuffer.allocate(8 + content.length).putInt(8 + content.length).put(type).put(content).array();
+    }
+
+    static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            write(out, part);
+        }
+        return out.toByteArray();
+    }
+
+    private static void write(ByteArrayOutputStream out, byte[] bytes) {
+        out.write(bytes, 0, bytes.length);
+    }
+}
@@ -0,0 +1,90 @@
+package net.marmier.mediafilename.metadata.tiff;
+
+import net.marmier.mediafilename.metadata.MetaDataFormatException;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+public class TiffReaderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void readsLittleEndian() throws Exception {
+        byte[] tiff = TiffSamples.exifWithDateTimeOriginal(ByteOrder.LITTLE_ENDIAN, "2015:10:18 16:50:29");
+        Assert.assertEquals("2015:10:18 16:50:29", new TiffReader(ByteBuffer.wrap(tiff)).readDateTimeOriginal());
+    }
+
+    @Test
+    public void readsBigEndian() throws Exception {
+        byte[] tiff = TiffSamples.exifWithDateTimeOriginal(ByteOrder.BIG_ENDIAN, "2015:10:27 13:08:16");
+        Assert.assertEquals("2015:10:27 13:08:16", new TiffReader(ByteBuffer.wrap(tiff)).readDateTimeOriginal());
+    }
+
+    @Test
+    public void offsetsAreRelativeToTheBufferPosition() throws Exception {
+        byte[] tiff = TiffSamples.exifWithDateTimeOriginal(ByteOrder.BIG_ENDIAN, "2015:10:27 13:08:16");
+        ByteBuffer segment = ByteBuffer.allocate(tiff.length + 6);
+        segment.position(6);
+        segment.put(tiff);
+        segment.position(6);
+        Assert.assertEquals("2015:10:27 13:08:16", new TiffReader(segment).readDateTimeOriginal());
+    }
+
+    @Test
+    public void readsFileInPlace() throws Exception {
+        byte[] tiff = TiffSamples.exifWithDateTimeOriginal(ByteOrder.BIG_ENDIAN, "2015:10:27 13:08:16");
+        // Raw image data following the directories
+        Path raw = Files.write(folder.getRoot().toPath().resolve("DSC_5303.NEF"), Arrays.copyOf(tiff, tiff.length + 100000));
+
+        try (FileChannel channel = FileChannel.open(raw, StandardOpenOption.READ)) {
+            Assert.assertEquals("2015:10:27 13:08:16", new TiffReader(channel).readDateTimeOriginal());
+        }
+    }
+
+    @Test
+    public void readsOlympusVariant() throws Exception {
+        byte[] tiff = TiffSamples.exifWithDateTimeOriginal(ByteOrder.LITTLE_ENDIAN, "2015:10:18 16:50:29");
+        tiff[2] = 'R';
+        tiff[3] = 'O';
+        Assert.assertEquals("2015:10:18 16:50:29", new TiffReader(ByteBuffer.wrap(tiff)).readDateTimeOriginal());
+    }
+
+    @Test
+    public void missingExifIsNull() throws Exception {
+        Assert.assertNull(new TiffReader(ByteBuffer.wrap(TiffSamples.withoutExif(ByteOrder.LITTLE_ENDIAN))).readDateTimeOriginal());
+    }
+
+    @Test(expected = MetaDataFormatException.class)
+    public void unknownByteOrderIsRejected() throws Exception {
+        byte[] tiff = TiffSamples.withoutExif(ByteOrder.LITTLE_ENDIAN);
+        tiff[0] = 'X';
+        new TiffReader(ByteBuffer.wrap(tiff));
+    }
+
+    @Test(expected = MetaDataFormatException.class)
+    public void truncatedFileIsRejected() throws Exception {
+        byte[] tiff = TiffSamples.exifWithDateTimeOriginal(ByteOrder.LITTLE_ENDIAN, "2015:10:18 16:50:29");
+        Path raw = Files.write(folder.getRoot().toPath().resolve("DSC_0001.DNG"), Arrays.copyOf(tiff, 50));
+
+        try (FileChannel channel = FileChannel.open(raw, StandardOpenOption.READ)) {
+            new TiffReader(channel).readDateTimeOriginal();
+        }
+    }
+
+    @Test(expected = MetaDataFormatException.class)
+    public void truncatedDirectoryIsRejected() throws Exception {
+        byte[] tiff = TiffSamples.exifWithDateTimeOriginal(ByteOrder.LITTLE_ENDIAN, "2015:10:18 16:50:29");
+        new TiffReader(ByteBuffer.wrap(Arrays.copyOf(tiff, 30))).readDateTimeOriginal();
+    }
+}
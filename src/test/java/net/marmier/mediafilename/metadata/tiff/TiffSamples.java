@@ -0,0 +1,57 @@
+package net.marmier.mediafilename.metadata.tiff;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Builds minimal TIFF data for tests: an IFD0 pointing to an EXIF sub-IFD holding a "DateTimeOriginal" tag.
+ */
+public class TiffSamples {
+
+    private static final int IFD_SIZE = 2 + 12 + 4;
+
+    public static byte[] exifWithDateTimeOriginal(ByteOrder order, String dateTimeOriginal) {
+        byte[] value = (dateTimeOriginal + "\0").getBytes(StandardCharsets.US_ASCII);
+        int ifd0 = 8;
+        int exifIfd = ifd0 + IFD_SIZE;
+        int valueOffset = exifIfd + IFD_SIZE;
+
+        ByteBuffer tiff = ByteBuffer.allocate(valueOffset + value.length).order(order);
+        tiff.put(order == ByteOrder.LITTLE_ENDIAN ? (byte) 'I' : (byte) 'M');
+        tiff.put(order == ByteOrder.LITTLE_ENDIAN ? (byte) 'I' : (byte) 'M');
+        tiff.putShort((short) 42);
+        tiff.putInt(ifd0);
+
+        // IFD0: the EXIF sub-IFD pointer only
+        tiff.putShort((short) 1);
+        entry(tiff, TiffReader.TAG_EXIF_IFD_POINTER, 4, 1, exifIfd);
+        tiff.putInt(0);
+
+        // EXIF sub-IFD
+        tiff.putShort((short) 1);
+        entry(tiff, TiffReader.TAG_DATE_TIME_ORIGINAL, 2, value.length, valueOffset);
+        tiff.putInt(0);
+
+        tiff.put(value);
+        return tiff.array();
+    }
+
+    public static byte[] withoutExif(ByteOrder order) {
+        ByteBuffer tiff = ByteBuffer.allocate(8 + 6).order(order);
+        tiff.put(order == ByteOrder.LITTLE_ENDIAN ? (byte) 'I' : (byte) 'M');
+        tiff.put(order == ByteOrder.LITTLE_ENDIAN ? (byte) 'I' : (byte) 'M');
+        tiff.putShort((short) 42);
+        tiff.putInt(8);
+        tiff.putShort((short) 0);
+        tiff.putInt(0);
+        return tiff.array();
+    }
+
+    private static void entry(ByteBuffer tiff, int tag, int type, int count, int value) {
+        tiff.putShort((short) tag);
+        tiff.putShort((short) type);
+        tiff.putInt(count);
+        tiff.putInt(value);
+    }
+}
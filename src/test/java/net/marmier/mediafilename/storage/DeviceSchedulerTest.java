@@ -0,0 +1,121 @@
+package net.marmier.mediafilename.storage;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class DeviceSchedulerTest {
+
+    private static final StorageDevice DISK = new StorageDevice("/dev/sda1", "ext4", 1);
+
+    private static final StorageDevice SSD = new StorageDevice("/dev/nvme0n1p1", "ext4", StorageDevice.UNLIMITED);
+
+    private ExecutorService executor;
+
+    private final Map<StorageDevice, AtomicInteger> running = new HashMap<>();
+
+    private final Map<StorageDevice, AtomicInteger> maxRunning = new HashMap<>();
+
+    private final AtomicInteger totalRunning = new AtomicInteger();
+
+    private final AtomicInteger maxTotalRunning = new AtomicInteger();
+
+    @Before
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(4);
+        for (StorageDevice device : new StorageDevice[]{ DISK, SSD }) {
+            running.put(device, new AtomicInteger());
+            maxRunning.put(device, new AtomicInteger());
+        }
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void devicesAreReadWithinTheirLimits() throws Exception {
+        List<DeviceScheduler.DeviceTask<Integer>> tasks = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            tasks.add(task(i % 4 == 0 ? DISK : SSD, i));
+        }
+
+        List<Integer> results = new DeviceScheduler(executor, 4).runAll(tasks);
+
+        for (int i = 0; i < 40; i++) {
+            Assert.assertEquals(i, results.get(i).intValue());
+        }
+        Assert.assertEquals(1, maxRunning.get(DISK).get());
+        Assert.assertTrue(maxRunning.get(SSD).get() > 1);
+        Assert.assertTrue(maxTotalRunning.get() <= 4);
+    }
+
+    @Test
+    public void devicesTakeTurns() throws Exception {
+        List<String> started = new ArrayList<>();
+        List<DeviceScheduler.DeviceTask<Integer>> tasks = new ArrayList<>();
+        // All the disk tasks come first, yet the SSD does not wait for them
+        for (int i = 0; i < 3; i++) {
+            tasks.add(new DeviceScheduler.DeviceTask<>(DISK, () -> record(started, "disk")));
+        }
+        for (int i = 0; i < 3; i++) {
+            tasks.add(new DeviceScheduler.DeviceTask<>(SSD, () -> record(started, "ssd")));
+        }
+
+        ExecutorService single = Executors.newSingleThreadExecutor();
+        try {
+            new DeviceScheduler(single, 1).runAll(tasks);
+        } finally {
+            single.shutdown();
+        }
+
+        Assert.assertEquals("[disk, ssd, disk, ssd, disk, ssd]", started.toString());
+    }
+
+    @Test
+    public void failureIsReported() throws Exception {
+        List<DeviceScheduler.DeviceTask<Integer>> tasks = new ArrayList<>();
+        tasks.add(task(SSD, 0));
+        tasks.add(new DeviceScheduler.DeviceTask<>(DISK, () -> {
+            throw new IllegalStateException("Unreadable");
+        }));
+        try {
+            new DeviceScheduler(executor, 2).runAll(tasks);
+            Assert.fail("An " + ExecutionException.class.getName() + " is expected.");
+        } catch (ExecutionException e) {
+            Assert.assertEquals("Unreadable", e.getCause().getMessage());
+        }
+    }
+
+    private DeviceScheduler.DeviceTask<Integer> task(StorageDevice device, int value) {
+        return new DeviceScheduler.DeviceTask<>(device, () -> {
+            maxRunning.get(device).accumulateAndGet(running.get(device).incrementAndGet(), Math::max);
+            maxTotalRunning.accumulateAndGet(totalRunning.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(2);
+                return value;
+            } finally {
+                totalRunning.decrementAndGet();
+                running.get(device).decrementAndGet();
+            }
+        });
+    }
+
+    private static Integer record(List<String> started, String device) {
+        synchronized (started) {
+            started.add(device);
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,60 @@
+package net.marmier.mediafilename.storage;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.Map;
+
+public class StorageDevicesTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void limitsDependOnTheKindOfDevice() {
+        StorageDevices devices = new StorageDevices(Collections.emptyMap());
+
+        Assert.assertEquals(StorageDevices.NETWORK_LIMIT, devices.limitOf("nas:/volume1/photos", "nfs"));
+        Assert.assertEquals(StorageDevices.MEMORY_CARD_LIMIT, devices.limitOf("/dev/sdc1", "exfat"));
+        Assert.assertEquals(StorageDevice.UNLIMITED, devices.limitOf("tmpfs", "tmpfs"));
+    }
+
+    @Test
+    public void limitsCanBeOverridden() {
+        StorageDevices devices = new StorageDevices(StorageDevices.parseLimits("nfs=4, /dev/sdc1=1"));
+
+        Assert.assertEquals(4, devices.limitOf("nas:/volume1/photos", "nfs"));
+        Assert.assertEquals(1, devices.limitOf("/dev/sdc1", "ext4"));
+        Assert.assertEquals(StorageDevices.MEMORY_CARD_LIMIT, devices.limitOf("/dev/sdd1", "vfat"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidLimitsAreRejected() {
+        StorageDevices.parseLimits("nfs=many");
+    }
+
+    @Test
+    public void filesOfADirectoryShareTheirDevice() throws Exception {
+        StorageDevices devices = new StorageDevices(Collections.emptyMap());
+        File first = folder.newFile("DSC_0001.JPG");
+        File second = folder.newFile("DSC_0002.JPG");
+
+        StorageDevice device = devices.deviceOf(first.toPath());
+        Assert.assertNotSame(StorageDevices.UNKNOWN, device);
+        Assert.assertSame(device, devices.deviceOf(second.toPath()));
+        Assert.assertSame(StorageDevices.UNKNOWN, devices.deviceOf(Paths.get("/nonexistent/DSC_0003.JPG")));
+    }
+
+    @Test
+    public void parsedLimits() {
+        Map<String, Integer> limits = StorageDevices.parseLimits("cifs=3,/dev/sdb1=1");
+        Assert.assertEquals(Integer.valueOf(3), limits.get("cifs"));
+        Assert.assertEquals(Integer.valueOf(1), limits.get("/dev/sdb1"));
+        Assert.assertTrue(StorageDevices.parseLimits("").isEmpty());
+    }
+}
@@ -0,0 +1,140 @@
+package net.marmier.mediafilename.util.finder;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+
+public class ParallelFinderTest {
+
+    private static final String TEST_RESOURCES_DIR = "src/test/resources/util/finder";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ForkJoinPool pool;
+
+    @Before
+    public void setUp() throws Exception {
+        pool = new ForkJoinPool(4);
+        createTree(folder.getRoot(), 3);
+    }
+
+    @After
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Test
+    public void orderedTraversalMatchesSequentialOne() {
+        for (Path root : new Path[]{ folder.getRoot().toPath(), new File(TEST_RESOURCES_DIR).toPath() }) {
+            List<Path> sequential = new Finder().find(root, false, false);
+
+            List<Path> parallel = new ParallelFinder(pool, true).find(root, false, false);
+
+            Assert.assertEquals(sequential, parallel);
+        }
+    }
+
+    @Test
+    public void orderedTraversalStreamsDirectories() throws Exception {
+        File root = folder.newFolder("many");
+        for (int i = 0; i < 100; i++) {
+            File subdirectory = new File(root, String.format("%03dNIKON", i));
+            subdirectory.mkdir();
+            new File(subdirectory, "DSC_0001.JPG").createNewFile();
+        }
+
+        // Files added once the first one is found are found in the directories not listed yet
+        List<Path> found = new ArrayList<>();
+        new ParallelFinder(pool, true).find(root.toPath(), false, false, path -> {
+            if (found.isEmpty()) {
+                for (File subdirectory : root.listFiles()) {
+                    try {
+                        new File(subdirectory, "DSC_0002.JPG").createNewFile();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            }
+            found.add(path);
+        });
+
+        Assert.assertTrue(found.stream().anyMatch(path -> path.endsWith("DSC_0002.JPG")));
+    }
+
+    @Test
+    public void ownPoolIsShutDown() {
+        ParallelFinder finder = new ParallelFinder(2);
+        Assert.assertEquals(new Finder().find(folder.getRoot().toPath(), false, false), finder.find(folder.getRoot().toPath(), false, false));
+
+        finder.close();
+
+        try {
+            finder.find(folder.getRoot().toPath(), false, false);
+            Assert.fail("A " + RejectedExecutionException.class.getName() + " is expected.");
+        } catch (RejectedExecutionException e) {
+            // Shut down
+        }
+    }
+
+    @Test
+    public void unorderedTraversalFindsTheSameFiles() {
+        Path root = folder.getRoot().toPath();
+        List<Path> sequential = new Finder().find(root, false, false);
+
+        List<Path> parallel = new ArrayList<>();
+        new ParallelFinder(pool, false).find(root, false, false, parallel::add);
+
+        Assert.assertEquals(sequential.size(), parallel.size());
+        Assert.assertEquals(new HashSet<>(sequential), new HashSet<>(parallel));
+    }
+
+    @Test
+    public void fileIsMerelyReturned() {
+        Path file = new File(TEST_RESOURCES_DIR, "testfile10.txt").toPath();
+
+        List<Path> results = new ParallelFinder(pool, true).find(file, false, false);
+
+        Assert.assertEquals(1, results.size());
+        Assert.assertEquals(file, results.get(0));
+    }
+
+    @Test
+    public void consumerErrorsEndTheTraversal() {
+        try {
+            new ParallelFinder(pool, false).find(folder.getRoot().toPath(), false, false, path -> {
+                throw new FinderException("Consumer failed");
+            });
+            Assert.fail("A " + FinderException.class.getName() + " is expected.");
+        } catch (FinderException e) {
+            Assert.assertTrue(e.getMessage().contains("Consumer failed"));
+        }
+    }
+
+    /**
+     * Create directories holding files and subdirectories, down to the given depth.
+     */
+    private static void createTree(File directory, int depth) throws Exception {
+        for (int i = 0; i < 3; i++) {
+            new File(directory, String.format("DSC_%d%d.JPG", depth, i)).createNewFile();
+            if (depth > 0) {
+                File subdirectory = new File(directory, "directory" + i);
+                subdirectory.mkdir();
+                createTree(subdirectory, depth - 1);
+            }
+        }
+    }
+}
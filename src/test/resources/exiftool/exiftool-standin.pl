@@ -0,0 +1,78 @@
+#!/usr/bin/env perl
+#
+# Stand-in for Phil Harvey's exiftool, used by tests and benchmarks when the real tool is not
+# available. It understands just enough of the command line to be driven by exiftool-lib:
+# "-ver", one-shot invocations and the "-stay_open True -@ -" daemon mode. Requested tags are
+# answered with fixed values, in the short ("-S") output format.
+#
+# The EXIFTOOL_STANDIN_STARTUP_MS environment variable adds a startup delay, to mimic the cost
+# of loading the real tool's modules.
+#
+# Files named after "hang" or "crash" make the tool hang or die, like the real one can on
+# corrupt files.
+#
+use strict;
+use warnings;
+
+$| = 1;
+
+my %VALUES = (
+    'DateTimeOriginal' => '2015:10:18 16:50:29',
+    'CreationDate'     => '2016:05:03 20:15:26+02:00',
+    'MediaCreateDate'  => '2016:07:07 21:20:55',
+    'Make'             => 'Apple',
+    'Model'            => 'iPhone 6',
+);
+
+my $startup = $ENV{'EXIFTOOL_STANDIN_STARTUP_MS'};
+select(undef, undef, undef, $startup / 1000) if $startup;
+
+sub answer {
+    my @tags;
+    my @files;
+    foreach my $arg (@_) {
+        if ($arg =~ /^-execute/) {
+            next;
+        } elsif ($arg =~ /^-([A-Za-z0-9]+)$/) {
+            push @tags, $1 if exists $VALUES{$1};
+        } else {
+            push @files, $arg;
+        }
+    }
+    foreach my $file (@files) {
+        sleep 3600 if $file =~ /hang[^\/]*$/;
+        exit 1 if $file =~ /crash[^\/]*$/;
+    }
+    foreach my $file (@files) {
+        print "======== $file\n" if @files > 1;
+        foreach my $tag (@tags) {
+            print "$tag: $VALUES{$tag}\n";
+        }
+    }
+}
+
+if (@ARGV && $ARGV[0] eq '-ver') {
+    print "10.80\n";
+    exit 0;
+}
+
+if (@ARGV >= 2 && $ARGV[0] eq '-stay_open' && $ARGV[1] =~ /^(1|True)$/i) {
+    my @args;
+    while (my $line = <STDIN>) {
+        chomp $line;
+        if ($line eq '-stay_open') {
+            my $value = <STDIN>;
+            exit 0 if defined $value && $value =~ /^(0|False)$/i;
+            next;
+        }
+        push @args, $line;
+        if ($line =~ /^-execute/) {
+            answer(@args);
+            print "{ready}\n";
+            @args = ();
+        }
+    }
+    exit 0;
+}
+
+answer(@ARGV);